@@ -1,6 +1,6 @@
 package com.oleksandrmytro.timecapsule.config;
 
-import com.oleksandrmytro.timecapsule.repositories.UserRepository;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
@@ -9,7 +9,6 @@ import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 /**
@@ -18,10 +17,10 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 @Configuration
 public class ApplicationConfiguration {
     
-    private final UserRepository userRepository;
+    private final PrincipalLookupService principalLookupService;
 
-    public ApplicationConfiguration(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public ApplicationConfiguration(PrincipalLookupService principalLookupService) {
+        this.principalLookupService = principalLookupService;
     }
 
     /**
@@ -29,18 +28,12 @@ public class ApplicationConfiguration {
      *
      * Раніше JWT зберігав email як subject, тому тут шукали по email.
      * Тепер JWT зберігає userId як subject — шукаємо по userId (MongoDB _id).
-     * Fallback на email залишено для старих токенів (наприклад, якщо хтось ще має старий токен).
+     * Email (старі токени, логін) шукається напряму. Пошук іде через PrincipalLookupService,
+     * щоб запит по userId був на один шард (users шардовано по email).
      */
     @Bean
     UserDetailsService userDetailsService() {
-        return userId -> {
-            // Спочатку шукаємо по userId (новий формат JWT, subject = userId)
-            var byId = userRepository.findById(userId);
-            if (byId.isPresent()) return byId.get();
-            // Fallback: шукаємо по email (старі токени де subject = email)
-            return userRepository.findByEmail(userId)
-                    .orElseThrow(() -> new UsernameNotFoundException("User not found: " + userId));
-        };
+        return principalLookupService::loadUserByUsername;
     }
 
     @Bean
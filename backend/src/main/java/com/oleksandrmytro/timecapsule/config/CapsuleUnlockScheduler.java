@@ -1,118 +1,216 @@
 package com.oleksandrmytro.timecapsule.config;
 
-import com.mongodb.client.result.UpdateResult;
-import com.oleksandrmytro.timecapsule.events.CapsuleStatusEvent;
 import com.oleksandrmytro.timecapsule.models.Capsule;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
-import com.oleksandrmytro.timecapsule.repositories.UserRepository;
-import com.oleksandrmytro.timecapsule.services.CapsuleNotificationService;
-import com.oleksandrmytro.timecapsule.services.EmailService;
+import com.oleksandrmytro.timecapsule.services.CapsuleUnlockEngine;
+import com.oleksandrmytro.timecapsule.services.CapsuleUnlockMetrics;
+import com.oleksandrmytro.timecapsule.services.SchedulerLeaseService;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Drives the unlock engine per partition. Capsules are split into N partitions by ranges of the
+ * stored, indexed unlockBucket field (derived from ownerId); each partition is owned through a
+ * lease in scheduler_leases, so replicas and worker threads share the backlog without duplicate
+ * scans. The owner preloads the partition into the timing wheel and runs the reconciliation scan
+ * for capsules that are already due but were missed. Capsules written before the field existed
+ * belong to partition 0, whose owner also backfills their bucket.
+ */
 @Component
 public class CapsuleUnlockScheduler {
+    private static final Logger log = LoggerFactory.getLogger(CapsuleUnlockScheduler.class);
+    private static final String LEASE_PREFIX = "capsule-unlock-partition-";
+
     private final MongoTemplate mongoTemplate;
-    private final CapsuleNotificationService notificationService;
-    private final UserRepository userRepository;
-    private final EmailService emailService;
+    private final CapsuleUnlockEngine unlockEngine;
+    private final SchedulerLeaseService leaseService;
     private final int batchSize;
     private final int maxBatchesPerRun;
+    private final int partitions;
+    private final Duration leaseTtl;
+    private final Duration preloadInterval;
+    private final ExecutorService partitionWorkers;
+    private final Map<Integer, Instant> lastPreloadAt = new ConcurrentHashMap<>();
+    private volatile boolean bucketsBackfilled;
 
     public CapsuleUnlockScheduler(MongoTemplate mongoTemplate,
-                                  CapsuleNotificationService notificationService,
-                                  UserRepository userRepository,
-                                  EmailService emailService,
+                                  CapsuleUnlockEngine unlockEngine,
+                                  SchedulerLeaseService leaseService,
                                   @Value("${app.capsules.unlock-scheduler.batch-size:100}") int batchSize,
-                                  @Value("${app.capsules.unlock-scheduler.max-batches-per-run:20}") int maxBatchesPerRun) {
+                                  @Value("${app.capsules.unlock-scheduler.max-batches-per-run:20}") int maxBatchesPerRun,
+                                  @Value("${app.capsules.unlock-scheduler.partitions:8}") int partitions,
+                                  @Value("${app.capsules.unlock-scheduler.workers:4}") int workers,
+                                  @Value("${app.capsules.unlock-scheduler.lease-ttl:PT3M}") Duration leaseTtl,
+                                  @Value("${app.capsules.unlock-engine.preload-interval-ms:300000}") long preloadIntervalMs) {
         this.mongoTemplate = mongoTemplate;
-        this.notificationService = notificationService;
-        this.userRepository = userRepository;
-        this.emailService = emailService;
+        this.unlockEngine = unlockEngine;
+        this.leaseService = leaseService;
         this.batchSize = Math.max(1, batchSize);
         this.maxBatchesPerRun = Math.max(1, maxBatchesPerRun);
+        this.partitions = Math.min(CapsuleUnlockEngine.UNLOCK_BUCKETS, Math.max(1, partitions));
+        this.leaseTtl = leaseTtl;
+        this.preloadInterval = Duration.ofMillis(Math.max(1_000L, preloadIntervalMs));
+        AtomicInteger counter = new AtomicInteger();
+        this.partitionWorkers = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "capsule-unlock-partition-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    @Scheduled(fixedDelayString = "${app.capsules.unlock-scheduler.delay-ms:5000}")
+    @Scheduled(fixedDelayString = "${app.capsules.unlock-scheduler.delay-ms:60000}")
     public void unlockReadyCapsules() {
+        List<Future<?>> running = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            if (!leaseService.tryAcquire(LEASE_PREFIX + partition, leaseTtl)) {
+                lastPreloadAt.remove(partition);
+                continue;
+            }
+            int owned = partition;
+            running.add(partitionWorkers.submit(() -> runPartition(owned)));
+        }
+
+        // Wait for the run, so the next renewal happens only after this node finished its partitions.
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                log.warn("Capsule unlock partition run failed", ex.getCause());
+            }
+        }
+    }
+
+    @PreDestroy
+    void releaseLeases() {
+        partitionWorkers.shutdownNow();
+        for (Integer partition : lastPreloadAt.keySet()) {
+            try {
+                leaseService.release(LEASE_PREFIX + partition);
+            } catch (RuntimeException ex) {
+                // Lease simply expires after its TTL.
+            }
+        }
+    }
+
+    private void runPartition(int partition) {
+        if (partition == 0 && !bucketsBackfilled) {
+            backfillBuckets();
+        }
+        Document partitionFilter = partitionFilter(partition, partitions);
         Instant now = Instant.now();
+
+        // Freshly acquired partitions are preloaded right away (hand-off from a dead node).
+        Instant preloadedAt = lastPreloadAt.get(partition);
+        if (preloadedAt == null || !preloadedAt.plus(preloadInterval).isAfter(now)) {
+            unlockEngine.preload(partitionFilter);
+            lastPreloadAt.put(partition, now);
+        }
+
         for (int batch = 0; batch < maxBatchesPerRun; batch++) {
-            if (!unlockReadyBatch(now)) {
+            if (!unlockReadyBatch(partitionFilter, now)) {
                 return;
             }
         }
     }
 
-    private boolean unlockReadyBatch(Instant now) {
-        Query query = new Query(
-                Criteria.where("status").is(CapsuleStatus.SEALED.getValue())
-                        .and("deletedAt").is(null)
-                        .and("unlockAt").lte(now)
-        );
+    private boolean unlockReadyBatch(Document partitionFilter, Instant now) {
+        Document filter = new Document("status", CapsuleStatus.SEALED.getValue())
+                .append("deletedAt", null)
+                .append("unlockAt", new Document("$lte", Date.from(now)));
+        filter.putAll(partitionFilter);
+        Query query = new BasicQuery(filter, new Document("_id", 1).append("ownerId", 1));
         query.with(Sort.by(Sort.Direction.ASC, "unlockAt"));
         query.limit(batchSize);
-        query.fields()
-                .include("_id")
-                .include("ownerId")
-                .include("title")
-                .include("unlockAt")
-                .include("tags");
 
         List<Capsule> ready = mongoTemplate.find(query, Capsule.class);
         if (ready.isEmpty()) {
             return false;
         }
 
-        for (Capsule capsule : ready) {
-            String ownerId = capsule.getOwnerId() != null ? capsule.getOwnerId().toHexString() : null;
-            if (ownerId == null || capsule.getId() == null) {
-                continue;
-            }
-
-            UpdateResult result = mongoTemplate.updateFirst(
-                    new Query(
-                            Criteria.where("_id").is(capsule.getId())
-                                    .and("ownerId").is(capsule.getOwnerId())
-                                    .and("status").is(CapsuleStatus.SEALED.getValue())
-                                    .and("deletedAt").is(null)
-                                    .and("unlockAt").lte(now)
-                    ),
-                    new Update()
-                            .set("status", CapsuleStatus.OPENED.getValue())
-                            .set("openedAt", now)
-                            .set("updatedAt", now),
-                    Capsule.class
-            );
-            if (result.getModifiedCount() == 0) {
-                continue;
-            }
+        unlockEngine.openBatch(ready, now, CapsuleUnlockMetrics.SOURCE_RECONCILIATION);
+        return ready.size() == batchSize;
+    }
 
-            capsule.setStatus(CapsuleStatus.OPENED.getValue());
-            capsule.setOpenedAt(now);
-            capsule.setUpdatedAt(now);
-
-            CapsuleStatusEvent event = new CapsuleStatusEvent(
-                    capsule.getId(),
-                    CapsuleStatus.OPENED.getValue(),
-                    false,
-                    capsule.getUnlockAt(),
-                    now,
-                    capsule.getTags()
-            );
-            userRepository.findById(ownerId)
-                    .ifPresent(user -> notificationService.sendStatus(user.getId(), event));
-            emailService.sendCapsuleOpened(ownerId, capsule);
+    /**
+     * One batch per run: sealed capsules without unlockBucket get it, so partition 0 stops
+     * carrying the whole legacy backlog.
+     */
+    private void backfillBuckets() {
+        Query missing = new Query(Criteria.where("status").is(CapsuleStatus.SEALED.getValue())
+                .and("deletedAt").is(null)
+                .and("unlockBucket").is(null));
+        missing.fields().include("_id", "ownerId");
+        missing.limit(batchSize);
+        List<Capsule> capsules = mongoTemplate.find(missing, Capsule.class);
+        if (capsules.isEmpty()) {
+            bucketsBackfilled = true;
+            return;
         }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Capsule.class);
+        for (Capsule capsule : capsules) {
+            // Full shard key in the filter: each update targets one shard
+            bulk.updateOne(
+                    new Query(Criteria.where("_id").is(capsule.getId()).and("ownerId").is(capsule.getOwnerId())),
+                    new Update().set("unlockBucket", CapsuleUnlockEngine.unlockBucketOf(capsule.getOwnerId())));
+        }
+        bulk.execute();
+    }
 
-        return ready.size() == batchSize;
+    /**
+     * Buckets [first, last) of the partition: the bucket space split into near-equal ranges.
+     */
+    static int[] bucketRange(int partition, int partitions) {
+        int first = (int) ((long) partition * CapsuleUnlockEngine.UNLOCK_BUCKETS / partitions);
+        int last = (int) ((long) (partition + 1) * CapsuleUnlockEngine.UNLOCK_BUCKETS / partitions);
+        return new int[]{first, last};
+    }
+
+    /**
+     * Equality on the indexed unlockBucket ($in of the partition's buckets), so every shard
+     * answers from the {status, unlockBucket, unlockAt} index with a merge sort on unlockAt.
+     * Partition 0 also owns capsules without the field.
+     */
+    static Document partitionFilter(int partition, int partitions) {
+        if (partitions <= 1) {
+            return new Document();
+        }
+        int[] range = bucketRange(partition, partitions);
+        List<Integer> buckets = new ArrayList<>(range[1] - range[0]);
+        for (int bucket = range[0]; bucket < range[1]; bucket++) {
+            buckets.add(bucket);
+        }
+        Document inRange = new Document("unlockBucket", new Document("$in", buckets));
+        if (partition == 0) {
+            return new Document("$or", List.of(inRange, new Document("unlockBucket", null)));
+        }
+        return inRange;
     }
 }
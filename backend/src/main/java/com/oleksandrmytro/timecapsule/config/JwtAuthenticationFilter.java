@@ -2,6 +2,8 @@ package com.oleksandrmytro.timecapsule.config;
 
 import com.oleksandrmytro.timecapsule.models.User;
 import com.oleksandrmytro.timecapsule.services.JwtService;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
+import com.oleksandrmytro.timecapsule.services.VerifiedToken;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -10,7 +12,6 @@ import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -29,15 +30,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final HandlerExceptionResolver handlerExceptionResolver;
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final PrincipalLookupService principalLookupService;
 
     public JwtAuthenticationFilter(
             JwtService jwtService,
-            UserDetailsService userDetailsService,
+            PrincipalLookupService principalLookupService,
             HandlerExceptionResolver handlerExceptionResolver
     ) {
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
+        this.principalLookupService = principalLookupService;
         this.handlerExceptionResolver = handlerExceptionResolver;
     }
 
@@ -66,24 +67,26 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         try {
             final String jwt = bearer.substring(7);
-            // Витягуємо subject з JWT — у нашому форматі це userId.
-            final String userId = jwtService.extractUsername(jwt);
+            // Один parse + перевірка підпису; усі claims далі читаються з нього.
+            final VerifiedToken token = jwtService.verify(jwt);
+            // Subject у нашому форматі — userId.
+            final String userId = token.subject();
             if (userId != null) {
                 UserDetails userDetails;
                 try {
-                    // Завантажуємо користувача з бази за userId.
-                    userDetails = this.userDetailsService.loadUserByUsername(userId);
+                    // Завантажуємо користувача з бази за userId; email-claim — shard key, запит на один шард.
+                    userDetails = principalLookupService.load(userId, token.email());
                 } catch (UsernameNotFoundException e) {
                     // Якщо користувач не знайдений — пропускаємо запит як анонімний.
                     filterChain.doFilter(request, response);
                     return;
                 }
 
-                if (jwtService.isTokenValid(jwt, userDetails) && isAllowedForSession(userDetails)) {
+                if (jwtService.isTokenValid(token, userDetails) && isAllowedForSession(userDetails)) {
                     // Передаємо імперсонацію в request attributes для контролерів/UI.
-                    String adminId = jwtService.extractClaim(jwt, claims -> claims.get("impersonatedByAdminId", String.class));
-                    String adminEmail = jwtService.extractClaim(jwt, claims -> claims.get("impersonatedByAdminEmail", String.class));
-                    Boolean active = jwtService.extractClaim(jwt, claims -> claims.get("impersonationActive", Boolean.class));
+                    String adminId = token.claim("impersonatedByAdminId", String.class);
+                    String adminEmail = token.claim("impersonatedByAdminEmail", String.class);
+                    Boolean active = token.claim("impersonationActive", Boolean.class);
                     request.setAttribute("impersonation.active", Boolean.TRUE.equals(active) || (adminId != null && !adminId.isBlank()));
                     request.setAttribute("impersonation.adminId", adminId);
                     request.setAttribute("impersonation.adminEmail", adminEmail);
@@ -82,12 +82,29 @@ public class SecurityConfiguration {
         return http.build();
     }
 
+    /**
+     * actuatorSecurityFilterChain — health і prometheus для моніторингу, решта actuator заборонена.
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain actuatorSecurityFilterChain(HttpSecurity http) throws Exception {
+        http
+                .securityMatcher("/actuator/**")
+                .csrf(AbstractHttpConfigurer::disable)
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers("/actuator/health/**", "/actuator/prometheus").permitAll()
+                        .anyRequest().denyAll()
+                )
+                .sessionManagement(s -> s.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+        return http.build();
+    }
+
     /**
      * wsSecurityFilterChain — налаштування безпеки для WebSocket.
      * Дозволяє всі запити, вимикає CSRF, сесії stateless.
      */
     @Bean // Позначає метод як Spring Bean(щоб можна було використовувати як конфігурацію безпеки)
-    @Order(1) // ws chain
+    @Order(2) // ws chain
     public SecurityFilterChain wsSecurityFilterChain(HttpSecurity http) throws Exception {
         http
                 .securityMatcher("/ws/**")                                                                  // Застосовує цей ланцюг для всіх маршрутів, що починаються з /ws/
@@ -104,7 +121,7 @@ public class SecurityConfiguration {
      * Встановлює JWT-фільтр, вимикає CSRF, сесії stateless.
      */
     @Bean
-    @Order(2)
+    @Order(3)
     public SecurityFilterChain apiSecurityFilterChain(HttpSecurity http) throws Exception {
         http
                 .securityMatcher("/api/**")                         // Застосовує ланцюг для всіх маршрутів що починаються з /api/
@@ -119,6 +136,7 @@ public class SecurityConfiguration {
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/capsules/*/comments").permitAll()    // Публічний перегляд коментарів
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/capsules/*/reactions").permitAll()   // Публічний перегляд реакцій
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/capsules/*").permitAll()             // Публічний перегляд капсул
+                        .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/capsules/map/tiles/**").permitAll()  // Публічні тайли маркерів
                         .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/users/**").permitAll()               // Публічний перегляд профілів
                         .anyRequest().authenticated()               // Всі інші запити — тільки для авторизованих користувачів
                 )
@@ -136,7 +154,7 @@ public class SecurityConfiguration {
      * Дозволяє всі запити, кастомізує Google OAuth2, встановлює success/failure handler-и.
      */
     @Bean
-    @Order(3)
+    @Order(4)
     public SecurityFilterChain oauthSecurityFilterChain(HttpSecurity http) throws Exception {
         http
                 .securityMatcher("/oauth2/**", "/login/oauth2/**", "/error")            // Застосовує ланцюг для маршрутів, пов'язаних з OAuth2 login та помилками
@@ -161,7 +179,7 @@ public class SecurityConfiguration {
      * Забороняє всі запити.
      */
     @Bean
-    @Order(3)
+    @Order(4)
     public SecurityFilterChain fallbackSecurityFilterChain(HttpSecurity http) throws Exception {
         http
                 .csrf(AbstractHttpConfigurer::disable)          // Вимикає CSRF-захист (бо це fallback для всіх інших маршрутів)
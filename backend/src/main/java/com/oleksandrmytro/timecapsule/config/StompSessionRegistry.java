@@ -0,0 +1,121 @@
+package com.oleksandrmytro.timecapsule.config;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * STOMP sessions authenticated at CONNECT: sessionId -> user and expiry of the token the session
+ * was opened with. SEND/SUBSCRIBE only check the entry here; StompSessionSweeper disconnects
+ * the sessions whose token has expired or whose user was revoked (blocked, disabled, deleted).
+ * An entry lives until SessionDisconnectEvent: a swept session is only marked, so its frames
+ * stay rejected even if the ERROR frame never reached the client.
+ */
+@Component
+public class StompSessionRegistry {
+
+    private record Session(String userId, Instant expiresAt, boolean revoked, boolean swept) {
+        boolean closed(Instant now) {
+            return revoked || !expiresAt.isAfter(now);
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+    public void bind(String sessionId, String userId, Instant expiresAt) {
+        if (sessionId == null || userId == null || expiresAt == null) {
+            return;
+        }
+        Session previous = sessions.put(sessionId, new Session(userId, expiresAt, false, false));
+        if (previous != null && !previous.userId().equals(userId)) {
+            unlink(previous.userId(), sessionId);
+        }
+        sessionsByUser.compute(userId, (id, ids) -> {
+            Set<String> linked = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            linked.add(sessionId);
+            return linked;
+        });
+    }
+
+    /**
+     * False for unknown sessions: anonymous ones are not tracked.
+     */
+    public boolean isExpired(String sessionId, Instant now) {
+        Session session = sessionId != null ? sessions.get(sessionId) : null;
+        return session != null && session.closed(now);
+    }
+
+    public boolean hasSessions(String userId) {
+        Set<String> ids = userId != null ? sessionsByUser.get(userId) : null;
+        return ids != null && !ids.isEmpty();
+    }
+
+    /**
+     * Marks every session of the user as closed: frames are dropped from now on and the next
+     * sweep disconnects them.
+     * @return number of sessions revoked
+     */
+    public int revokeUser(String userId) {
+        Set<String> ids = userId != null ? sessionsByUser.get(userId) : null;
+        if (ids == null) {
+            return 0;
+        }
+        int revoked = 0;
+        for (String sessionId : ids) {
+            if (sessions.computeIfPresent(sessionId, (id, session) ->
+                    new Session(session.userId(), session.expiresAt(), true, session.swept())) != null) {
+                revoked++;
+            }
+        }
+        return revoked;
+    }
+
+    /**
+     * Returns the sessions closed at {@code now} that were not swept yet and marks them swept.
+     * They stay registered until the disconnect event.
+     */
+    public List<String> drainExpired(Instant now) {
+        List<String> expired = new ArrayList<>();
+        sessions.forEach((sessionId, session) -> {
+            if (session.swept() || !session.closed(now)) {
+                return;
+            }
+            Session swept = new Session(session.userId(), session.expiresAt(), session.revoked(), true);
+            if (sessions.replace(sessionId, session, swept)) {
+                expired.add(sessionId);
+            }
+        });
+        return expired;
+    }
+
+    public void remove(String sessionId) {
+        Session session = sessionId != null ? sessions.remove(sessionId) : null;
+        if (session != null) {
+            unlink(session.userId(), sessionId);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        remove(event.getSessionId());
+    }
+
+    private void unlink(String userId, String sessionId) {
+        sessionsByUser.computeIfPresent(userId, (id, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
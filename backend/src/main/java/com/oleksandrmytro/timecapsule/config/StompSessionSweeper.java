@@ -0,0 +1,94 @@
+package com.oleksandrmytro.timecapsule.config;
+
+import com.oleksandrmytro.timecapsule.models.User;
+import com.oleksandrmytro.timecapsule.services.PrincipalCache;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Server-initiated disconnect of STOMP sessions whose token has expired or whose user is no
+ * longer active: an ERROR frame is sent to the client, and Spring closes the WebSocket after it.
+ * The client reconnects with the current accessToken cookie.
+ *
+ * Every PrincipalCache invalidation (a write on this replica or the users change stream) reloads
+ * the user if it has sessions here; a blocked, disabled or deleted user is revoked and swept
+ * right away instead of chatting until the token expires.
+ */
+@Component
+public class StompSessionSweeper {
+    private static final Logger log = LoggerFactory.getLogger(StompSessionSweeper.class);
+
+    private final StompSessionRegistry sessionRegistry;
+    private final MessageChannel clientOutboundChannel;
+    private final PrincipalCache principalCache;
+    private final PrincipalLookupService principalLookupService;
+
+    public StompSessionSweeper(StompSessionRegistry sessionRegistry,
+                               @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                               PrincipalCache principalCache,
+                               PrincipalLookupService principalLookupService) {
+        this.sessionRegistry = sessionRegistry;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.principalCache = principalCache;
+        this.principalLookupService = principalLookupService;
+    }
+
+    @PostConstruct
+    void watchPrincipals() {
+        principalCache.onInvalidate(this::recheck);
+    }
+
+    /**
+     * Revokes the user's sessions on this replica if the user can no longer sign in.
+     */
+    void recheck(String userId) {
+        if (!sessionRegistry.hasSessions(userId)) {
+            return;
+        }
+        User user;
+        try {
+            user = principalLookupService.load(userId, null);
+        } catch (UsernameNotFoundException ex) {
+            user = null;
+        }
+        if (WebSocketJwtChannelInterceptor.isActive(user)) {
+            return;
+        }
+        int revoked = sessionRegistry.revokeUser(userId);
+        log.info("[WS-AUTH] revoked {} STOMP sessions of inactive user {}", revoked, userId);
+        sweep();
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.session-sweep-ms:15000}")
+    public void sweep() {
+        // Записи лишаються до SessionDisconnectEvent: якщо ERROR не дійшов, кадри сесії й далі відкидаються
+        List<String> expired = sessionRegistry.drainExpired(Instant.now());
+        for (String sessionId : expired) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.ERROR);
+            accessor.setSessionId(sessionId);
+            accessor.setMessage("Session expired");
+            try {
+                clientOutboundChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+            } catch (RuntimeException ex) {
+                // Сесія вже закрита — нічого робити
+                log.debug("[WS-AUTH] disconnect of expired session {} failed: {}", sessionId, ex.getMessage());
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.info("[WS-AUTH] disconnected {} expired STOMP sessions", expired.size());
+        }
+    }
+}
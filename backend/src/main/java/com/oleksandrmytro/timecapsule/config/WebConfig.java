@@ -2,11 +2,14 @@ package com.oleksandrmytro.timecapsule.config;
 
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.CacheControl;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
@@ -26,6 +29,17 @@ public class WebConfig implements WebMvcConfigurer {
                 .excludePathPatterns("/api/admin/**");
     }
 
+    /**
+     * CBOR для компактних відповідей карти (Accept: application/cbor).
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        boolean registered = converters.stream().anyMatch(MappingJackson2CborHttpMessageConverter.class::isInstance);
+        if (!registered) {
+            converters.add(new MappingJackson2CborHttpMessageConverter());
+        }
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         String uploadsRoot = Path.of(System.getProperty("user.dir"), "uploads").toAbsolutePath().toString();
@@ -1,6 +1,11 @@
 package com.oleksandrmytro.timecapsule.config;
 
+import com.oleksandrmytro.timecapsule.models.User;
 import com.oleksandrmytro.timecapsule.services.JwtService;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
+import com.oleksandrmytro.timecapsule.services.VerifiedToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -8,63 +13,90 @@ import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
 // WebSocketJwtChannelInterceptor — це Spring-компонент, який реалізує ChannelInterceptor для обробки JWT-токенів у WebSocket-з'єднаннях.
+// Аутентифікація відбувається один раз на CONNECT: principal прив'язується до STOMP-сесії, а SEND/SUBSCRIBE
+// лише перевіряють, чи не минув термін токена сесії і чи не відкликано її (StompSessionRegistry).
+// Прострочені сесії та сесії заблокованих/видалених користувачів закриває StompSessionSweeper.
 @Component
 public class WebSocketJwtChannelInterceptor implements ChannelInterceptor {
+    private static final Logger log = LoggerFactory.getLogger(WebSocketJwtChannelInterceptor.class);
 
     private final JwtService jwtService;
-    private final UserDetailsService userDetailsService;
+    private final PrincipalLookupService principalLookupService;
+    private final StompSessionRegistry sessionRegistry;
 
-    public WebSocketJwtChannelInterceptor(JwtService jwtService, UserDetailsService userDetailsService) {
+    public WebSocketJwtChannelInterceptor(JwtService jwtService,
+                                          PrincipalLookupService principalLookupService,
+                                          StompSessionRegistry sessionRegistry) {
         this.jwtService = jwtService;
-        this.userDetailsService = userDetailsService;
+        this.principalLookupService = principalLookupService;
+        this.sessionRegistry = sessionRegistry;
     }
 
-    // preSend — це метод, який виконується перед відправкою повідомлення через WebSocket. Він перевіряє наявність JWT-токена в заголовках повідомлення
+    // preSend — це метод, який виконується перед відправкою повідомлення через WebSocket.
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
         // ВАЖЛИВО: використовуємо getAccessor() замість wrap(), бо wrap() створює immutable копію
         // і setUser() не пропагується — Spring не бачить principal, convertAndSendToUser не працює
         StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
         if (accessor == null) return message;
-        if (StompCommand.CONNECT.equals(accessor.getCommand()) || StompCommand.SEND.equals(accessor.getCommand()) || StompCommand.SUBSCRIBE.equals(accessor.getCommand())) { // Перевіряємо, чи це команда CONNECT, SEND або SUBSCRIBE, оскільки саме в цих командах нам потрібно аутентифікувати користувача.
-            // Шукаємо JWT - спочатку в STOMP header, потім в кукі, потім в атрибутах сесії WebSocket
-            String bearer = resolveBearer(accessor);
-            if (bearer != null && bearer.startsWith("Bearer ")) {
-                String jwt = bearer.substring(7);
-                // extractUsername повертає subject з JWT — тепер це userId
-                String userId = jwtService.extractUsername(jwt);
-                if (userId != null) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(userId);
-                    if (jwtService.isTokenValid(jwt, userDetails)) {
-                        // getUsername() тепер повертає userId, тому principalName = userId завжди
-                        // convertAndSendToUser(peerId, ...) знайде з'єднання де principal.getName() == peerId
-                        String principalName = userDetails.getUsername(); // = userId
-                        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(principalName, null, userDetails.getAuthorities());
-                        SecurityContextHolder.getContext().setAuthentication(auth);
-                        accessor.setUser(auth);
-                    } else {
-                        System.out.println("[WS-AUTH] invalid JWT for userId=" + userId);
-                    }
-                } else {
-                    System.out.println("[WS-AUTH] userId null from JWT");
-                }
-            } else {
-                System.out.println("[WS-AUTH] bearer missing for command=" + accessor.getCommand());
+        StompCommand command = accessor.getCommand();
+        if (StompCommand.CONNECT.equals(command)) {
+            authenticate(accessor);
+        } else if (StompCommand.SEND.equals(command) || StompCommand.SUBSCRIBE.equals(command)) {
+            // Principal уже в сесії (Spring підставляє user з CONNECT); тут лише перевірка терміну — без JWT і Mongo
+            if (sessionRegistry.isExpired(accessor.getSessionId(), Instant.now())) {
+                log.debug("[WS-AUTH] {} dropped: session {} expired", command, accessor.getSessionId());
+                return null;
             }
         }
         return message;
     }
 
+    private void authenticate(StompHeaderAccessor accessor) {
+        // Шукаємо JWT - спочатку в STOMP header, потім в кукі, потім в атрибутах сесії WebSocket
+        String bearer = resolveBearer(accessor);
+        if (bearer == null || !bearer.startsWith("Bearer ")) {
+            log.debug("[WS-AUTH] bearer missing on CONNECT, session {}", accessor.getSessionId());
+            return;
+        }
+        VerifiedToken token = jwtService.verify(bearer.substring(7));
+        String userId = token.subject();
+        if (userId == null) {
+            log.warn("[WS-AUTH] userId null from JWT");
+            return;
+        }
+        User userDetails = principalLookupService.load(userId, token.email());
+        if (!jwtService.isTokenValid(token, userDetails)) {
+            log.warn("[WS-AUTH] invalid JWT for userId={}", userId);
+            return;
+        }
+        // Ті самі перевірки, що й JwtAuthenticationFilter: заблокований/вимкнений/видалений не отримує principal
+        if (!isActive(userDetails)) {
+            log.warn("[WS-AUTH] inactive user rejected on CONNECT, userId={}", userId);
+            return;
+        }
+        // getUsername() тепер повертає userId, тому principalName = userId завжди
+        // convertAndSendToUser(peerId, ...) знайде з'єднання де principal.getName() == peerId
+        String principalName = userDetails.getUsername(); // = userId
+        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(principalName, null, userDetails.getAuthorities());
+        accessor.setUser(auth);
+        if (token.expiration() != null) {
+            sessionRegistry.bind(accessor.getSessionId(), principalName, token.expiration().toInstant());
+        }
+    }
+
+    static boolean isActive(User user) {
+        return user != null && user.getDeletedAt() == null && user.isEnabled() && user.isAccountNonLocked();
+    }
+
     // resolveBearer — шукає JWT-токен у: 1) STOMP header Authorization, 2) STOMP header cookie, 3) WebSocket session attributes (з HTTP handshake cookie)
     private String resolveBearer(StompHeaderAccessor accessor) {
         // 1. STOMP header "Authorization"
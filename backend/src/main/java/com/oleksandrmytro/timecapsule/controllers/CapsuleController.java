@@ -3,15 +3,27 @@ package com.oleksandrmytro.timecapsule.controllers;
 import com.oleksandrmytro.timecapsule.dto.CreateCapsuleRequest;
 import com.oleksandrmytro.timecapsule.dto.ShareCapsuleRequest;
 import com.oleksandrmytro.timecapsule.dto.UpdateCapsuleRequest;
+import com.oleksandrmytro.timecapsule.responses.CapsulePageResponse;
 import com.oleksandrmytro.timecapsule.responses.CapsuleResponse;
+import com.oleksandrmytro.timecapsule.responses.CompactMarkersResponse;
+import com.oleksandrmytro.timecapsule.responses.HeatmapCellResponse;
+import com.oleksandrmytro.timecapsule.responses.NearbyCapsuleResponse;
 import com.oleksandrmytro.timecapsule.services.CapsuleService;
+import com.oleksandrmytro.timecapsule.services.CompactMarkerEncoder;
+import com.oleksandrmytro.timecapsule.services.GeoHeatmapService;
+import com.oleksandrmytro.timecapsule.services.MarkerTileCache;
 import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -21,9 +33,11 @@ import java.util.Map;
 public class CapsuleController {
 
     private final CapsuleService capsuleService;
+    private final GeoHeatmapService geoHeatmapService;
 
-    public CapsuleController(CapsuleService capsuleService) {
+    public CapsuleController(CapsuleService capsuleService, GeoHeatmapService geoHeatmapService) {
         this.capsuleService = capsuleService;
+        this.geoHeatmapService = geoHeatmapService;
     }
 
     @PostMapping
@@ -32,32 +46,135 @@ public class CapsuleController {
         return ResponseEntity.ok(capsuleService.create(ownerId, request));
     }
 
+    /**
+     * Списки повертають CapsuleSummaryResponse (без body/media); ?view=full — повні CapsuleResponse.
+     */
     @GetMapping
-    public ResponseEntity<List<CapsuleResponse>> listMine(Authentication auth) {
+    public ResponseEntity<List<?>> listMine(@RequestParam(required = false) String view, Authentication auth) {
         String ownerId = currentUserId(auth);
-        return ResponseEntity.ok(capsuleService.listMine(ownerId));
+        return ResponseEntity.ok(isFullView(view)
+                ? capsuleService.listMine(ownerId)
+                : capsuleService.listMineSummaries(ownerId));
     }
 
+    /**
+     * Публічні капсули. Без after/limit — повний список (як раніше);
+     * з after/limit — сторінка з keyset-курсором (CapsulePageResponse).
+     */
     @GetMapping("/public")
-    public ResponseEntity<List<CapsuleResponse>> listPublic() {
-        return ResponseEntity.ok(capsuleService.listPublic());
+    public ResponseEntity<?> listPublic(@RequestParam(required = false) String after,
+                                        @RequestParam(required = false) Integer limit,
+                                        @RequestParam(required = false) String view) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(isFullView(view)
+                    ? capsuleService.listPublic()
+                    : capsuleService.listPublicSummaries());
+        }
+        return ResponseEntity.ok(capsuleService.listPublicPage(after, limit, isFullView(view)));
     }
 
+    /**
+     * Публічні капсули поруч із точкою, від найближчих; radius у метрах,
+     * cursor — nextCursor попередньої сторінки.
+     */
+    @GetMapping("/nearby")
+    public ResponseEntity<CapsulePageResponse<NearbyCapsuleResponse>> nearby(@RequestParam double lat,
+                                                                             @RequestParam double lon,
+                                                                             @RequestParam(required = false) Double radius,
+                                                                             @RequestParam(required = false) String cursor,
+                                                                             @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(capsuleService.listNearby(lat, lon, radius, cursor, limit));
+    }
+
+    /**
+     * Щільність публічних маркерів по geohash-клітинках (precision 1..6) з rollup-колекції;
+     * bbox — необов'язковий "west,south,east,north".
+     */
+    @GetMapping("/heatmap")
+    public ResponseEntity<List<HeatmapCellResponse>> heatmap(@RequestParam int precision,
+                                                             @RequestParam(required = false) String bbox) {
+        return ResponseEntity.ok(geoHeatmapService.list(precision, bbox));
+    }
+
+    /**
+     * Капсули з unlockAt у діапазоні. mode=histogram — лише лічильники по днях і статусах
+     * (tz — часовий пояс користувача для меж дня), капсули дня запитуються окремо.
+     */
     @GetMapping("/calendar")
-    public ResponseEntity<List<CapsuleResponse>> calendar(
+    public ResponseEntity<List<?>> calendar(
             @RequestParam String from,
             @RequestParam String to,
+            @RequestParam(required = false) String view,
+            @RequestParam(required = false) String mode,
+            @RequestParam(required = false) String tz,
             Authentication auth) {
         String ownerId = currentUserId(auth);
         Instant fromInst = Instant.parse(from);
         Instant toInst = Instant.parse(to);
-        return ResponseEntity.ok(capsuleService.listByDateRange(ownerId, fromInst, toInst));
+        if ("histogram".equalsIgnoreCase(mode)) {
+            return ResponseEntity.ok(capsuleService.calendarHistogram(ownerId, fromInst, toInst, tz));
+        }
+        return ResponseEntity.ok(isFullView(view)
+                ? capsuleService.listByDateRange(ownerId, fromInst, toInst)
+                : capsuleService.listSummariesByDateRange(ownerId, fromInst, toInst));
     }
 
+    /**
+     * Маркери карти. З bbox ("west,south,east,north") і zoom — лише видима область,
+     * згрупована в кластери; без bbox — усі маркери (як раніше).
+     */
     @GetMapping("/map")
-    public ResponseEntity<List<Map<String, Object>>> map(Authentication auth) {
+    public ResponseEntity<List<Map<String, Object>>> map(@RequestParam(required = false) String bbox,
+                                                         @RequestParam(required = false) Integer zoom,
+                                                         Authentication auth) {
+        return ResponseEntity.ok(mapMarkers(bbox, zoom, auth));
+    }
+
+    /**
+     * Ті самі маркери у компактному CBOR (Accept: application/cbor): словник власників,
+     * колонки замість об'єктів, дельта-координати з фіксованою точкою.
+     */
+    @GetMapping(value = "/map", produces = MediaType.APPLICATION_CBOR_VALUE)
+    public ResponseEntity<CompactMarkersResponse> mapCompact(@RequestParam(required = false) String bbox,
+                                                             @RequestParam(required = false) Integer zoom,
+                                                             Authentication auth) {
+        return ResponseEntity.ok(CompactMarkerEncoder.encode(mapMarkers(bbox, zoom, auth)));
+    }
+
+    /**
+     * Публічний тайл маркерів z/x/y (лише публічні капсули, без прив'язки до користувача).
+     * Відповідь з ETag; If-None-Match з тим самим хешем повертає 304 без звернення до Mongo.
+     */
+    @GetMapping("/map/tiles/{z}/{x}/{y}")
+    public ResponseEntity<byte[]> mapTile(@PathVariable int z, @PathVariable int x, @PathVariable int y, WebRequest request) {
+        MarkerTileCache.Tile tile = capsuleService.getPublicMarkerTile(z, x, y);
+        return tileResponse(tile.body(), tile.etag(), MediaType.APPLICATION_JSON, request);
+    }
+
+    @GetMapping(value = "/map/tiles/{z}/{x}/{y}", produces = MediaType.APPLICATION_CBOR_VALUE)
+    public ResponseEntity<byte[]> mapTileCompact(@PathVariable int z, @PathVariable int x, @PathVariable int y, WebRequest request) {
+        MarkerTileCache.Tile tile = capsuleService.getPublicMarkerTile(z, x, y);
+        return tileResponse(tile.cborBody(), tile.cborEtag(), MediaType.APPLICATION_CBOR, request);
+    }
+
+    private ResponseEntity<byte[]> tileResponse(byte[] body, String etag, MediaType contentType, WebRequest request) {
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic())
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(contentType)
+                .body(body);
+    }
+
+    private List<Map<String, Object>> mapMarkers(String bbox, Integer zoom, Authentication auth) {
         String ownerId = currentUserId(auth);
-        return ResponseEntity.ok(capsuleService.listMapMarkers(ownerId));
+        if (bbox != null) {
+            return capsuleService.listMapViewport(ownerId, bbox, zoom);
+        }
+        return capsuleService.listMapMarkers(ownerId);
     }
 
     @GetMapping("/{id}/edit")
@@ -99,6 +216,10 @@ public class CapsuleController {
         return ResponseEntity.ok().build();
     }
 
+    private static boolean isFullView(String view) {
+        return "full".equalsIgnoreCase(view);
+    }
+
     /**
      * Там, де потрібен авторизований користувач
      * @param auth
@@ -4,7 +4,6 @@ import com.oleksandrmytro.timecapsule.dto.ConfirmPasswordChangeDto;
 import com.oleksandrmytro.timecapsule.dto.ChangePasswordDto;
 import com.oleksandrmytro.timecapsule.dto.UpdateProfileRequest;
 import com.oleksandrmytro.timecapsule.models.User;
-import com.oleksandrmytro.timecapsule.responses.CapsuleResponse;
 import com.oleksandrmytro.timecapsule.responses.UserProfileResponse;
 import com.oleksandrmytro.timecapsule.services.CapsuleService;
 import com.oleksandrmytro.timecapsule.services.UserService;
@@ -169,7 +168,9 @@ public class UserController {
     }
 
     @GetMapping("/{id}/capsules")
-    public ResponseEntity<List<CapsuleResponse>> userCapsules(@PathVariable String id, Authentication auth) {
+    public ResponseEntity<List<?>> userCapsules(@PathVariable String id,
+                                                @RequestParam(required = false) String view,
+                                                Authentication auth) {
         String currentUserId = (auth != null && auth.getPrincipal() instanceof User u) ? u.getId() : null;
         try {
             // Resolve user by id or username to get the actual user id
@@ -177,7 +178,9 @@ public class UserController {
             if (target.getRole() == User.Role.ADMIN) {
                 return ResponseEntity.notFound().build();
             }
-            List<CapsuleResponse> list = capsuleService.listUserCapsules(target.getId(), currentUserId);
+            List<?> list = "full".equalsIgnoreCase(view)
+                    ? capsuleService.listUserCapsules(target.getId(), currentUserId)
+                    : capsuleService.listUserCapsuleSummaries(target.getId(), currentUserId);
             return ResponseEntity.ok(list);
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.notFound().build();
@@ -4,6 +4,7 @@ import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleVisibility;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -46,6 +47,10 @@ public class Capsule {
     @Field("geoMarkerId")
     private ObjectId geoMarkerId;
 
+    // Stored bucket of ownerId for unlock partitions (CapsuleUnlockEngine.unlockBucketOf)
+    @Field("unlockBucket")
+    private Integer unlockBucket;
+
     @Field("location")
     private GeoPoint location;
 
@@ -73,6 +78,11 @@ public class Capsule {
     @Field("deletedAt")
     private Instant deletedAt;
 
+    // Обчислюється проєкцією списків (перші символи body), у базу не пишеться
+    @ReadOnlyProperty
+    @Field("excerpt")
+    private String excerpt;
+
     public Capsule() {}
 
     // getters and setters
@@ -102,6 +112,8 @@ public class Capsule {
     public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
     public ObjectId getGeoMarkerId() { return geoMarkerId; }
     public void setGeoMarkerId(ObjectId geoMarkerId) { this.geoMarkerId = geoMarkerId; }
+    public Integer getUnlockBucket() { return unlockBucket; }
+    public void setUnlockBucket(Integer unlockBucket) { this.unlockBucket = unlockBucket; }
     public GeoPoint getLocation() { return location; }
     public void setLocation(GeoPoint location) { this.location = location; }
     public Boolean getAllowComments() { return allowComments; }
@@ -114,6 +126,8 @@ public class Capsule {
     public void setTags(List<String> tags) { this.tags = tags; }
     public String getCoverImageUrl() { return coverImageUrl; }
     public void setCoverImageUrl(String coverImageUrl) { this.coverImageUrl = coverImageUrl; }
+    public String getExcerpt() { return excerpt; }
+    public void setExcerpt(String excerpt) { this.excerpt = excerpt; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
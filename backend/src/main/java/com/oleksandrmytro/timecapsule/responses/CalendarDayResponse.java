@@ -0,0 +1,28 @@
+package com.oleksandrmytro.timecapsule.responses;
+
+import java.util.Map;
+
+/**
+ * День календаря у режимі histogram: дата (yyyy-MM-dd у часовому поясі користувача),
+ * кількість капсул з unlockAt цього дня і розбивка за статусом.
+ */
+public class CalendarDayResponse {
+    private String day;
+    private long total;
+    private Map<String, Long> statuses;
+
+    public CalendarDayResponse() {}
+
+    public CalendarDayResponse(String day, long total, Map<String, Long> statuses) {
+        this.day = day;
+        this.total = total;
+        this.statuses = statuses;
+    }
+
+    public String getDay() { return day; }
+    public void setDay(String day) { this.day = day; }
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
+    public Map<String, Long> getStatuses() { return statuses; }
+    public void setStatuses(Map<String, Long> statuses) { this.statuses = statuses; }
+}
@@ -0,0 +1,24 @@
+package com.oleksandrmytro.timecapsule.responses;
+
+import java.util.List;
+
+/**
+ * Сторінка капсул для keyset-пагінації (CapsuleSummaryResponse або CapsuleResponse для view=full).
+ * nextCursor == null — сторінок більше немає.
+ */
+public class CapsulePageResponse<T> {
+    private List<T> items;
+    private String nextCursor;
+
+    public CapsulePageResponse() {}
+
+    public CapsulePageResponse(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() { return items; }
+    public void setItems(List<T> items) { this.items = items; }
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -0,0 +1,66 @@
+package com.oleksandrmytro.timecapsule.responses;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Легка модель капсули для списків: без body і media, лише excerpt для прев'ю.
+ * Повна модель — CapsuleResponse (?view=full або сторінка капсули).
+ */
+public class CapsuleSummaryResponse {
+    private String id;
+    private String ownerId;
+    private String title;
+    private String excerpt; // null, якщо капсула ще заблокована
+    private String visibility;
+    private String status;
+    private Boolean isLocked;
+    private Instant unlockAt;
+    private Instant openedAt;
+    private Instant expiresAt;
+    private String geoMarkerId;
+    private CapsuleResponse.GeoPoint location;
+    private Boolean allowComments;
+    private Boolean allowReactions;
+    private List<String> tags;
+    private String coverImageUrl;
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+    public String getOwnerId() { return ownerId; }
+    public void setOwnerId(String ownerId) { this.ownerId = ownerId; }
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    public String getExcerpt() { return excerpt; }
+    public void setExcerpt(String excerpt) { this.excerpt = excerpt; }
+    public String getVisibility() { return visibility; }
+    public void setVisibility(String visibility) { this.visibility = visibility; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Boolean getIsLocked() { return isLocked; }
+    public void setIsLocked(Boolean isLocked) { this.isLocked = isLocked; }
+    public Instant getUnlockAt() { return unlockAt; }
+    public void setUnlockAt(Instant unlockAt) { this.unlockAt = unlockAt; }
+    public Instant getOpenedAt() { return openedAt; }
+    public void setOpenedAt(Instant openedAt) { this.openedAt = openedAt; }
+    public Instant getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(Instant expiresAt) { this.expiresAt = expiresAt; }
+    public String getGeoMarkerId() { return geoMarkerId; }
+    public void setGeoMarkerId(String geoMarkerId) { this.geoMarkerId = geoMarkerId; }
+    public CapsuleResponse.GeoPoint getLocation() { return location; }
+    public void setLocation(CapsuleResponse.GeoPoint location) { this.location = location; }
+    public Boolean getAllowComments() { return allowComments; }
+    public void setAllowComments(Boolean allowComments) { this.allowComments = allowComments; }
+    public Boolean getAllowReactions() { return allowReactions; }
+    public void setAllowReactions(Boolean allowReactions) { this.allowReactions = allowReactions; }
+    public List<String> getTags() { return tags; }
+    public void setTags(List<String> tags) { this.tags = tags; }
+    public String getCoverImageUrl() { return coverImageUrl; }
+    public void setCoverImageUrl(String coverImageUrl) { this.coverImageUrl = coverImageUrl; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
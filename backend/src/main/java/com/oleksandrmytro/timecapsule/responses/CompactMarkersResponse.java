@@ -0,0 +1,72 @@
+package com.oleksandrmytro.timecapsule.responses;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Компактне (колонкове) представлення маркерів карти для application/cbor.
+ * i-й маркер — i-ті елементи всіх списків items*. Координати — fixed-point (градуси * 1e6),
+ * дельта від попереднього маркера (перший — від 0). Власники винесені в словник owners*,
+ * маркер посилається на індекс власника. id — 12 байт ObjectId, час — epoch seconds.
+ * count: 1 — звичайний маркер, >1 — кластер (решта полів — representative, координати — центроїд).
+ * flags: біт 0 — isLocked, біт 1 — isOwn.
+ */
+public class CompactMarkersResponse {
+    private int version = 1;
+    private int scale = 1_000_000;
+
+    private List<byte[]> ownerIds = new ArrayList<>();
+    private List<String> ownerNames = new ArrayList<>();
+    private List<String> ownerAvatarUrls = new ArrayList<>();
+
+    private List<byte[]> ids = new ArrayList<>();
+    private List<Integer> owners = new ArrayList<>();
+    private List<Integer> counts = new ArrayList<>();
+    private List<Long> lonDeltas = new ArrayList<>();
+    private List<Long> latDeltas = new ArrayList<>();
+    private List<String> titles = new ArrayList<>();
+    private List<String> visibilities = new ArrayList<>();
+    private List<String> statuses = new ArrayList<>();
+    private List<Integer> flags = new ArrayList<>();
+    private List<String> coverImageUrls = new ArrayList<>();
+    private List<Long> unlockAt = new ArrayList<>();
+    private List<Long> openedAt = new ArrayList<>();
+    private List<List<String>> tags = new ArrayList<>();
+
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+    public int getScale() { return scale; }
+    public void setScale(int scale) { this.scale = scale; }
+    public List<byte[]> getOwnerIds() { return ownerIds; }
+    public void setOwnerIds(List<byte[]> ownerIds) { this.ownerIds = ownerIds; }
+    public List<String> getOwnerNames() { return ownerNames; }
+    public void setOwnerNames(List<String> ownerNames) { this.ownerNames = ownerNames; }
+    public List<String> getOwnerAvatarUrls() { return ownerAvatarUrls; }
+    public void setOwnerAvatarUrls(List<String> ownerAvatarUrls) { this.ownerAvatarUrls = ownerAvatarUrls; }
+    public List<byte[]> getIds() { return ids; }
+    public void setIds(List<byte[]> ids) { this.ids = ids; }
+    public List<Integer> getOwners() { return owners; }
+    public void setOwners(List<Integer> owners) { this.owners = owners; }
+    public List<Integer> getCounts() { return counts; }
+    public void setCounts(List<Integer> counts) { this.counts = counts; }
+    public List<Long> getLonDeltas() { return lonDeltas; }
+    public void setLonDeltas(List<Long> lonDeltas) { this.lonDeltas = lonDeltas; }
+    public List<Long> getLatDeltas() { return latDeltas; }
+    public void setLatDeltas(List<Long> latDeltas) { this.latDeltas = latDeltas; }
+    public List<String> getTitles() { return titles; }
+    public void setTitles(List<String> titles) { this.titles = titles; }
+    public List<String> getVisibilities() { return visibilities; }
+    public void setVisibilities(List<String> visibilities) { this.visibilities = visibilities; }
+    public List<String> getStatuses() { return statuses; }
+    public void setStatuses(List<String> statuses) { this.statuses = statuses; }
+    public List<Integer> getFlags() { return flags; }
+    public void setFlags(List<Integer> flags) { this.flags = flags; }
+    public List<String> getCoverImageUrls() { return coverImageUrls; }
+    public void setCoverImageUrls(List<String> coverImageUrls) { this.coverImageUrls = coverImageUrls; }
+    public List<Long> getUnlockAt() { return unlockAt; }
+    public void setUnlockAt(List<Long> unlockAt) { this.unlockAt = unlockAt; }
+    public List<Long> getOpenedAt() { return openedAt; }
+    public void setOpenedAt(List<Long> openedAt) { this.openedAt = openedAt; }
+    public List<List<String>> getTags() { return tags; }
+    public void setTags(List<List<String>> tags) { this.tags = tags; }
+}
@@ -0,0 +1,27 @@
+package com.oleksandrmytro.timecapsule.responses;
+
+import java.util.List;
+
+/**
+ * Клітинка heatmap: geohash, кількість публічних маркерів і центр клітинки [lon, lat].
+ */
+public class HeatmapCellResponse {
+    private String cell;
+    private long count;
+    private List<Double> coordinates;
+
+    public HeatmapCellResponse() {}
+
+    public HeatmapCellResponse(String cell, long count, List<Double> coordinates) {
+        this.cell = cell;
+        this.count = count;
+        this.coordinates = coordinates;
+    }
+
+    public String getCell() { return cell; }
+    public void setCell(String cell) { this.cell = cell; }
+    public long getCount() { return count; }
+    public void setCount(long count) { this.count = count; }
+    public List<Double> getCoordinates() { return coordinates; }
+    public void setCoordinates(List<Double> coordinates) { this.coordinates = coordinates; }
+}
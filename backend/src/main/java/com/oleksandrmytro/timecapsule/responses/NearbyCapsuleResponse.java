@@ -0,0 +1,21 @@
+package com.oleksandrmytro.timecapsule.responses;
+
+/**
+ * Публічна капсула поруч із точкою: summary-модель і відстань до її маркера в метрах.
+ */
+public class NearbyCapsuleResponse {
+    private CapsuleSummaryResponse capsule;
+    private double distanceMeters;
+
+    public NearbyCapsuleResponse() {}
+
+    public NearbyCapsuleResponse(CapsuleSummaryResponse capsule, double distanceMeters) {
+        this.capsule = capsule;
+        this.distanceMeters = distanceMeters;
+    }
+
+    public CapsuleSummaryResponse getCapsule() { return capsule; }
+    public void setCapsule(CapsuleSummaryResponse capsule) { this.capsule = capsule; }
+    public double getDistanceMeters() { return distanceMeters; }
+    public void setDistanceMeters(double distanceMeters) { this.distanceMeters = distanceMeters; }
+}
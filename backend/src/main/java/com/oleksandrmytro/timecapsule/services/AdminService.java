@@ -28,6 +28,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Locale;
 import java.util.Set;
 import java.util.HashMap;
@@ -42,6 +43,11 @@ public class AdminService {
     private final PasswordEncoder passwordEncoder;
     private final EmailService emailService;
     private final AdminAuditLogRepository adminAuditLogRepository;
+    private final CapsuleUnlockEngine unlockEngine;
+    private final PublicCapsuleCache publicCapsuleCache;
+    private final CapsuleRouteService capsuleRoutes;
+    private final PrincipalCache principalCache;
+    private final CapsuleService capsuleService;
     private final java.security.SecureRandom secureRandom = new java.security.SecureRandom();
 
     private static final Set<String> MANAGED_COLLECTIONS = Set.of(
@@ -69,7 +75,12 @@ public class AdminService {
             TagService tagService,
             PasswordEncoder passwordEncoder,
             EmailService emailService,
-            AdminAuditLogRepository adminAuditLogRepository
+            AdminAuditLogRepository adminAuditLogRepository,
+            CapsuleUnlockEngine unlockEngine,
+            PublicCapsuleCache publicCapsuleCache,
+            CapsuleRouteService capsuleRoutes,
+            PrincipalCache principalCache,
+            CapsuleService capsuleService
     ) {
         this.userRepository = userRepository;
         this.capsuleRepository = capsuleRepository;
@@ -78,6 +89,11 @@ public class AdminService {
         this.passwordEncoder = passwordEncoder;
         this.emailService = emailService;
         this.adminAuditLogRepository = adminAuditLogRepository;
+        this.unlockEngine = unlockEngine;
+        this.publicCapsuleCache = publicCapsuleCache;
+        this.capsuleRoutes = capsuleRoutes;
+        this.principalCache = principalCache;
+        this.capsuleService = capsuleService;
     }
 
     /* ── Stats ─────────────────────────── */
@@ -375,6 +391,7 @@ public class AdminService {
             default -> throw new IllegalArgumentException("Unsupported user bulk action: " + action);
         }
         long modified = mongoTemplate.updateMulti(q, u, User.class).getModifiedCount();
+        principalCache.invalidateAll(ids);
         var details = new HashMap<String, Object>();
         details.put("ids", ids);
         details.put("value", value);
@@ -408,18 +425,27 @@ public class AdminService {
     }
 
     public void deleteCapsule(String id, User actor) {
-        Query q = new Query(Criteria.where("_id").is(id));
+        Capsule existing = Optional.ofNullable(capsuleRoutes.find(id))
+                .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
+        // Власник із щойно прочитаної капсули: закешований маршрут може бути застарілим
+        Query q = new Query(Criteria.where("_id").is(id).and("ownerId").is(existing.getOwnerId()));
         Update u = new Update().set("deletedAt", Instant.now()).set("updatedAt", Instant.now());
         mongoTemplate.updateFirst(q, u, Capsule.class);
+        Capsule deleted = Optional.ofNullable(capsuleRoutes.find(id))
+                .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
+        capsuleService.syncGeoMarker(deleted);
         audit(actor, "CAPSULE_SOFT_DELETE", "capsule", id, Map.of());
     }
 
     public Capsule restoreCapsule(String id, User actor) {
-        Query q = new Query(Criteria.where("_id").is(id));
+        Capsule existing = Optional.ofNullable(capsuleRoutes.find(id))
+                .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
+        Query q = new Query(Criteria.where("_id").is(id).and("ownerId").is(existing.getOwnerId()));
         Update u = new Update().unset("deletedAt").set("updatedAt", Instant.now());
         mongoTemplate.updateFirst(q, u, Capsule.class);
-        Capsule capsule = capsuleRepository.findById(id)
+        Capsule capsule = Optional.ofNullable(capsuleRoutes.find(id))
                 .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
+        capsuleService.syncGeoMarker(capsule);
         audit(actor, "CAPSULE_RESTORE", "capsule", id, Map.of());
         return capsule;
     }
@@ -436,6 +462,11 @@ public class AdminService {
             default -> throw new IllegalArgumentException("Unsupported capsule bulk action: " + action);
         }
         long modified = mongoTemplate.updateMulti(q, u, Capsule.class).getModifiedCount();
+        publicCapsuleCache.invalidateAll(ids);
+        // Видимість/статус/видалення змінюють публічність маркера: heatmap, тайли, індекс
+        for (Capsule capsule : mongoTemplate.find(new Query(Criteria.where("_id").in(ids)), Capsule.class)) {
+            capsuleService.syncGeoMarker(capsule);
+        }
         var details = new HashMap<String, Object>();
         details.put("ids", ids);
         details.put("value", value);
@@ -445,11 +476,13 @@ public class AdminService {
     }
 
     public Capsule updateCapsule(String id, Map<String, Object> updates, User actor) {
-        capsuleRepository.findById(id)
+        Capsule existing = Optional.ofNullable(capsuleRoutes.find(id))
                 .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
 
-        Query q = new Query(Criteria.where("_id").is(id));
+        // Повний shard key у фільтрі — інакше sharded-кластер не дозволить змінити ownerId
+        Query q = new Query(Criteria.where("_id").is(id).and("ownerId").is(existing.getOwnerId()));
         Update u = new Update();
+        ObjectId newOwnerId = null;
 
         if (updates.containsKey("title")) u.set("title", updates.get("title"));
         if (updates.containsKey("body")) u.set("body", updates.get("body"));
@@ -467,7 +500,9 @@ public class AdminService {
             } else if (!ObjectId.isValid(ownerId)) {
                 throw new IllegalArgumentException("Invalid ownerId");
             } else {
-                u.set("ownerId", new ObjectId(ownerId));
+                newOwnerId = new ObjectId(ownerId);
+                u.set("ownerId", newOwnerId);
+                u.set("unlockBucket", CapsuleUnlockEngine.unlockBucketOf(newOwnerId));
             }
         }
         if (updates.containsKey("unlockAt")) {
@@ -483,9 +518,14 @@ public class AdminService {
 
         u.set("updatedAt", Instant.now());
         mongoTemplate.updateFirst(q, u, Capsule.class);
+        if (newOwnerId != null) {
+            capsuleRoutes.register(id, newOwnerId);
+        }
 
-        Capsule updated = capsuleRepository.findById(id)
+        Capsule updated = Optional.ofNullable(capsuleRoutes.find(id))
                 .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
+        capsuleService.syncGeoMarker(updated);
+        unlockEngine.arm(updated);
         audit(actor, "CAPSULE_UPDATE", "capsule", id, updates);
         return updated;
     }
@@ -622,6 +662,11 @@ public class AdminService {
             if (!"_id".equals(k)) u.set(k, v);
         });
         mongoTemplate.updateFirst(q, u, collection);
+        if ("capsules".equals(collection)) {
+            publicCapsuleCache.invalidate(id);
+        } else if ("users".equals(collection)) {
+            principalCache.invalidate(id);
+        }
         Document updated = mongoTemplate.findOne(q, Document.class, collection);
         audit(actor, "COLLECTION_UPDATE", collection, id, updates);
         return sanitizeDocumentForResponse(collection, normalizeDocumentForResponse(updated));
@@ -631,6 +676,11 @@ public class AdminService {
         ensureAllowedCollection(collection);
         Query q = new Query(idCriteria(id));
         mongoTemplate.remove(q, collection);
+        if ("capsules".equals(collection)) {
+            publicCapsuleCache.invalidate(id);
+        } else if ("users".equals(collection)) {
+            principalCache.invalidate(id);
+        }
         audit(actor, "COLLECTION_DELETE", collection, id, Map.of());
     }
 
@@ -790,10 +840,11 @@ public class AdminService {
             targeted.addCriteria(Criteria.where("username").is(originalUsername));
         }
         var targetedResult = mongoTemplate.updateFirst(targeted, update, User.class);
-        if (targetedResult.getMatchedCount() > 0) {
-            return;
+        if (targetedResult.getMatchedCount() == 0) {
+            mongoTemplate.updateFirst(new Query(idCriteria(id)), update, User.class);
         }
-        mongoTemplate.updateFirst(new Query(idCriteria(id)), update, User.class);
+        // Блокування/видалення/роль діють з наступного ж запиту, без очікування TTL
+        principalCache.invalidate(id);
     }
 
     private void updateUserByIdentity(User user, Update update) {
@@ -806,10 +857,10 @@ public class AdminService {
         }
 
         var targetedResult = mongoTemplate.updateFirst(targeted, update, User.class);
-        if (targetedResult.getMatchedCount() > 0) {
-            return;
+        if (targetedResult.getMatchedCount() == 0) {
+            mongoTemplate.updateFirst(new Query(idCriteria(user.getId())), update, User.class);
         }
-        mongoTemplate.updateFirst(new Query(idCriteria(user.getId())), update, User.class);
+        principalCache.invalidate(user.getId());
     }
 
     private void ensureAllowedCollection(String name) {
@@ -209,39 +209,41 @@ public class AuthenticationService {
     }
 
     public LoginResponse refreshTokens(String refreshToken) {
-        // extractUsername повертає subject з JWT — тепер це userId (раніше був email)
-        String subject = jwtService.extractUsername(refreshToken);
+        // subject з JWT — тепер це userId (раніше був email); токен розбирається один раз
+        VerifiedToken token = jwtService.verify(refreshToken);
+        String subject = token.subject();
         // Шукаємо по userId (новий формат), fallback на email (старі токени)
         User user = userRepository.findById(subject)
                 .orElseGet(() -> userRepository.findByEmail(subject)
                         .orElseThrow(() -> new IllegalArgumentException("User not found")));
 
-        if (!jwtService.isRefreshTokenValid(refreshToken, user)) {
+        if (!jwtService.isRefreshTokenValid(token, user)) {
             log.warn("Refresh token rejected for userId={} email={}", user.getId(), user.getEmail());
             throw new IllegalArgumentException("Invalid refresh token");
         }
         ensureAccountCanAuthenticate(user);
 
-        ImpersonationContext impersonation = extractImpersonationContext(refreshToken);
+        ImpersonationContext impersonation = extractImpersonationContext(token);
         return buildTokens(user, impersonation);
     }
 
     public LoginResponse refreshWithRotationCheck(String refreshToken) {
-        // extractUsername повертає subject з JWT — тепер це userId (раніше був email)
-        String subject = jwtService.extractUsername(refreshToken);
+        // subject з JWT — тепер це userId (раніше був email); токен розбирається один раз
+        VerifiedToken token = jwtService.verify(refreshToken);
+        String subject = token.subject();
         // Шукаємо по userId (новий формат), fallback на email (старі токени)
         User user = userRepository.findById(subject)
                 .orElseGet(() -> userRepository.findByEmail(subject)
                         .orElseThrow(() -> new IllegalArgumentException("User not found")));
 
-        if (!jwtService.isRefreshTokenValid(refreshToken, user)) {
+        if (!jwtService.isRefreshTokenValid(token, user)) {
             log.warn("Refresh token rejected for userId={} email={}", user.getId(), user.getEmail());
             throw new IllegalArgumentException("Invalid refresh token");
         }
         ensureAccountCanAuthenticate(user);
 
-        if (jwtService.isKidMismatched(refreshToken)) {
-            return buildTokens(user, extractImpersonationContext(refreshToken));
+        if (jwtService.isKidMismatched(token)) {
+            return buildTokens(user, extractImpersonationContext(token));
         }
         return null;
     }
@@ -313,12 +315,12 @@ public class AuthenticationService {
         return response;
     }
 
-    private ImpersonationContext extractImpersonationContext(String token) {
-        String adminId = jwtService.extractClaim(token, claims -> claims.get(IMPERSONATED_BY_ADMIN_ID_CLAIM, String.class));
+    private ImpersonationContext extractImpersonationContext(VerifiedToken token) {
+        String adminId = token.claim(IMPERSONATED_BY_ADMIN_ID_CLAIM, String.class);
         if (!StringUtils.hasText(adminId)) {
             return null;
         }
-        String adminEmail = jwtService.extractClaim(token, claims -> claims.get(IMPERSONATED_BY_ADMIN_EMAIL_CLAIM, String.class));
+        String adminEmail = token.claim(IMPERSONATED_BY_ADMIN_EMAIL_CLAIM, String.class);
         return new ImpersonationContext(adminId, adminEmail);
     }
 
@@ -0,0 +1,60 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import org.bson.Document;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Notification stage for opened capsules: the WS status event and the capsule-opened email are
+ * written to the outbox, so the caller can enqueue them in the same transaction as the open.
+ * Delivery happens in {@link OutboxDispatcher}; the owner is resolved there, only for the email.
+ */
+@Service
+public class CapsuleOpenedNotifier {
+
+    private final OutboxService outboxService;
+
+    public CapsuleOpenedNotifier(OutboxService outboxService) {
+        this.outboxService = outboxService;
+    }
+
+    public void publish(Capsule capsule) {
+        if (capsule == null) {
+            return;
+        }
+        publishAll(List.of(capsule));
+    }
+
+    /**
+     * One insertMany per row type for the whole batch.
+     */
+    public void publishAll(List<Capsule> capsules) {
+        List<Document> statuses = new ArrayList<>(capsules.size());
+        List<Document> emails = new ArrayList<>(capsules.size());
+        for (Capsule capsule : capsules) {
+            if (capsule == null || capsule.getId() == null || capsule.getOwnerId() == null) {
+                continue;
+            }
+            String ownerId = capsule.getOwnerId().toHexString();
+            Instant openedAt = capsule.getOpenedAt() != null ? capsule.getOpenedAt() : Instant.now();
+            statuses.add(new Document("userId", ownerId)
+                    .append("capsuleId", capsule.getId())
+                    .append("status", CapsuleStatus.OPENED.getValue())
+                    .append("isLocked", false)
+                    .append("unlockAt", capsule.getUnlockAt() != null ? Date.from(capsule.getUnlockAt()) : null)
+                    .append("openedAt", Date.from(openedAt))
+                    .append("tags", capsule.getTags()));
+            emails.add(new Document("ownerId", ownerId)
+                    .append("capsuleId", capsule.getId())
+                    .append("title", capsule.getTitle()));
+        }
+        outboxService.enqueueAll(OutboxService.TYPE_CAPSULE_STATUS, statuses);
+        outboxService.enqueueAll(OutboxService.TYPE_CAPSULE_OPENED_EMAIL, emails);
+    }
+}
@@ -0,0 +1,151 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Routes by-id capsule reads to one shard. capsules is sharded on hashed ownerId, so a filter on
+ * _id alone is a scatter-gather over every shard; this service resolves capsuleId -> ownerId and
+ * adds the shard key to the filter.
+ *
+ * Routes live in the small unsharded capsule_routes collection ({_id: capsuleId, ownerId}),
+ * written on create and on owner reassignment, with an in-memory LRU in front (owners rarely
+ * change). Capsules without a route (created before it existed) are resolved once by a
+ * scatter query and backfilled. A route that no longer matches (owner reassigned on another
+ * replica) is repaired the same way.
+ */
+@Service
+public class CapsuleRouteService {
+
+    static final String COLLECTION = "capsule_routes";
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, ObjectId> owners;
+
+    public CapsuleRouteService(MongoTemplate mongoTemplate,
+                               MeterRegistry registry,
+                               @Value("${app.capsules.routes.cache-size:100000}") long cacheSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.owners = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, cacheSize))
+                .recordStats()
+                .build();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, owners, "capsules.routes");
+        }
+    }
+
+    /**
+     * Stores the route of a new capsule, or the new owner after a reassignment.
+     */
+    public void register(String capsuleId, ObjectId ownerId) {
+        if (!ObjectId.isValid(capsuleId) || ownerId == null) {
+            return;
+        }
+        storeRoute(capsuleId, ownerId);
+        owners.put(capsuleId, ownerId);
+    }
+
+    /**
+     * Owner (shard key) of the capsule, or null when no such capsule exists.
+     */
+    public ObjectId ownerOf(String capsuleId) {
+        if (!ObjectId.isValid(capsuleId)) {
+            return null;
+        }
+        return owners.get(capsuleId, this::loadRoute);
+    }
+
+    /**
+     * _id plus shard key, for by-id updates. For an unknown capsule ownerId is null: the filter
+     * matches nothing and still targets a single shard.
+     */
+    public Criteria byId(String capsuleId) {
+        return Criteria.where("_id").is(capsuleId).and("ownerId").is(ownerOf(capsuleId));
+    }
+
+    /**
+     * Shard-targeted replacement for CapsuleRepository.findByIdAndDeletedAtIsNull.
+     */
+    public Optional<Capsule> findActive(String capsuleId) {
+        Capsule capsule = find(capsuleId);
+        return capsule != null && capsule.getDeletedAt() == null ? Optional.of(capsule) : Optional.empty();
+    }
+
+    /**
+     * Shard-targeted by-id read, soft-deleted capsules included.
+     */
+    public Capsule find(String capsuleId) {
+        ObjectId owner = ownerOf(capsuleId);
+        if (owner == null) {
+            return null;
+        }
+        Capsule capsule = findRouted(capsuleId, owner);
+        if (capsule == null) {
+            // Route is stale: rebuild it from the capsule itself.
+            ObjectId actual = resolveFromCapsules(capsuleId);
+            if (actual != null && !actual.equals(owner)) {
+                capsule = findRouted(capsuleId, actual);
+            }
+        }
+        return capsule;
+    }
+
+    private Capsule findRouted(String capsuleId, ObjectId owner) {
+        return mongoTemplate.findOne(new Query(Criteria.where("_id").is(capsuleId).and("ownerId").is(owner)), Capsule.class);
+    }
+
+    private ObjectId loadRoute(String capsuleId) {
+        Document route = mongoTemplate.findById(new ObjectId(capsuleId), Document.class, COLLECTION);
+        if (route != null && route.get("ownerId") instanceof ObjectId ownerId) {
+            return ownerId;
+        }
+        return backfill(capsuleId);
+    }
+
+    private ObjectId resolveFromCapsules(String capsuleId) {
+        ObjectId ownerId = backfill(capsuleId);
+        if (ownerId != null) {
+            owners.put(capsuleId, ownerId);
+        } else {
+            owners.invalidate(capsuleId);
+        }
+        return ownerId;
+    }
+
+    /**
+     * The one scatter query per unrouted capsule. Runs inside the cache loader, so it must not
+     * touch the cache itself.
+     */
+    private ObjectId backfill(String capsuleId) {
+        Query query = new Query(Criteria.where("_id").is(capsuleId));
+        query.fields().include("ownerId");
+        Capsule capsule = mongoTemplate.findOne(query, Capsule.class);
+        if (capsule == null || capsule.getOwnerId() == null) {
+            return null;
+        }
+        storeRoute(capsuleId, capsule.getOwnerId());
+        return capsule.getOwnerId();
+    }
+
+    private void storeRoute(String capsuleId, ObjectId ownerId) {
+        mongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(new ObjectId(capsuleId))),
+                new Update().set("ownerId", ownerId),
+                COLLECTION
+        );
+    }
+}
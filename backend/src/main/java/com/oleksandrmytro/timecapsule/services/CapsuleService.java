@@ -2,14 +2,12 @@ package com.oleksandrmytro.timecapsule.services;
 
 import com.oleksandrmytro.timecapsule.dto.CreateCapsuleRequest;
 import com.oleksandrmytro.timecapsule.dto.UpdateCapsuleRequest;
-import com.oleksandrmytro.timecapsule.events.CapsuleStatusEvent;
 import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.ChatMessage;
 import com.oleksandrmytro.timecapsule.models.Share;
 import com.oleksandrmytro.timecapsule.models.User;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleVisibility;
-import com.oleksandrmytro.timecapsule.models.enums.ChatMessageStatus;
-import com.oleksandrmytro.timecapsule.models.enums.ChatMessageType;
 import com.oleksandrmytro.timecapsule.models.enums.ShareRole;
 import com.oleksandrmytro.timecapsule.models.enums.ShareStatus;
 import com.oleksandrmytro.timecapsule.models.enums.ShareVia;
@@ -17,28 +15,50 @@ import com.oleksandrmytro.timecapsule.repositories.CapsuleRepository;
 import com.oleksandrmytro.timecapsule.repositories.FollowRepository;
 import com.oleksandrmytro.timecapsule.repositories.ShareRepository;
 import com.oleksandrmytro.timecapsule.repositories.UserRepository;
+import com.oleksandrmytro.timecapsule.responses.CalendarDayResponse;
+import com.oleksandrmytro.timecapsule.responses.CapsulePageResponse;
 import com.oleksandrmytro.timecapsule.responses.CapsuleResponse;
+import com.oleksandrmytro.timecapsule.responses.CapsuleSummaryResponse;
+import com.oleksandrmytro.timecapsule.responses.NearbyCapsuleResponse;
+import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoExpression;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
 import org.springframework.data.mongodb.core.mapping.Field;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -46,34 +66,74 @@ import java.util.stream.Collectors;
 public class CapsuleService {
 
     private static final String GEO_MARKERS_COLLECTION = "geomarkers";
+    private static final int PUBLIC_PAGE_DEFAULT_LIMIT = 20;
+    private static final int PUBLIC_PAGE_MAX_LIMIT = 100;
+    private static final double NEARBY_DEFAULT_RADIUS_METERS = 5_000;
+    private static final double NEARBY_MAX_RADIUS_METERS = 100_000;
+    private static final int SUMMARY_EXCERPT_LENGTH = 200;
+    // Кандидати в representative на клітинку тайла з PublicMarkerIndex (запас на відставання індексу)
+    private static final int TILE_REPRESENTATIVE_CANDIDATES = 3;
+    // Відносний запас межі курсора, коли відстані першої сторінки пораховані PublicMarkerIndex
+    private static final double NEARBY_INDEX_DISTANCE_SLACK = 1e-9;
+    private static final String[] SUMMARY_FIELDS = {
+            "ownerId", "title", "visibility", "status", "unlockAt", "openedAt", "expiresAt", "geoMarkerId",
+            "location", "allowComments", "allowReactions", "tags", "coverImageUrl", "createdAt", "updatedAt"
+    };
+    private static final String GEO_RESOLVE_LEGACY = "legacy";
 
     private final CapsuleRepository capsuleRepository;
     private final MongoTemplate mongoTemplate;
-    private final CapsuleNotificationService capsuleNotificationService;
     private final UserRepository userRepository;
     private final FollowRepository followRepository;
     private final ShareRepository shareRepository;
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatService chatService;
-    private final EmailService emailService;
-
-    public CapsuleService(CapsuleRepository capsuleRepository, MongoTemplate mongoTemplate, CapsuleNotificationService capsuleNotificationService, UserRepository userRepository, FollowRepository followRepository, ShareRepository shareRepository, SimpMessagingTemplate messagingTemplate, ChatService chatService, EmailService emailService) {
+    private final CapsuleUnlockEngine unlockEngine;
+    private final CapsuleOpenedNotifier openedNotifier;
+    private final CapsuleUnlockMetrics unlockMetrics;
+    private final MarkerTileCache markerTileCache;
+    private final PublicCapsuleCache publicCapsuleCache;
+    private final RequestCoalescer requestCoalescer;
+    private final CapsuleShareNotifier shareNotifier;
+    private final OutboxService outboxService;
+    private final CapsuleRouteService capsuleRoutes;
+    private final PrincipalLookupService principalLookupService;
+    private final PublicMarkerIndex publicMarkerIndex;
+    private final GeoHeatmapService geoHeatmapService;
+
+    // lookup | legacy — див. findListed
+    @Value("${app.capsules.geo.resolve-mode:lookup}")
+    private String geoResolveMode;
+
+    // Виставляє GeoMarkerMigrator: після міграції координати читаються лише з geomarkers
+    private volatile boolean legacyLocationsDrained;
+    private volatile boolean markerOwnersBackfilled;
+
+    public CapsuleService(CapsuleRepository capsuleRepository, MongoTemplate mongoTemplate, UserRepository userRepository, FollowRepository followRepository, ShareRepository shareRepository, SimpMessagingTemplate messagingTemplate, ChatService chatService, CapsuleUnlockEngine unlockEngine, CapsuleOpenedNotifier openedNotifier, CapsuleUnlockMetrics unlockMetrics, MarkerTileCache markerTileCache, PublicMarkerIndex publicMarkerIndex, GeoHeatmapService geoHeatmapService, PublicCapsuleCache publicCapsuleCache, RequestCoalescer requestCoalescer, CapsuleShareNotifier shareNotifier, OutboxService outboxService, CapsuleRouteService capsuleRoutes, PrincipalLookupService principalLookupService) {
         this.capsuleRepository = capsuleRepository;
         this.mongoTemplate = mongoTemplate;
-        this.capsuleNotificationService = capsuleNotificationService;
         this.userRepository = userRepository;
         this.followRepository = followRepository;
         this.shareRepository = shareRepository;
         this.messagingTemplate = messagingTemplate;
         this.chatService = chatService;
-        this.emailService = emailService;
+        this.unlockEngine = unlockEngine;
+        this.openedNotifier = openedNotifier;
+        this.unlockMetrics = unlockMetrics;
+        this.markerTileCache = markerTileCache;
+        this.publicCapsuleCache = publicCapsuleCache;
+        this.requestCoalescer = requestCoalescer;
+        this.shareNotifier = shareNotifier;
+        this.outboxService = outboxService;
+        this.capsuleRoutes = capsuleRoutes;
+        this.principalLookupService = principalLookupService;
+        this.publicMarkerIndex = publicMarkerIndex;
+        this.geoHeatmapService = geoHeatmapService;
     }
 
-    private void notifyOwner(String ownerId, Capsule capsule) {
-        userRepository.findById(ownerId).ifPresent(user ->
-                capsuleNotificationService.sendStatus(user.getId(), toEvent(capsule))
-        );
-        emailService.sendCapsuleOpened(ownerId, capsule);
+    private void notifyOwner(Capsule capsule) {
+        unlockMetrics.recordOpened(capsule, CapsuleUnlockMetrics.SOURCE_READ);
+        openedNotifier.publish(capsule);
     }
 
     public CapsuleResponse create(String ownerId, CreateCapsuleRequest request) {
@@ -89,6 +149,7 @@ public class CapsuleService {
 
         Capsule capsule = new Capsule();
         capsule.setOwnerId(new ObjectId(ownerId));
+        capsule.setUnlockBucket(CapsuleUnlockEngine.unlockBucketOf(capsule.getOwnerId()));
         capsule.setTitle(request.getTitle().trim());
         capsule.setBody(normalizeBlankToNull(request.getBody()));
         capsule.setVisibility(visibility);
@@ -116,6 +177,7 @@ public class CapsuleService {
         capsule.setUpdatedAt(now);
 
         Capsule saved = capsuleRepository.save(capsule);
+        capsuleRoutes.register(saved.getId(), saved.getOwnerId());
         if (requestedLocation != null) {
             try {
                 ObjectId geoMarkerId = upsertGeoMarker(saved, requestedLocation, visibility);
@@ -139,14 +201,16 @@ public class CapsuleService {
                                 .set("updatedAt", Instant.now()),
                         Capsule.class
                 );
+                enqueueGeoMarkerRetry(saved);
             }
         }
+        unlockEngine.arm(saved);
         return toResponse(saved);
     }
 
     public CapsuleResponse getEditable(String capsuleId, String actorId) {
         User actor = requireActor(actorId);
-        Capsule capsule = capsuleRepository.findByIdAndDeletedAtIsNull(capsuleId)
+        Capsule capsule = capsuleRoutes.findActive(capsuleId)
                 .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
 
         ensureCanEdit(capsule, actor);
@@ -155,7 +219,7 @@ public class CapsuleService {
 
     public CapsuleResponse update(String capsuleId, String actorId, UpdateCapsuleRequest request) {
         User actor = requireActor(actorId);
-        Capsule capsule = capsuleRepository.findByIdAndDeletedAtIsNull(capsuleId)
+        Capsule capsule = capsuleRoutes.findActive(capsuleId)
                 .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
 
         boolean isAdmin = actor.getRole() == User.Role.ADMIN;
@@ -198,6 +262,7 @@ public class CapsuleService {
         }
 
         Capsule.GeoPoint requestedLocation = normalizeGeo(mapGeo(request.getLocation()));
+        boolean geoMarkerFailed = false;
         if (requestedLocation == null) {
             archiveGeoMarkers(capsule);
             capsule.setGeoMarkerId(null);
@@ -211,6 +276,7 @@ public class CapsuleService {
                 // Fallback for resilience: preserve location in capsule document.
                 capsule.setGeoMarkerId(null);
                 capsule.setLocation(requestedLocation);
+                geoMarkerFailed = true;
             }
         }
 
@@ -279,10 +345,15 @@ public class CapsuleService {
         }
 
         mongoTemplate.updateFirst(persistQuery, persistUpdate, Capsule.class);
+        publicCapsuleCache.invalidate(capsuleId);
         Capsule saved = mongoTemplate.findOne(persistQuery, Capsule.class);
         if (saved == null) {
             throw new IllegalStateException("Failed to persist capsule update");
         }
+        if (geoMarkerFailed) {
+            enqueueGeoMarkerRetry(saved);
+        }
+        unlockEngine.arm(saved);
         return toResponse(saved, null, true);
     }
 
@@ -404,44 +475,317 @@ public class CapsuleService {
     }
 
     public List<CapsuleResponse> listMine(String ownerId) {
-        ObjectId owner = new ObjectId(ownerId);
-        // Знаходимо капсули, що вже мають бути відкриті, щоб надіслати нотифікації пізніше
-        Query readyQuery = new Query(
-                Criteria.where("ownerId").is(owner)
-                        .and("status").is(CapsuleStatus.SEALED.getValue())
-                        .and("deletedAt").is(null)
-                        .and("unlockAt").lte(Instant.now())
-        );
-        var ready = mongoTemplate.find(readyQuery, Capsule.class);
+        return toResponses(findMine(ownerId, false));
+    }
 
-        // Масово знімаємо блокування для готових капсул (shard-key targeted)
-        Update unlockUpdate = new Update()
-                .set("status", CapsuleStatus.OPENED.getValue())
-                .set("openedAt", Instant.now())
-                .set("updatedAt", Instant.now());
-        mongoTemplate.updateMulti(readyQuery, unlockUpdate, Capsule.class);
+    public List<CapsuleSummaryResponse> listMineSummaries(String ownerId) {
+        return toSummaries(findMine(ownerId, true));
+    }
 
-        // Надсилаємо повідомлення про відкриття тим, хто був у черзі
-        ready.forEach(c -> notifyOwner(ownerId, toUnlocked(c)));
+    public List<CapsuleResponse> listPublic() {
+        return toResponses(findPublic(false));
+    }
 
-        List<Capsule> capsules = capsuleRepository.findByOwnerIdAndDeletedAtIsNullOrderByCreatedAtDesc(owner);
-        Map<String, Capsule.GeoPoint> locationsByCapsuleId = resolveGeoLocationsByCapsuleId(capsules);
-        return capsules.stream()
-                .map(c -> toResponse(c, locationsByCapsuleId))
-                .collect(Collectors.toList());
+    public List<CapsuleSummaryResponse> listPublicSummaries() {
+        return toSummaries(findPublic(true));
     }
 
-    public List<CapsuleResponse> listPublic() {
-        List<Capsule> capsules = capsuleRepository.findByVisibilityAndDeletedAtIsNullOrderByCreatedAtDesc(
-                CapsuleVisibility.PUBLIC.getValue()
+    private ListedCapsules findMine(String ownerId, boolean summary) {
+        Query query = new Query(Criteria.where("ownerId").is(new ObjectId(ownerId)).and("deletedAt").is(null))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return findListed(query, summary);
+    }
+
+    private ListedCapsules findPublic(boolean summary) {
+        Query query = new Query(publicCriteria()).with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return findListed(query, summary);
+    }
+
+    private Criteria publicCriteria() {
+        return Criteria.where("visibility").is(CapsuleVisibility.PUBLIC.getValue())
+                .and("deletedAt").is(null)
+                .and("status").ne(CapsuleStatus.DRAFT.getValue());
+    }
+
+    /**
+     * Keyset-пагінація публічних капсул: порядок (createdAt desc, _id desc), курсор — остання
+     * видана пара. Чернетки відсікаються в запиті, гео резолвиться лише для сторінки.
+     * @param after курсор з попередньої сторінки (null — перша сторінка)
+     * @param limit розмір сторінки, обмежується PUBLIC_PAGE_MAX_LIMIT
+     */
+    public CapsulePageResponse<?> listPublicPage(String after, Integer limit, boolean full) {
+        int pageSize = limit == null || limit <= 0
+                ? PUBLIC_PAGE_DEFAULT_LIMIT
+                : Math.min(limit, PUBLIC_PAGE_MAX_LIMIT);
+
+        Criteria criteria = publicCriteria();
+        if (after != null && !after.isBlank()) {
+            PageCursor cursor = PageCursor.decode(after);
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(cursor.createdAt()),
+                    Criteria.where("createdAt").is(cursor.createdAt()).and("_id").lt(cursor.id())
+            );
+        }
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")))
+                .limit(pageSize + 1);
+
+        ListedCapsules listed = findListed(query, !full);
+        List<Capsule> capsules = listed.capsules();
+        String nextCursor = null;
+        if (capsules.size() > pageSize) {
+            capsules = capsules.subList(0, pageSize);
+            Capsule last = capsules.get(capsules.size() - 1);
+            nextCursor = new PageCursor(last.getCreatedAt(), new ObjectId(last.getId())).encode();
+        }
+
+        ListedCapsules page = new ListedCapsules(capsules, listed.locationsByCapsuleId());
+        if (full) {
+            return new CapsulePageResponse<>(toResponses(page), nextCursor);
+        }
+        return new CapsulePageResponse<>(toSummaries(page), nextCursor);
+    }
+
+    /**
+     * Курсор (createdAt, _id) у вигляді base64url("millis:hexId").
+     */
+    record PageCursor(Instant createdAt, ObjectId id) {
+
+        String encode() {
+            String raw = createdAt.toEpochMilli() + ":" + id.toHexString();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageCursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(':');
+                return new PageCursor(
+                        Instant.ofEpochMilli(Long.parseLong(raw.substring(0, separator))),
+                        new ObjectId(raw.substring(separator + 1))
+                );
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    /**
+     * Публічні капсули поруч із точкою, від найближчих. Один aggregate по geomarkers:
+     * $geoNear (2dsphere, потоково за відстанню) → $lookup капсули з правилами
+     * isPubliclyAccessible і summary-проєкцією → $limit, тож читається лише сторінка.
+     * Курсор — відстань останнього елемента та капсули на рівно цій відстані (minDistance включна).
+     * Перша сторінка, поки PublicMarkerIndex готовий, береться з нього (listNearbyFromIndex).
+     * @param radius метри, обмежується NEARBY_MAX_RADIUS_METERS
+     */
+    public CapsulePageResponse<NearbyCapsuleResponse> listNearby(double lat, double lon, Double radius,
+                                                                 String cursor, Integer limit) {
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            throw new IllegalArgumentException("Invalid coordinates");
+        }
+        double maxDistance = radius == null || radius <= 0
+                ? NEARBY_DEFAULT_RADIUS_METERS
+                : Math.min(radius, NEARBY_MAX_RADIUS_METERS);
+        int pageSize = limit == null || limit <= 0
+                ? PUBLIC_PAGE_DEFAULT_LIMIT
+                : Math.min(limit, PUBLIC_PAGE_MAX_LIMIT);
+        DistanceCursor after = cursor == null || cursor.isBlank() ? null : DistanceCursor.decode(cursor);
+        if (after == null && publicMarkerIndex.isReady()) {
+            CapsulePageResponse<NearbyCapsuleResponse> fromIndex = listNearbyFromIndex(lat, lon, maxDistance, pageSize);
+            if (fromIndex != null) {
+                return fromIndex;
+            }
+        }
+
+        Document markerQuery = new Document("deletedAt", null).append("visibility", "public");
+        Document geoNear = new Document("near", new Document("type", "Point").append("coordinates", List.of(lon, lat)))
+                .append("key", "location")
+                .append("spherical", true)
+                .append("distanceField", "distance")
+                .append("maxDistance", maxDistance)
+                .append("query", markerQuery);
+        if (after != null) {
+            geoNear.append("minDistance", after.distance());
+            markerQuery.append("capsuleId", new Document("$nin", after.capsuleIds()));
+        }
+
+        Document capsuleProjection = new Document();
+        for (String field : SUMMARY_FIELDS) {
+            capsuleProjection.append(field, 1);
+        }
+        capsuleProjection.append("excerpt", excerptExpression());
+        List<AggregationOperation> stages = List.of(
+                context -> new Document("$geoNear", geoNear),
+                context -> new Document("$lookup", new Document("from", "capsules")
+                        .append("localField", "capsuleId")
+                        .append("foreignField", "_id")
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("deletedAt", null)
+                                        .append("visibility", CapsuleVisibility.PUBLIC.getValue())
+                                        .append("status", new Document("$ne", CapsuleStatus.DRAFT.getValue()))),
+                                new Document("$project", capsuleProjection)
+                        ))
+                        .append("as", "capsule")),
+                context -> new Document("$unwind", "$capsule"),
+                Aggregation.limit(pageSize + 1L),
+                context -> new Document("$project", new Document("location", 1).append("distance", 1).append("capsule", 1))
         );
-        List<Capsule> visibleCapsules = capsules.stream()
-                .filter(this::isPubliclyAccessible)
-                .collect(Collectors.toList());
-        Map<String, Capsule.GeoPoint> locationsByCapsuleId = resolveGeoLocationsByCapsuleId(visibleCapsules);
-        return visibleCapsules.stream()
-                .map(c -> toResponse(c, locationsByCapsuleId))
-                .collect(Collectors.toList());
+
+        List<Document> rows = mongoTemplate.aggregate(Aggregation.newAggregation(stages), GEO_MARKERS_COLLECTION, Document.class)
+                .getMappedResults();
+        List<Document> page = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            List<Double> pageDistances = new ArrayList<>(page.size());
+            List<ObjectId> pageIds = new ArrayList<>(page.size());
+            for (Document row : page) {
+                pageDistances.add(row.get("distance", Number.class).doubleValue());
+                pageIds.add(row.get("capsule", Document.class).getObjectId("_id"));
+            }
+            nextCursor = DistanceCursor.next(after, pageDistances, pageIds).encode();
+        }
+
+        MongoConverter converter = mongoTemplate.getConverter();
+        List<Capsule> capsules = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        Map<String, Capsule.GeoPoint> locationsByCapsuleId = new HashMap<>();
+        for (Document row : page) {
+            Capsule capsule = converter.read(Capsule.class, row.get("capsule", Document.class));
+            // Legacy: кілька активних маркерів однієї капсули — лишаємо найближчий
+            if (capsule.getId() == null || locationsByCapsuleId.containsKey(capsule.getId())) {
+                continue;
+            }
+            Capsule.GeoPoint location = row.get("location") instanceof Document point
+                    ? normalizeGeo(converter.read(Capsule.GeoPoint.class, point))
+                    : null;
+            if (location == null) {
+                continue;
+            }
+            capsules.add(capsule);
+            distances.add(row.get("distance", Number.class).doubleValue());
+            locationsByCapsuleId.put(capsule.getId(), location);
+        }
+
+        return nearbyPage(capsules, distances, locationsByCapsuleId, nextCursor);
+    }
+
+    /**
+     * Перша сторінка listNearby з PublicMarkerIndex: k найближчих з пам'яті, капсули — одним find
+     * за _id з ownerId (ключ шардування). Індекс рахує ту саму сферичну відстань, що й $geoNear,
+     * тож курсор далі продовжує звичайний шлях; межа курсора трохи занижена, а сторінка з цієї
+     * смуги йде в $nin, щоб розбіжність округлення не дала ні пропуску, ні дубля.
+     * @return null, якщо індекс відстав від Mongo (капсулу щойно сховали) — тоді працює $geoNear
+     */
+    private CapsulePageResponse<NearbyCapsuleResponse> listNearbyFromIndex(double lat, double lon,
+                                                                           double maxDistance, int pageSize) {
+        List<PublicMarkerIndex.Hit> hits = publicMarkerIndex.nearest(lon, lat, pageSize + 1, maxDistance);
+        if (hits.isEmpty()) {
+            return new CapsulePageResponse<>(List.of(), null);
+        }
+        Set<ObjectId> capsuleIds = new HashSet<>();
+        Set<ObjectId> ownerIds = new HashSet<>();
+        for (PublicMarkerIndex.Hit hit : hits) {
+            capsuleIds.add(hit.capsuleId());
+            if (hit.ownerId() != null) {
+                ownerIds.add(hit.ownerId());
+            }
+        }
+        Query query = new Query(publicCriteria().and("_id").in(capsuleIds).and("ownerId").in(ownerIds));
+        Map<String, Capsule> capsulesById = new HashMap<>();
+        for (Capsule capsule : mongoTemplate.find(summaryProjection(query), Capsule.class)) {
+            capsulesById.put(capsule.getId(), capsule);
+        }
+        if (capsulesById.size() < hits.size()) {
+            return null;
+        }
+
+        List<PublicMarkerIndex.Hit> page = hits.size() > pageSize ? hits.subList(0, pageSize) : hits;
+        String nextCursor = null;
+        if (hits.size() > pageSize) {
+            double boundary = page.get(page.size() - 1).distanceMeters() * (1 - NEARBY_INDEX_DISTANCE_SLACK);
+            List<ObjectId> tied = new ArrayList<>();
+            for (PublicMarkerIndex.Hit hit : page) {
+                if (hit.distanceMeters() >= boundary) {
+                    tied.add(hit.capsuleId());
+                }
+            }
+            nextCursor = new DistanceCursor(boundary, tied).encode();
+        }
+
+        List<Capsule> capsules = new ArrayList<>(page.size());
+        List<Double> distances = new ArrayList<>(page.size());
+        Map<String, Capsule.GeoPoint> locationsByCapsuleId = new HashMap<>();
+        for (PublicMarkerIndex.Hit hit : page) {
+            Capsule capsule = capsulesById.get(hit.capsuleId().toHexString());
+            Capsule.GeoPoint location = new Capsule.GeoPoint();
+            location.setType("Point");
+            location.setCoordinates(List.of(hit.lon(), hit.lat()));
+            capsules.add(capsule);
+            distances.add(hit.distanceMeters());
+            locationsByCapsuleId.put(capsule.getId(), location);
+        }
+        return nearbyPage(capsules, distances, locationsByCapsuleId, nextCursor);
+    }
+
+    private CapsulePageResponse<NearbyCapsuleResponse> nearbyPage(List<Capsule> capsules, List<Double> distances,
+                                                                  Map<String, Capsule.GeoPoint> locationsByCapsuleId,
+                                                                  String nextCursor) {
+        List<CapsuleSummaryResponse> summaries = toSummaries(new ListedCapsules(capsules, locationsByCapsuleId));
+        List<NearbyCapsuleResponse> items = new ArrayList<>(summaries.size());
+        for (int i = 0; i < summaries.size(); i++) {
+            items.add(new NearbyCapsuleResponse(summaries.get(i), distances.get(i)));
+        }
+        return new CapsulePageResponse<>(items, nextCursor);
+    }
+
+    /**
+     * Курсор listNearby у вигляді base64url("distance:hexCapsuleId,..."): капсули на межі вже віддані.
+     */
+    record DistanceCursor(double distance, List<ObjectId> capsuleIds) {
+
+        /**
+         * Курсор після сторінки (відстані за зростанням): відстань останнього елемента і всі капсули
+         * на рівно ній, разом з уже виданими на тій самій межі попередніми сторінками.
+         */
+        static DistanceCursor next(DistanceCursor after, List<Double> distances, List<ObjectId> capsuleIds) {
+            double lastDistance = distances.get(distances.size() - 1);
+            List<ObjectId> tied = new ArrayList<>();
+            if (after != null && after.distance() == lastDistance) {
+                tied.addAll(after.capsuleIds());
+            }
+            for (int i = 0; i < distances.size(); i++) {
+                if (distances.get(i) == lastDistance) {
+                    tied.add(capsuleIds.get(i));
+                }
+            }
+            return new DistanceCursor(lastDistance, tied);
+        }
+
+        String encode() {
+            String raw = distance + ":" + capsuleIds.stream().map(ObjectId::toHexString).collect(Collectors.joining(","));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static DistanceCursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(':');
+                List<ObjectId> ids = new ArrayList<>();
+                for (String hex : raw.substring(separator + 1).split(",")) {
+                    if (!hex.isEmpty()) {
+                        ids.add(new ObjectId(hex));
+                    }
+                }
+                double distance = Double.parseDouble(raw.substring(0, separator));
+                if (!(distance >= 0)) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new DistanceCursor(distance, ids);
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
     }
 
     /**
@@ -449,54 +793,29 @@ public class CapsuleService {
      * Якщо запит робить власник — повертає усі капсули (включно з приватними).
      */
     public List<CapsuleResponse> listUserCapsules(String userId, String requesterId) {
-        ObjectId owner = new ObjectId(userId);
-        List<Capsule> capsules;
+        return toResponses(findUserCapsules(userId, requesterId, false));
+    }
+
+    public List<CapsuleSummaryResponse> listUserCapsuleSummaries(String userId, String requesterId) {
+        return toSummaries(findUserCapsules(userId, requesterId, true));
+    }
+
+    private ListedCapsules findUserCapsules(String userId, String requesterId, boolean summary) {
+        Criteria criteria;
         if (userId.equals(requesterId)) {
             // Власний профіль — повертаємо всі капсули
-            capsules = capsuleRepository.findByOwnerIdAndDeletedAtIsNullOrderByCreatedAtDesc(owner);
+            criteria = Criteria.where("ownerId").is(new ObjectId(userId)).and("deletedAt").is(null);
         } else {
-        // Інший користувач — тільки публічні капсули
-            capsules = capsuleRepository.findByOwnerIdAndVisibilityAndDeletedAtIsNullOrderByCreatedAtDesc(owner, CapsuleVisibility.PUBLIC.getValue());
-            capsules = capsules.stream()
-                    .filter(this::isPubliclyAccessible)
-                    .collect(Collectors.toList());
-        }
-        Map<String, Capsule.GeoPoint> locationsByCapsuleId = resolveGeoLocationsByCapsuleId(capsules);
-        return capsules.stream()
-                .map(c -> toResponse(c, locationsByCapsuleId))
-                .collect(Collectors.toList());
+            // Інший користувач — тільки публічні капсули (без чернеток)
+            criteria = publicCriteria().and("ownerId").is(new ObjectId(userId));
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return findListed(query, summary);
     }
 
     public CapsuleResponse getMine(String id, String ownerId) {
         ObjectId owner = new ObjectId(ownerId);
 
-        /**
-         * Забезпечує відкриття капсули одразу після настання unlockAt, якщо власник саме зараз її відкриває.
-         * Це підстраховує, якщо шедулер ще не завершив обробку: капсула буде відкритою саме у момент запиту.
-         */
-        Query unlockQuery = new Query(
-                Criteria.where("_id").is(id)
-                        .and("ownerId").is(owner)
-                        .and("status").is(CapsuleStatus.SEALED.getValue())
-                        .and("deletedAt").is(null)
-                        .and("unlockAt").lte(Instant.now())
-        );
-        Update unlockUpdate = new Update()
-                .set("status", CapsuleStatus.OPENED.getValue())
-                .set("openedAt", Instant.now())
-                .set("updatedAt", Instant.now());
-        Capsule unlocked = mongoTemplate.findAndModify(
-                unlockQuery,
-                unlockUpdate,
-                FindAndModifyOptions.options().returnNew(true),
-                Capsule.class
-        );
-
-        if (unlocked != null) {
-            notifyOwner(ownerId, unlocked);
-            return toResponse(unlocked);
-        }
-
         // 1) Owner access
         Capsule capsule = capsuleRepository.findByIdAndOwnerIdAndDeletedAtIsNull(id, owner)
                 .orElse(null);
@@ -506,7 +825,7 @@ public class CapsuleService {
             ObjectId capsuleOid = new ObjectId(id);
             boolean sharedWithUser = shareRepository.existsByCapsuleIdAndGranteeIdAndDeletedAtIsNull(capsuleOid, owner);
             if (sharedWithUser) {
-                capsule = capsuleRepository.findByIdAndDeletedAtIsNull(id)
+                capsule = capsuleRoutes.findActive(id)
                         .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
             }
         }
@@ -520,6 +839,7 @@ public class CapsuleService {
             throw new IllegalArgumentException("Capsule not found");
         }
 
+        openDueInBackground(List.of(capsule));
         return toResponse(capsule);
     }
 
@@ -539,25 +859,31 @@ public class CapsuleService {
                 .set("openedAt", Instant.now())
                 .set("updatedAt", Instant.now());
 
-        Capsule updated = mongoTemplate.findAndModify(
-                query,
-                update,
-                FindAndModifyOptions.options().returnNew(true),
-                Capsule.class
-        );
+        // Відкриття і outbox-рядки сповіщень — однією транзакцією
+        Capsule updated = outboxService.inTransaction(() -> {
+            Capsule opened = mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    FindAndModifyOptions.options().returnNew(true),
+                    Capsule.class
+            );
+            if (opened != null) {
+                notifyOwner(opened);
+            }
+            return opened;
+        });
 
         if (updated == null) {
             throw new IllegalArgumentException("Capsule cannot be unlocked yet or not found");
         }
+        publicCapsuleCache.invalidate(id);
 
-        notifyOwner(ownerId, updated);
         return toResponse(updated);
     }
 
     public void shareCapsule(String capsuleId, String sharerId, List<String> userIds) {
-        // Шукаємо капсулу тільки за id та deletedAt (без перевірки ownerId)
-        Query findQuery = new Query(Criteria.where("_id").is(capsuleId).and("deletedAt").is(null));
-        Capsule capsule = mongoTemplate.findOne(findQuery, Capsule.class);
+        // Шукаємо капсулу за id (без перевірки ownerId); ownerId для шард-таргетингу — з capsule_routes
+        Capsule capsule = capsuleRoutes.findActive(capsuleId).orElse(null);
         if (capsule == null) throw new IllegalArgumentException("Capsule not found");
         if (isDraft(capsule)) {
             throw new IllegalArgumentException("Draft capsules cannot be shared until they are sealed");
@@ -585,58 +911,204 @@ public class CapsuleService {
                     .set("shareToken", shareToken)
                     .set("updatedAt", Instant.now());
             mongoTemplate.updateFirst(ownerQuery, update, Capsule.class);
+            publicCapsuleCache.invalidate(capsuleId);
         }
 
         if (CollectionUtils.isEmpty(userIds)) return;   // Жодного користувача для шарингу — виходимо
 
-        // Ім'я того, хто ділиться (не обов'язково власник)
-        String senderName = userRepository.findById(sharerId)
-                .map(u -> u.getUsernameField() != null ? u.getUsernameField() : u.getEmail())
-                .orElse("Someone");
-
-        for (String uid : userIds) {
-            // Пропускаємо, якщо вже шарено
-            ObjectId capsOid = new ObjectId(capsuleId);
-            ObjectId granteeOid = new ObjectId(uid);
-            if (shareRepository.existsByCapsuleIdAndGranteeIdAndDeletedAtIsNull(capsOid, granteeOid)) continue;
-
-            // Створюємо запис про шаринг у колекції shares (grantedBy = той, хто ділиться)
+        // Ім'я того, хто ділиться (не обов'язково власник): users шардовано за email, тож не findById,
+        // а PrincipalLookupService — зазвичай з PrincipalCache, інакше запит на один шард
+        String senderName;
+        try {
+            User sharer = principalLookupService.load(sharerId, null);
+            senderName = sharer.getUsernameField() != null ? sharer.getUsernameField() : sharer.getEmail();
+        } catch (UsernameNotFoundException ex) {
+            senderName = "Someone";
+        }
+
+        // Пропускаємо тих, з ким уже шарено: один $in-запит замість exists на кожного
+        ObjectId capsOid = new ObjectId(capsuleId);
+        Set<String> requested = new LinkedHashSet<>(userIds);
+        List<ObjectId> granteeOids = requested.stream().map(ObjectId::new).toList();
+        Query existingQuery = new Query(
+                Criteria.where("capsuleId").is(capsOid)
+                        .and("granteeId").in(granteeOids)
+                        .and("deletedAt").is(null)
+        );
+        existingQuery.fields().include("granteeId");
+        mongoTemplate.find(existingQuery, Share.class)
+                .forEach(existing -> requested.remove(existing.getGranteeId().toHexString()));
+        if (requested.isEmpty()) return;
+
+        // Записи про шаринг у колекції shares (grantedBy = той, хто ділиться) — одним insertMany
+        List<Share> shares = new ArrayList<>(requested.size());
+        for (String uid : requested) {
             Share share = new Share(capsuleId, uid, sharerId);
             share.setRole(ShareRole.VIEWER);
             share.setStatus(ShareStatus.PENDING);
             share.setVia(ShareVia.INVITE);
             if (shareToken != null) share.setShareToken(shareToken);
-            shareRepository.save(share);
-
-            String shareText = senderName + " shared a capsule: " + (capsule.getTitle() != null ? capsule.getTitle() : "");
-            chatService.saveShareMessage(sharerId, uid, capsuleId, capsule.getTitle(), shareText);
-
-            // Відправляємо повідомлення через WebSocket до отримувача
-            Map<String, Object> chatMsg = Map.of(
-                    "id", UUID.randomUUID().toString(),
-                    "type", ChatMessageType.CAPSULE_SHARE.getValue(),
-                    "text", shareText,
-                    "capsuleId", capsuleId,
-                    "capsuleTitle", capsule.getTitle() != null ? capsule.getTitle() : "",
-                    "fromUserId", sharerId,
-                    "fromMe", false,
-                    "timestamp", Instant.now().toString(),
-                    "status", ChatMessageStatus.SENT.getValue()
-            );
-            messagingTemplate.convertAndSendToUser(uid, "/queue/chat", chatMsg);
+            shares.add(share);
         }
+        String shareText = senderName + " shared a capsule: " + (capsule.getTitle() != null ? capsule.getTitle() : "");
+
+        // Shares, повідомлення і WS-пуші в outbox — однією транзакцією
+        List<ChatMessage> messages = outboxService.inTransaction(() -> {
+            mongoTemplate.insertAll(shares);
+            List<ChatMessage> saved = chatService.saveShareMessages(sharerId, requested, capsuleId, capsule.getTitle(), shareText);
+            shareNotifier.enqueuePushes(capsuleId, capsule.getTitle(), sharerId, shareText, saved);
+            return saved;
+        });
+
+        // Chat digest отримувачам — асинхронно, поза потоком запиту
+        shareNotifier.publish(sharerId, senderName, messages);
     }
 
     /**
-     * Перетворює капсулу в подію CapsuleStatusEvent, щоб надсилати її через WebSocket.
-     * @param capsule
-     * @return
+     * Поля для списків: усе, крім body і media; замість body — excerpt, обрізаний на стороні Mongo.
+     */
+    private Query summaryProjection(Query query) {
+        query.fields()
+                .include(SUMMARY_FIELDS)
+                .project(MongoExpression.create(excerptExpression().toJson()))
+                .as("excerpt");
+        return query;
+    }
+
+    private static Document excerptExpression() {
+        return new Document("$substrCP", List.of(
+                new Document("$ifNull", List.of("$body", "")), 0, SUMMARY_EXCERPT_LENGTH));
+    }
+
+    /**
+     * Виконує запит списку разом з резолвом гео.
+     * lookup (за замовчуванням) — один aggregate: капсули + $lookup у geomarkers за capsuleId;
+     * legacy — find і окремі запити до geomarkers (resolveGeoLocationsByCapsuleId).
      */
-    private CapsuleStatusEvent toEvent(Capsule capsule) {
+    private ListedCapsules findListed(Query query, boolean summary) {
+        if (GEO_RESOLVE_LEGACY.equalsIgnoreCase(geoResolveMode)) {
+            List<Capsule> capsules = mongoTemplate.find(summary ? summaryProjection(query) : query, Capsule.class);
+            return new ListedCapsules(capsules, resolveGeoLocationsByCapsuleId(capsules));
+        }
+
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(context -> new Document("$match", context.getMappedObject(query.getQueryObject())));
+        if (query.isSorted()) {
+            stages.add(context -> new Document("$sort", query.getSortObject()));
+        }
+        if (query.getLimit() > 0) {
+            stages.add(Aggregation.limit(query.getLimit()));
+        }
+        if (summary) {
+            Document projection = new Document();
+            for (String field : SUMMARY_FIELDS) {
+                projection.append(field, 1);
+            }
+            projection.append("excerpt", excerptExpression());
+            stages.add(context -> new Document("$project", projection));
+        }
+        // Маркер, на який посилається geoMarkerId, має пріоритет над іншими маркерами капсули.
+        stages.add(context -> new Document("$lookup", new Document("from", GEO_MARKERS_COLLECTION)
+                .append("localField", "_id")
+                .append("foreignField", "capsuleId")
+                .append("let", new Document("markerId", "$geoMarkerId"))
+                .append("pipeline", List.of(
+                        new Document("$match", new Document("deletedAt", null)),
+                        new Document("$addFields", new Document("referenced",
+                                new Document("$eq", List.of("$_id", "$$markerId")))),
+                        new Document("$sort", new Document("referenced", -1).append("updatedAt", -1)),
+                        new Document("$limit", 1),
+                        new Document("$project", new Document("_id", 0).append("location", 1))
+                ))
+                .append("as", "resolvedMarkers")));
+
+        List<Capsule> capsules = new ArrayList<>();
+        Map<String, Capsule.GeoPoint> locationsByCapsuleId = new HashMap<>();
+        MongoConverter converter = mongoTemplate.getConverter();
+        for (Document row : mongoTemplate.aggregate(Aggregation.newAggregation(Capsule.class, stages), Document.class)) {
+            Capsule capsule = converter.read(Capsule.class, row);
+            capsules.add(capsule);
+
+            Capsule.GeoPoint location = null;
+            List<Document> markers = row.getList("resolvedMarkers", Document.class);
+            if (markers != null && !markers.isEmpty() && markers.get(0).get("location") instanceof Document point) {
+                location = normalizeGeo(converter.read(Capsule.GeoPoint.class, point));
+            }
+            if (location == null) {
+                location = normalizeGeo(capsule.getLocation());
+            }
+            if (location != null && capsule.getId() != null) {
+                locationsByCapsuleId.put(capsule.getId(), location);
+            }
+        }
+        return new ListedCapsules(capsules, locationsByCapsuleId);
+    }
+
+    private record ListedCapsules(List<Capsule> capsules, Map<String, Capsule.GeoPoint> locationsByCapsuleId) {
+    }
+
+    private List<CapsuleResponse> toResponses(ListedCapsules listed) {
+        openDueInBackground(listed.capsules());
+        return listed.capsules().stream()
+                .map(c -> toResponse(c, listed.locationsByCapsuleId()))
+                .collect(Collectors.toList());
+    }
+
+    private List<CapsuleSummaryResponse> toSummaries(ListedCapsules listed) {
+        openDueInBackground(listed.capsules());
+        return listed.capsules().stream()
+                .map(c -> toSummaryResponse(c, listed.locationsByCapsuleId()))
+                .collect(Collectors.toList());
+    }
+
+    private CapsuleSummaryResponse toSummaryResponse(Capsule capsule, Map<String, Capsule.GeoPoint> locationsByCapsuleId) {
+        CapsuleSummaryResponse resp = new CapsuleSummaryResponse();
+        resp.setId(capsule.getId());
+        resp.setOwnerId(capsule.getOwnerId() != null ? capsule.getOwnerId().toHexString() : null);
+        resp.setTitle(capsule.getTitle());
+
         boolean isLocked = isLocked(capsule.getStatus(), capsule.getUnlockAt());
+        resp.setIsLocked(isLocked);
+        String excerpt = capsule.getExcerpt();
+        resp.setExcerpt(isLocked || excerpt == null || excerpt.isBlank() ? null : excerpt);
+
+        resp.setVisibility(capsule.getVisibility());
         CapsuleStatus status = CapsuleStatus.fromValue(capsule.getStatus());
-        String statusValue = status != null ? status.getValue() : capsule.getStatus();
-        return new CapsuleStatusEvent(capsule.getId(), statusValue, isLocked, capsule.getUnlockAt(), capsule.getOpenedAt(), capsule.getTags());
+        resp.setStatus(status != null ? status.getValue() : capsule.getStatus());
+        resp.setUnlockAt(capsule.getUnlockAt());
+        resp.setOpenedAt(capsule.getOpenedAt());
+        resp.setExpiresAt(capsule.getExpiresAt());
+        resp.setGeoMarkerId(capsule.getGeoMarkerId() != null ? capsule.getGeoMarkerId().toHexString() : null);
+        resp.setAllowComments(capsule.getAllowComments());
+        resp.setAllowReactions(capsule.getAllowReactions());
+        resp.setTags(capsule.getTags());
+        resp.setCoverImageUrl(capsule.getCoverImageUrl());
+        Capsule.GeoPoint location = locationsByCapsuleId != null && capsule.getId() != null
+                ? locationsByCapsuleId.get(capsule.getId())
+                : null;
+        resp.setLocation(mapGeo(location));
+        resp.setCreatedAt(capsule.getCreatedAt());
+        resp.setUpdatedAt(capsule.getUpdatedAt());
+        return resp;
+    }
+
+    /**
+     * Прострочені sealed-капсули віддаємо unlock engine (асинхронно, без запису на HTTP-потоці),
+     * а у відповіді одразу показуємо їх відкритими. Статус і unlockAt уже є в завантажених документах,
+     * тому окремий sweep-запит не потрібен.
+     */
+    private void openDueInBackground(List<Capsule> capsules) {
+        Instant now = Instant.now();
+        List<Capsule> due = new ArrayList<>();
+        for (Capsule capsule : capsules) {
+            boolean sealed = CapsuleStatus.SEALED.equals(CapsuleStatus.fromValue(capsule.getStatus()));
+            if (sealed && capsule.getUnlockAt() != null && !capsule.getUnlockAt().isAfter(now)) {
+                due.add(toUnlocked(capsule));
+            }
+        }
+        if (!due.isEmpty()) {
+            unlockEngine.requestOpen(due);
+        }
     }
 
     private Capsule toUnlocked(Capsule capsule) {
@@ -690,13 +1162,10 @@ public class CapsuleService {
         resp.setShareToken(capsule.getShareToken());
         resp.setTags(capsule.getTags());
         resp.setCoverImageUrl(capsule.getCoverImageUrl());
-        Capsule.GeoPoint location = null;
-        if (locationsByCapsuleId != null && capsule.getId() != null) {
-            location = locationsByCapsuleId.get(capsule.getId());
-        }
-        if (location == null) {
-            location = resolveGeoLocationForCapsule(capsule);
-        }
+        // Для списків карта вже містить усі знайдені локації — без окремих запитів на капсулу.
+        Capsule.GeoPoint location = locationsByCapsuleId != null
+                ? (capsule.getId() != null ? locationsByCapsuleId.get(capsule.getId()) : null)
+                : resolveGeoLocationForCapsule(capsule);
         resp.setLocation(mapGeo(location));
         resp.setCreatedAt(capsule.getCreatedAt());
         resp.setUpdatedAt(capsule.getUpdatedAt());
@@ -800,17 +1269,74 @@ public class CapsuleService {
      * Повертає капсули користувача з unlockAt у заданому діапазоні дат (для календаря).
      */
     public List<CapsuleResponse> listByDateRange(String ownerId, Instant from, Instant to) {
-        ObjectId owner = new ObjectId(ownerId);
-        Query query = new Query(
-                Criteria.where("ownerId").is(owner)
+        return toResponses(findListed(dateRangeQuery(ownerId, from, to), false));
+    }
+
+    public List<CapsuleSummaryResponse> listSummariesByDateRange(String ownerId, Instant from, Instant to) {
+        return toSummaries(findListed(dateRangeQuery(ownerId, from, to), true));
+    }
+
+    /**
+     * Календар місяця без гідрації капсул: один $group по (день у часовому поясі, статус)
+     * на шарді власника, індекс {ownerId, unlockAt}. Деталі дня — звичайним listByDateRange.
+     * @param timeZone IANA id ("Europe/Kyiv") або офсет ("+02:00"); за замовчуванням UTC
+     */
+    public List<CalendarDayResponse> calendarHistogram(String ownerId, Instant from, Instant to, String timeZone) {
+        String zone = histogramZone(timeZone);
+        Document day = new Document("$dateToString", new Document("format", "%Y-%m-%d")
+                .append("date", "$unlockAt")
+                .append("timezone", zone));
+        List<AggregationOperation> stages = List.of(
+                context -> new Document("$match", new Document("ownerId", new ObjectId(ownerId))
+                        .append("unlockAt", new Document("$gte", Date.from(from)).append("$lte", Date.from(to)))
+                        .append("deletedAt", null)),
+                context -> new Document("$group", new Document("_id", new Document("day", day).append("status", "$status"))
+                        .append("count", new Document("$sum", 1)))
+        );
+
+        Map<String, Map<String, Long>> statusesByDay = new TreeMap<>();
+        for (Document row : mongoTemplate.aggregate(Aggregation.newAggregation(stages), "capsules", Document.class)) {
+            Document key = row.get("_id", Document.class);
+            String status = key.getString("status") != null ? key.getString("status") : "unknown";
+            statusesByDay.computeIfAbsent(key.getString("day"), d -> new TreeMap<>())
+                    .merge(status, row.get("count", Number.class).longValue(), Long::sum);
+        }
+
+        List<CalendarDayResponse> days = new ArrayList<>(statusesByDay.size());
+        statusesByDay.forEach((date, statuses) -> days.add(new CalendarDayResponse(date,
+                statuses.values().stream().mapToLong(Long::longValue).sum(), statuses)));
+        return days;
+    }
+
+    /**
+     * Часовий пояс у формі, яку приймає $dateToString: IANA id або офсет "+hh:mm".
+     * Префіксні зсуви ("UTC+2", "GMT-05:00") зводяться до офсету, UTC/Z/GMT — до "UTC".
+     */
+    static String histogramZone(String timeZone) {
+        if (timeZone == null || timeZone.isBlank()) {
+            return "UTC";
+        }
+        ZoneId zone;
+        try {
+            zone = ZoneId.of(timeZone.trim()).normalized();
+        } catch (DateTimeException ex) {
+            throw new IllegalArgumentException("Invalid time zone");
+        }
+        if (zone instanceof ZoneOffset offset) {
+            if (offset.getTotalSeconds() % 60 != 0) {
+                throw new IllegalArgumentException("Invalid time zone");
+            }
+            return offset.getTotalSeconds() == 0 ? "UTC" : offset.getId();
+        }
+        return zone.getId();
+    }
+
+    private Query dateRangeQuery(String ownerId, Instant from, Instant to) {
+        return new Query(
+                Criteria.where("ownerId").is(new ObjectId(ownerId))
                         .and("deletedAt").is(null)
                         .and("unlockAt").gte(from).lte(to)
         );
-        List<Capsule> capsules = mongoTemplate.find(query, Capsule.class);
-        Map<String, Capsule.GeoPoint> locationsByCapsuleId = resolveGeoLocationsByCapsuleId(capsules);
-        return capsules.stream()
-                .map(c -> toResponse(c, locationsByCapsuleId))
-                .collect(Collectors.toList());
     }
 
     /**
@@ -830,10 +1356,23 @@ public class CapsuleService {
                 Criteria.where("ownerId").in(relatedUsers)
                         .and("deletedAt").is(null)
         );
-        query.addCriteria(new Criteria().orOperator(
-                Criteria.where("geoMarkerId").ne(null),
-                Criteria.where("location").ne(null)
-        ));
+        if (legacyLocationsDrained) {
+            // Капсули, чий запис маркера впав, тримають location до повтору з geomarker_outbox
+            List<ObjectId> pendingMarkers = pendingGeoMarkerRetries(relatedUsers);
+            if (pendingMarkers.isEmpty()) {
+                query.addCriteria(Criteria.where("geoMarkerId").ne(null));
+            } else {
+                query.addCriteria(new Criteria().orOperator(
+                        Criteria.where("geoMarkerId").ne(null),
+                        Criteria.where("_id").in(pendingMarkers)
+                ));
+            }
+        } else {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("geoMarkerId").ne(null),
+                    Criteria.where("location").ne(null)
+            ));
+        }
 
         List<Capsule> candidates = mongoTemplate.find(query, Capsule.class);
         candidates.sort(Comparator.comparing(Capsule::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder())));
@@ -876,31 +1415,321 @@ public class CapsuleService {
                 continue;
             }
 
-            com.oleksandrmytro.timecapsule.models.User owner = usersById.get(ownerId);
-
-            Map<String, Object> marker = new HashMap<>();
-            marker.put("id", capsule.getId());
-            marker.put("title", capsule.getTitle());
-            marker.put("ownerId", ownerId);
-            marker.put("ownerName", owner != null
-                    ? (owner.getUsernameField() != null ? owner.getUsernameField() : owner.getEmail())
-                    : "Unknown");
-            marker.put("ownerAvatarUrl", owner != null ? owner.getAvatarUrl() : null);
-            marker.put("visibility", capsule.getVisibility());
-            marker.put("status", capsule.getStatus());
-            marker.put("isLocked", isLocked(capsule.getStatus(), capsule.getUnlockAt()));
-            marker.put("isOwn", isOwn);
-            marker.put("coverImageUrl", capsule.getCoverImageUrl());
-            marker.put("unlockAt", capsule.getUnlockAt());
-            marker.put("openedAt", capsule.getOpenedAt());
-            marker.put("tags", capsule.getTags());
-            marker.put("coordinates", List.of(lon, lat));
-            markers.add(marker);
+            markers.add(toMarker(capsule, lon, lat, usersById.get(ownerId), isOwn));
         }
 
         return markers;
     }
 
+    /**
+     * Капсули власників, що ще чекають повтору запису маркера (GeoMarkerMigrator.enqueue).
+     * Outbox малий і тримає ownerId, тож це один короткий запит.
+     */
+    private List<ObjectId> pendingGeoMarkerRetries(Collection<ObjectId> ownerIds) {
+        Query pending = new Query(Criteria.where("ownerId").in(ownerIds));
+        pending.fields().include("_id");
+        List<ObjectId> capsuleIds = new ArrayList<>();
+        for (Document entry : mongoTemplate.find(pending, Document.class, GeoMarkerMigrator.OUTBOX_COLLECTION)) {
+            capsuleIds.add(entry.getObjectId("_id"));
+        }
+        return capsuleIds;
+    }
+
+    /**
+     * Маркери у межах вікна карти (bbox) з кластеризацією на сервері.
+     * Точки беруться з geomarkers ($geoWithin), капсули підтягуються $lookup-ом з тими ж правилами
+     * видимості, що й у listMapMarkers. Точки групуються в клітинки Web Mercator сітки для zoom:
+     * клітинка з однією точкою — звичайний маркер (kind=marker), інакше kind=cluster з count,
+     * центроїдом і найновішою капсулою як representative.
+     * Маркери відсіюються ще до $lookup за ownerId і visibility маркера: власні — усі, пов'язаних
+     * користувачів — лише публічні. Маркери без ownerId (до бекфілу GeoMarkerMigrator) проходять далі.
+     */
+    public List<Map<String, Object>> listMapViewport(String currentUserId, String bbox, Integer zoom) {
+        MapViewport viewport = MapViewport.parse(bbox, zoom);
+
+        ObjectId me = new ObjectId(currentUserId);
+        Set<ObjectId> relatedUsers = new LinkedHashSet<>();
+        relatedUsers.add(me);
+        followRepository.findByFollowerIdAndDeletedAtIsNull(me)
+                .forEach(f -> relatedUsers.add(f.getUserId()));
+        followRepository.findByUserIdAndDeletedAtIsNull(me)
+                .forEach(f -> relatedUsers.add(f.getFollowerId()));
+
+        List<ObjectId> others = new ArrayList<>(relatedUsers);
+        others.remove(me);
+        List<Document> visibleMarkers = new ArrayList<>();
+        visibleMarkers.add(new Document("ownerId", me));
+        if (!others.isEmpty()) {
+            visibleMarkers.add(new Document("ownerId", new Document("$in", others)).append("visibility", "public"));
+        }
+        if (!markerOwnersBackfilled) {
+            visibleMarkers.add(new Document("ownerId", null));
+        }
+
+        List<ViewportPoint> points = loadViewportPoints(
+                viewport,
+                new Document("deletedAt", null).append("$or", visibleMarkers),
+                new Document("deletedAt", null).append("ownerId", new Document("$in", new ArrayList<>(relatedUsers))),
+                currentUserId
+        );
+        return clusterViewportPoints(points);
+    }
+
+    /**
+     * Публічний тайл маркерів z/x/y (схема XYZ/Web Mercator) з кешу; будується при першому запиті
+     * і скидається, коли upsertGeoMarker/archiveGeoMarkers змінюють точку всередині тайла.
+     */
+    public MarkerTileCache.Tile getPublicMarkerTile(int z, int x, int y) {
+        return markerTileCache.getOrBuild(z, x, y, () -> {
+            MapViewport viewport = MapViewport.ofTile(z, x, y);
+            if (publicMarkerIndex.isReady()) {
+                return loadIndexedPublicTile(viewport);
+            }
+            List<ViewportPoint> points = loadViewportPoints(
+                    viewport,
+                    new Document("deletedAt", null).append("visibility", "public"),
+                    new Document("deletedAt", null)
+                            .append("visibility", CapsuleVisibility.PUBLIC.getValue())
+                            .append("status", new Document("$ne", CapsuleStatus.DRAFT.getValue())),
+                    null
+            );
+            return clusterViewportPoints(points);
+        });
+    }
+
+    private List<ViewportPoint> loadViewportPoints(MapViewport viewport,
+                                                   Document markerFilter,
+                                                   Document capsuleFilter,
+                                                   String currentUserId) {
+        List<Document> polygons = viewport.polygons();
+        if (polygons.isEmpty()) {
+            return List.of();
+        }
+
+        List<Document> within = polygons.stream()
+                .map(polygon -> new Document("location", new Document("$geoWithin", new Document("$geometry", polygon))))
+                .collect(Collectors.toList());
+        Document match = new Document(markerFilter);
+        if (within.size() == 1) {
+            match.putAll(within.get(0));
+        } else if (match.containsKey("$or")) {
+            match.append("$and", List.of(new Document("$or", match.remove("$or")), new Document("$or", within)));
+        } else {
+            match.append("$or", within);
+        }
+
+        List<AggregationOperation> stages = List.of(
+                context -> new Document("$match", match),
+                context -> new Document("$lookup", new Document("from", "capsules")
+                        .append("localField", "capsuleId")
+                        .append("foreignField", "_id")
+                        .append("pipeline", List.of(
+                                new Document("$match", capsuleFilter),
+                                new Document("$project", new Document("ownerId", 1).append("title", 1)
+                                        .append("visibility", 1).append("status", 1).append("unlockAt", 1)
+                                        .append("openedAt", 1).append("coverImageUrl", 1).append("tags", 1)
+                                        .append("geoMarkerId", 1).append("createdAt", 1))
+                        ))
+                        .append("as", "capsule")),
+                context -> new Document("$unwind", "$capsule")
+        );
+
+        MongoConverter converter = mongoTemplate.getConverter();
+        Map<String, ViewportPoint> pointsByCapsuleId = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(Aggregation.newAggregation(stages), GEO_MARKERS_COLLECTION, Document.class)) {
+            Capsule capsule = converter.read(Capsule.class, row.get("capsule", Document.class));
+            Object rawLocation = row.get("location");
+            Capsule.GeoPoint location = rawLocation instanceof Document point
+                    ? normalizeGeo(converter.read(Capsule.GeoPoint.class, point))
+                    : null;
+            if (capsule.getId() == null || capsule.getOwnerId() == null || location == null) {
+                continue;
+            }
+
+            String ownerId = capsule.getOwnerId().toHexString();
+            boolean isOwn = ownerId.equals(currentUserId);
+            boolean isPublic = CapsuleVisibility.PUBLIC.equals(CapsuleVisibility.fromValue(capsule.getVisibility()));
+            if ((!isOwn && !isPublic) || (isDraft(capsule) && !isOwn)) {
+                continue;
+            }
+
+            // Кілька маркерів однієї капсули — перевага тому, на який посилається geoMarkerId
+            boolean referenced = row.getObjectId("_id") != null && row.getObjectId("_id").equals(capsule.getGeoMarkerId());
+            if (pointsByCapsuleId.containsKey(capsule.getId()) && !referenced) {
+                continue;
+            }
+            double lon = location.getCoordinates().get(0);
+            double lat = location.getCoordinates().get(1);
+            pointsByCapsuleId.put(capsule.getId(), new ViewportPoint(capsule, lon, lat, isOwn, viewport.cellOf(lon, lat)));
+        }
+        return new ArrayList<>(pointsByCapsuleId.values());
+    }
+
+    /**
+     * Публічний тайл з PublicMarkerIndex: кластеризація на координатах індексу (count і центроїд
+     * з пам'яті), з Mongo читаються лише кандидати в representative — кілька найновіших точок
+     * клітинки за _id з ownerId (ключ шардування). Розмір запиту обмежений кількістю клітинок
+     * тайла, а не кількістю капсул у ньому.
+     */
+    private List<Map<String, Object>> loadIndexedPublicTile(MapViewport viewport) {
+        List<PublicMarkerIndex.Hit> hits = publicMarkerIndex.withinBox(
+                viewport.west(), viewport.south(), viewport.east(), viewport.north(), 0);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, IndexedCell> cells = new LinkedHashMap<>();
+        for (PublicMarkerIndex.Hit hit : hits) {
+            cells.computeIfAbsent(viewport.cellOf(hit.lon(), hit.lat()), key -> new IndexedCell()).add(hit);
+        }
+
+        Set<ObjectId> candidateIds = new HashSet<>();
+        Set<ObjectId> ownerIds = new HashSet<>();
+        for (IndexedCell cell : cells.values()) {
+            for (PublicMarkerIndex.Hit candidate : cell.newest) {
+                candidateIds.add(candidate.capsuleId());
+                if (candidate.ownerId() != null) {
+                    ownerIds.add(candidate.ownerId());
+                }
+            }
+        }
+        Query query = new Query(Criteria.where("_id").in(candidateIds)
+                .and("ownerId").in(ownerIds)
+                .and("deletedAt").is(null)
+                .and("visibility").is(CapsuleVisibility.PUBLIC.getValue())
+                .and("status").ne(CapsuleStatus.DRAFT.getValue()));
+        query.fields().include("ownerId", "title", "visibility", "status", "unlockAt", "openedAt",
+                "coverImageUrl", "tags", "createdAt");
+        Map<ObjectId, Capsule> capsulesById = new HashMap<>();
+        for (Capsule capsule : mongoTemplate.find(query, Capsule.class)) {
+            if (capsule.getOwnerId() != null) {
+                capsulesById.put(new ObjectId(capsule.getId()), capsule);
+            }
+        }
+
+        List<ViewportCell> result = new ArrayList<>();
+        cells.forEach((key, cell) -> {
+            // Індекс відстав від Mongo (капсулу щойно видалили/сховали) — береться наступний кандидат
+            for (PublicMarkerIndex.Hit candidate : cell.newest) {
+                Capsule capsule = capsulesById.get(candidate.capsuleId());
+                if (capsule != null) {
+                    ViewportPoint top = new ViewportPoint(capsule, candidate.lon(), candidate.lat(), false, key);
+                    result.add(new ViewportCell(top, cell.count, cell.sumLon / cell.count, cell.sumLat / cell.count));
+                    return;
+                }
+            }
+        });
+        return renderViewportCells(result);
+    }
+
+    private List<Map<String, Object>> clusterViewportPoints(List<ViewportPoint> points) {
+        Map<Long, List<ViewportPoint>> cells = new LinkedHashMap<>();
+        for (ViewportPoint point : points) {
+            cells.computeIfAbsent(point.cell(), key -> new ArrayList<>()).add(point);
+        }
+
+        Comparator<ViewportPoint> newestFirst = Comparator.comparing(
+                (ViewportPoint point) -> point.capsule().getCreatedAt(),
+                Comparator.nullsLast(Comparator.reverseOrder()));
+        List<ViewportCell> result = new ArrayList<>();
+        for (List<ViewportPoint> cell : cells.values()) {
+            cell.sort(newestFirst);
+            double sumLon = 0;
+            double sumLat = 0;
+            for (ViewportPoint point : cell) {
+                sumLon += point.lon();
+                sumLat += point.lat();
+            }
+            result.add(new ViewportCell(cell.get(0), cell.size(), sumLon / cell.size(), sumLat / cell.size()));
+        }
+        return renderViewportCells(result);
+    }
+
+    private List<Map<String, Object>> renderViewportCells(List<ViewportCell> cells) {
+        // Власників резолвимо лише для маркерів, що підуть у відповідь
+        Set<String> ownerIds = cells.stream()
+                .map(cell -> cell.top().capsule().getOwnerId().toHexString())
+                .collect(Collectors.toSet());
+        Map<String, com.oleksandrmytro.timecapsule.models.User> usersById = new HashMap<>();
+        userRepository.findAllById(ownerIds).forEach(u -> usersById.put(u.getId(), u));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ViewportCell cell : cells) {
+            ViewportPoint top = cell.top();
+            Map<String, Object> marker = toMarker(top.capsule(), top.lon(), top.lat(),
+                    usersById.get(top.capsule().getOwnerId().toHexString()), top.isOwn());
+            if (cell.count() == 1) {
+                marker.put("kind", "marker");
+                result.add(marker);
+                continue;
+            }
+            Map<String, Object> cluster = new HashMap<>();
+            cluster.put("kind", "cluster");
+            cluster.put("count", cell.count());
+            cluster.put("coordinates", List.of(cell.lon(), cell.lat()));
+            cluster.put("representative", marker);
+            result.add(cluster);
+        }
+        return result;
+    }
+
+    private Map<String, Object> toMarker(Capsule capsule, double lon, double lat,
+                                         com.oleksandrmytro.timecapsule.models.User owner, boolean isOwn) {
+        Map<String, Object> marker = new HashMap<>();
+        marker.put("id", capsule.getId());
+        marker.put("title", capsule.getTitle());
+        marker.put("ownerId", capsule.getOwnerId().toHexString());
+        marker.put("ownerName", owner != null
+                ? (owner.getUsernameField() != null ? owner.getUsernameField() : owner.getEmail())
+                : "Unknown");
+        marker.put("ownerAvatarUrl", owner != null ? owner.getAvatarUrl() : null);
+        marker.put("visibility", capsule.getVisibility());
+        marker.put("status", capsule.getStatus());
+        marker.put("isLocked", isLocked(capsule.getStatus(), capsule.getUnlockAt()));
+        marker.put("isOwn", isOwn);
+        marker.put("coverImageUrl", capsule.getCoverImageUrl());
+        marker.put("unlockAt", capsule.getUnlockAt());
+        marker.put("openedAt", capsule.getOpenedAt());
+        marker.put("tags", capsule.getTags());
+        marker.put("coordinates", List.of(lon, lat));
+        return marker;
+    }
+
+    private record ViewportPoint(Capsule capsule, double lon, double lat, boolean isOwn, long cell) {
+    }
+
+    /**
+     * Клітинка сітки viewport: найновіша точка, кількість і центроїд.
+     */
+    private record ViewportCell(ViewportPoint top, int count, double lon, double lat) {
+    }
+
+    /**
+     * Агрегат клітинки з PublicMarkerIndex. Найновіші — за capsuleId: ObjectId несе час створення.
+     */
+    private static final class IndexedCell {
+        private final List<PublicMarkerIndex.Hit> newest = new ArrayList<>(TILE_REPRESENTATIVE_CANDIDATES + 1);
+        private int count;
+        private double sumLon;
+        private double sumLat;
+
+        void add(PublicMarkerIndex.Hit hit) {
+            count++;
+            sumLon += hit.lon();
+            sumLat += hit.lat();
+            int at = newest.size();
+            while (at > 0 && newest.get(at - 1).capsuleId().compareTo(hit.capsuleId()) < 0) {
+                at--;
+            }
+            if (at < TILE_REPRESENTATIVE_CANDIDATES) {
+                newest.add(at, hit);
+                if (newest.size() > TILE_REPRESENTATIVE_CANDIDATES) {
+                    newest.remove(newest.size() - 1);
+                }
+            }
+        }
+    }
+
     private Capsule.GeoPoint normalizeGeo(Capsule.GeoPoint geo) {
         if (geo == null || geo.getCoordinates() == null || geo.getCoordinates().size() < 2) return null;
         Double lon = geo.getCoordinates().get(0);
@@ -916,7 +1745,8 @@ public class CapsuleService {
     private Capsule.GeoPoint resolveGeoLocationForCapsule(Capsule capsule) {
         Capsule.GeoPoint legacy = normalizeGeo(capsule.getLocation());
 
-        if (capsule.getGeoMarkerId() != null) {
+        // Після міграції в капсули один активний маркер — достатньо запиту за ключем шардування
+        if (capsule.getGeoMarkerId() != null && !legacyLocationsDrained) {
             Query byMarkerId = new Query(Criteria.where("_id").is(capsule.getGeoMarkerId()).and("deletedAt").is(null));
             GeoMarkerRecord marker = mongoTemplate.findOne(byMarkerId, GeoMarkerRecord.class, GEO_MARKERS_COLLECTION);
             Capsule.GeoPoint fromMarker = marker != null ? normalizeGeo(marker.getLocation()) : null;
@@ -949,7 +1779,7 @@ public class CapsuleService {
                 byCapsuleId.put(capsule.getId(), legacy);
             }
 
-            if (capsule.getGeoMarkerId() != null) {
+            if (capsule.getGeoMarkerId() != null && !legacyLocationsDrained) {
                 markerIds.add(capsule.getGeoMarkerId());
                 markerIdByCapsuleId.put(capsule.getId(), capsule.getGeoMarkerId());
             }
@@ -994,17 +1824,128 @@ public class CapsuleService {
         return byCapsuleId;
     }
 
+    public void setLegacyLocationsDrained(boolean drained) {
+        this.legacyLocationsDrained = drained;
+    }
+
+    public void setMarkerOwnersBackfilled(boolean backfilled) {
+        this.markerOwnersBackfilled = backfilled;
+    }
+
+    /**
+     * Переносить legacy capsule.location у geomarkers (GeoMarkerMigrator: міграція та повтори з outbox).
+     * location знімається лише якщо його не змінили паралельно.
+     * @return false, якщо запис маркера знову не вдався
+     */
+    public boolean migrateLegacyLocation(ObjectId capsuleId, ObjectId ownerId) {
+        Capsule capsule = mongoTemplate.findOne(
+                new Query(Criteria.where("_id").is(capsuleId).and("ownerId").is(ownerId).and("deletedAt").is(null)),
+                Capsule.class
+        );
+        if (capsule == null || capsule.getLocation() == null) {
+            return true;
+        }
+
+        Query unchanged = new Query(Criteria.where("_id").is(capsuleId)
+                .and("ownerId").is(ownerId)
+                .and("location").is(capsule.getLocation()));
+        Capsule.GeoPoint location = normalizeGeo(capsule.getLocation());
+        if (location == null) {
+            mongoTemplate.updateFirst(unchanged, new Update().unset("location"), Capsule.class);
+            return true;
+        }
+
+        ObjectId markerId;
+        try {
+            markerId = upsertGeoMarker(capsule, location, CapsuleVisibility.fromValue(capsule.getVisibility()));
+        } catch (RuntimeException ex) {
+            return false;
+        }
+        mongoTemplate.updateFirst(unchanged, new Update().set("geoMarkerId", markerId).unset("location"), Capsule.class);
+        return true;
+    }
+
+    /**
+     * Зводить geomarker до поточного стану капсули після змін в обхід update() (адмінка: soft delete,
+     * restore, visibility, status, ownerId). Видалена капсула архівує маркери; решта — повторний
+     * upsertGeoMarker з тією ж точкою, що оновлює heatmap, тайли й індекс публічних маркерів.
+     */
+    public void syncGeoMarker(Capsule capsule) {
+        if (capsule == null || capsule.getId() == null) {
+            return;
+        }
+        publicCapsuleCache.invalidate(capsule.getId());
+        if (capsule.getDeletedAt() != null) {
+            archiveGeoMarkers(capsule);
+            return;
+        }
+        Capsule.GeoPoint location = currentGeoLocation(capsule);
+        if (location == null) {
+            return;
+        }
+
+        Query byCapsule = new Query(Criteria.where("_id").is(capsule.getId()).and("ownerId").is(capsule.getOwnerId()));
+        try {
+            ObjectId markerId = upsertGeoMarker(capsule, location, CapsuleVisibility.fromValue(capsule.getVisibility()));
+            if (!markerId.equals(capsule.getGeoMarkerId()) || capsule.getLocation() != null) {
+                mongoTemplate.updateFirst(byCapsule, new Update().set("geoMarkerId", markerId).unset("location"), Capsule.class);
+            }
+        } catch (RuntimeException ex) {
+            // Той самий fallback, що й у update(): точка лишається в капсулі, маркер дотягне outbox
+            mongoTemplate.updateFirst(byCapsule, new Update().set("location", location).unset("geoMarkerId"), Capsule.class);
+            enqueueGeoMarkerRetry(capsule);
+        }
+    }
+
+    /**
+     * Legacy location або точка маркера з geoMarkerId — навіть архівованого (restore після soft delete).
+     * update() без локації знімає geoMarkerId, тож знята точка не воскресає.
+     */
+    private Capsule.GeoPoint currentGeoLocation(Capsule capsule) {
+        Capsule.GeoPoint legacy = normalizeGeo(capsule.getLocation());
+        if (legacy != null || capsule.getGeoMarkerId() == null) {
+            return legacy;
+        }
+        Query query = new Query(Criteria.where("_id").is(capsule.getGeoMarkerId()));
+        query.fields().include("location");
+        GeoMarkerRecord marker = mongoTemplate.findOne(query, GeoMarkerRecord.class, GEO_MARKERS_COLLECTION);
+        return marker != null ? normalizeGeo(marker.getLocation()) : null;
+    }
+
+    private void enqueueGeoMarkerRetry(Capsule capsule) {
+        if (capsule.getId() == null || !ObjectId.isValid(capsule.getId())) {
+            return;
+        }
+        try {
+            GeoMarkerMigrator.enqueue(mongoTemplate, new ObjectId(capsule.getId()), capsule.getOwnerId());
+        } catch (RuntimeException ex) {
+            // location лишається в капсулі й читається як fallback; до міграції його підбере прохід по capsules.
+        }
+    }
+
     private void archiveGeoMarkers(Capsule capsule) {
         Instant now = Instant.now();
+        List<Capsule.GeoPoint> archivedPoints = new ArrayList<>();
 
-        if (capsule.getGeoMarkerId() != null) {
-            mongoTemplate.updateFirst(
-                    new Query(Criteria.where("_id").is(capsule.getGeoMarkerId())),
+        // По одному: лише запит, що реально архівував маркер, знімає його з heatmap
+        for (GeoMarkerRecord active : findActiveMarkers(capsule)) {
+            GeoMarkerRecord archived = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(active.getId()).and("deletedAt").is(null)),
                     new Update()
                             .set("deletedAt", now)
-                            .set("updatedAt", now),
+                            .set("updatedAt", now)
+                            .unset("inHeatmap"),
+                    GeoMarkerRecord.class,
                     GEO_MARKERS_COLLECTION
             );
+            Capsule.GeoPoint point = archived != null ? normalizeGeo(archived.getLocation()) : null;
+            if (point == null) {
+                continue;
+            }
+            archivedPoints.add(point);
+            if (Boolean.TRUE.equals(archived.getInHeatmap())) {
+                recordHeat(point, -1);
+            }
         }
 
         if (capsule.getId() != null && ObjectId.isValid(capsule.getId())) {
@@ -1016,6 +1957,48 @@ public class CapsuleService {
                     GEO_MARKERS_COLLECTION
             );
         }
+        archivedPoints.forEach(this::invalidateMarkerTiles);
+        if (capsule.getId() != null && ObjectId.isValid(capsule.getId())) {
+            publicMarkerIndex.remove(new ObjectId(capsule.getId()));
+        }
+    }
+
+    private List<GeoMarkerRecord> findActiveMarkers(Capsule capsule) {
+        List<Criteria> byCapsule = new ArrayList<>();
+        if (capsule.getGeoMarkerId() != null) {
+            byCapsule.add(Criteria.where("_id").is(capsule.getGeoMarkerId()));
+        }
+        if (capsule.getId() != null && ObjectId.isValid(capsule.getId())) {
+            byCapsule.add(Criteria.where("capsuleId").is(new ObjectId(capsule.getId())));
+        }
+        if (byCapsule.isEmpty()) {
+            return List.of();
+        }
+        Query query = new Query(new Criteria().orOperator(byCapsule).and("deletedAt").is(null));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, GeoMarkerRecord.class, GEO_MARKERS_COLLECTION);
+    }
+
+    private void recordHeat(Capsule.GeoPoint point, int delta) {
+        try {
+            geoHeatmapService.record(point.getCoordinates().get(0), point.getCoordinates().get(1), delta);
+        } catch (RuntimeException ex) {
+            // Heatmap — похідні дані; запис маркера вже відбувся
+        }
+    }
+
+    private void invalidateMarkerTiles(Capsule.GeoPoint point) {
+        if (point != null) {
+            markerTileCache.invalidatePoint(point.getCoordinates().get(0), point.getCoordinates().get(1));
+        }
+    }
+
+    private void indexPublicMarker(Capsule capsule, ObjectId capsuleId, Capsule.GeoPoint location, CapsuleVisibility visibility) {
+        if (CapsuleVisibility.PUBLIC.equals(visibility) && !isDraft(capsule)) {
+            publicMarkerIndex.put(capsuleId, capsule.getOwnerId(), location.getCoordinates().get(0), location.getCoordinates().get(1));
+        } else {
+            publicMarkerIndex.remove(capsuleId);
+        }
     }
 
     private ObjectId upsertGeoMarker(Capsule capsule, Capsule.GeoPoint location, CapsuleVisibility visibility) {
@@ -1036,31 +2019,54 @@ public class CapsuleService {
             markerVisibility = "shared";
         }
 
+        boolean countedInHeatmap = CapsuleVisibility.PUBLIC.equals(visibility) && !isDraft(capsule);
         Query existingQuery = new Query(Criteria.where("capsuleId").is(capsuleId).and("deletedAt").is(null));
+        existingQuery.fields().include("_id");
         GeoMarkerRecord existing = mongoTemplate.findOne(existingQuery, GeoMarkerRecord.class, GEO_MARKERS_COLLECTION);
         if (existing != null && existing.getId() != null) {
-            mongoTemplate.updateFirst(
-                    new Query(Criteria.where("_id").is(existing.getId())),
+            // findAndModify повертає попередній стан: heatmap коригується рівно один раз
+            GeoMarkerRecord previous = mongoTemplate.findAndModify(
+                    new Query(Criteria.where("_id").is(existing.getId()).and("capsuleId").is(capsuleId)),
                     new Update()
+                            .set("ownerId", capsule.getOwnerId())
                             .set("location", normalized)
                             .set("visibility", markerVisibility)
+                            .set("inHeatmap", countedInHeatmap)
                             .set("updatedAt", now)
                             .unset("deletedAt"),
+                    GeoMarkerRecord.class,
                     GEO_MARKERS_COLLECTION
             );
+            Capsule.GeoPoint previousLocation = previous != null ? normalizeGeo(previous.getLocation()) : null;
+            if (previousLocation != null && previous.getDeletedAt() == null && Boolean.TRUE.equals(previous.getInHeatmap())) {
+                recordHeat(previousLocation, -1);
+            }
+            if (countedInHeatmap) {
+                recordHeat(normalized, 1);
+            }
+            invalidateMarkerTiles(previousLocation);
+            invalidateMarkerTiles(normalized);
+            indexPublicMarker(capsule, capsuleId, normalized, visibility);
             return existing.getId();
         }
 
         GeoMarkerRecord marker = new GeoMarkerRecord();
         marker.setCapsuleId(capsuleId);
+        marker.setOwnerId(capsule.getOwnerId());
         marker.setLocation(normalized);
         marker.setVisibility(markerVisibility);
+        marker.setInHeatmap(countedInHeatmap);
         marker.setCreatedAt(now);
         marker.setUpdatedAt(now);
         GeoMarkerRecord saved = mongoTemplate.save(marker, GEO_MARKERS_COLLECTION);
         if (saved == null || saved.getId() == null) {
             throw new IllegalStateException("Failed to save geomarker");
         }
+        if (countedInHeatmap) {
+            recordHeat(normalized, 1);
+        }
+        invalidateMarkerTiles(normalized);
+        indexPublicMarker(capsule, capsuleId, normalized, visibility);
         return saved.getId();
     }
 
@@ -1071,6 +2077,9 @@ public class CapsuleService {
         @Field("capsuleId")
         private ObjectId capsuleId;
 
+        @Field("ownerId")
+        private ObjectId ownerId;
+
         @Field("location")
         private Capsule.GeoPoint location;
 
@@ -1086,6 +2095,17 @@ public class CapsuleService {
         @Field("deletedAt")
         private Instant deletedAt;
 
+        @Field("inHeatmap")
+        private Boolean inHeatmap;
+
+        public Boolean getInHeatmap() {
+            return inHeatmap;
+        }
+
+        public void setInHeatmap(Boolean inHeatmap) {
+            this.inHeatmap = inHeatmap;
+        }
+
         public ObjectId getId() {
             return id;
         }
@@ -1102,6 +2122,14 @@ public class CapsuleService {
             this.capsuleId = capsuleId;
         }
 
+        public ObjectId getOwnerId() {
+            return ownerId;
+        }
+
+        public void setOwnerId(ObjectId ownerId) {
+            this.ownerId = ownerId;
+        }
+
         public Capsule.GeoPoint getLocation() {
             return location;
         }
@@ -1143,36 +2171,50 @@ public class CapsuleService {
         }
     }
 
+    /**
+     * Публічна не-draft капсула рендериться однаково для всіх глядачів, тож спершу — кеш;
+     * промах іде звичайним шляхом і кладе публічну відповідь у кеш.
+     */
     public CapsuleResponse getAccessible(String id, String viewerId) {
+        CapsuleResponse cached = publicCapsuleCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long cacheStamp = publicCapsuleCache.stamp();
+
         if (viewerId != null) {
             boolean isAdmin = userRepository.findById(viewerId)
                     .map(User::getRole)
                     .map(role -> role == User.Role.ADMIN)
                     .orElse(false);
             if (isAdmin) {
-                Capsule capsule = capsuleRepository.findByIdAndDeletedAtIsNull(id)
+                Capsule capsule = capsuleRoutes.findActive(id)
                         .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
-                return toResponse(capsule);
+                return publicCapsuleCache.offer(cacheStamp, toResponse(capsule));
             }
         }
 
         // Якщо користувач авторизований, спочатку пробуємо власницький/шаринг-режим
         if (viewerId != null) {
             try {
-                return getMine(id, viewerId);
+                return publicCapsuleCache.offer(cacheStamp, getMine(id, viewerId));
             } catch (IllegalArgumentException ex) {
                 // Якщо доступу нема — перевіряємо публічний режим
             }
         }
 
-        // Публічний доступ: будь-хто (навіть без логіну) може переглядати public капсули
-        Capsule capsule = capsuleRepository.findByIdAndDeletedAtIsNull(id)
-                .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
+        // Публічний доступ: будь-хто (навіть без логіну) може переглядати public капсули.
+        // Одночасні промахи по одній капсулі ділять один запит; версія цієї капсули в ключі —
+        // після її інвалідації стартує новий запит, а не приєднання до старого.
+        return requestCoalescer.execute("capsule", id + "@" + publicCapsuleCache.version(id), () -> {
+            Capsule capsule = capsuleRoutes.findActive(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Capsule not found"));
 
-        if (isPubliclyAccessible(capsule)) {
-            return toResponse(capsule);
-        }
+            if (isPubliclyAccessible(capsule)) {
+                return publicCapsuleCache.offer(cacheStamp, toResponse(capsule));
+            }
 
-        throw new IllegalArgumentException("Capsule not found or not accessible");
+            throw new IllegalArgumentException("Capsule not found or not accessible");
+        });
     }
 }
@@ -0,0 +1,99 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.models.ChatMessage;
+import com.oleksandrmytro.timecapsule.models.enums.ChatMessageStatus;
+import com.oleksandrmytro.timecapsule.models.enums.ChatMessageType;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fan-out stage for capsule shares. WS pushes to every grantee are written to the outbox by
+ * {@link #enqueuePushes} in the caller's transaction (one insertMany); the chat digest runs
+ * asynchronously, off the request thread, after the shares are committed.
+ */
+@Service
+public class CapsuleShareNotifier {
+
+    private static final Logger log = LoggerFactory.getLogger(CapsuleShareNotifier.class);
+
+    private final ChatService chatService;
+    private final OutboxService outboxService;
+    private final ThreadPoolExecutor executor;
+
+    public CapsuleShareNotifier(ChatService chatService,
+                                OutboxService outboxService,
+                                @Value("${app.capsules.share-fanout.threads:2}") int threads,
+                                @Value("${app.capsules.share-fanout.queue-capacity:10000}") int queueCapacity) {
+        this.chatService = chatService;
+        this.outboxService = outboxService;
+        int poolSize = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        // CallerRunsPolicy: when the queue is full the sharing request pays for its own digest.
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "capsule-share-notifier-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Chat message and the legacy share event for every grantee, interleaved so each grantee
+     * gets them in the old order.
+     */
+    public void enqueuePushes(String capsuleId, String capsuleTitle, String sharerId,
+                              String shareText, List<ChatMessage> messages) {
+        List<Document> rows = new ArrayList<>(messages.size() * 2);
+        for (ChatMessage message : messages) {
+            rows.add(chatService.toOutboxRow(message, sharerId));
+            Document chatMsg = new Document("id", UUID.randomUUID().toString())
+                    .append("type", ChatMessageType.CAPSULE_SHARE.getValue())
+                    .append("text", shareText)
+                    .append("capsuleId", capsuleId)
+                    .append("capsuleTitle", capsuleTitle != null ? capsuleTitle : "")
+                    .append("fromUserId", sharerId)
+                    .append("fromMe", false)
+                    .append("timestamp", Instant.now().toString())
+                    .append("status", ChatMessageStatus.SENT.getValue());
+            rows.add(new Document("userId", message.getToUserId().toHexString()).append("message", chatMsg));
+        }
+        outboxService.enqueueAll(OutboxService.TYPE_CHAT_MESSAGE, rows);
+    }
+
+    public void publish(String sharerId, String senderName, List<ChatMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        executor.execute(() -> digest(sharerId, senderName, messages));
+    }
+
+    private void digest(String sharerId, String senderName, List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            try {
+                chatService.enqueueShareDigest(message, sharerId, senderName);
+            } catch (RuntimeException ex) {
+                log.warn("Failed to record chat digest for {} about a shared capsule", message.getToUserId(), ex);
+            }
+        }
+    }
+}
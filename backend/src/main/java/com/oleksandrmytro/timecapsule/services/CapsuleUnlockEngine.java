@@ -0,0 +1,360 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Opens sealed capsules at their unlockAt. Deadlines inside the preload window are kept in an
+ * in-memory timing wheel and fired by a ticker thread; the conditional update makes every
+ * open idempotent, so several nodes (or the reconciliation scan) may race safely.
+ * Due capsules are opened in batches: one unordered bulkWrite claims the batch and the
+ * notifications of the claimed capsules are written to the outbox ({@link CapsuleOpenedNotifier})
+ * in the same transaction, so an opened capsule never loses its notification.
+ */
+@Service
+public class CapsuleUnlockEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(CapsuleUnlockEngine.class);
+
+    /**
+     * Values of the stored capsule field unlockBucket; unlock partitions are ranges of buckets.
+     */
+    public static final int UNLOCK_BUCKETS = 1024;
+
+    private final MongoTemplate mongoTemplate;
+    private final OutboxService outboxService;
+    private final CapsuleOpenedNotifier openedNotifier;
+    private final CapsuleUnlockMetrics metrics;
+    private final PublicCapsuleCache publicCapsuleCache;
+    private final long tickMillis;
+    private final int batchSize;
+    private final Duration window;
+    private final HierarchicalTimingWheel<ArmedUnlock> wheel;
+    private final ScheduledExecutorService ticker;
+    private final ThreadPoolExecutor workers;
+    private final Set<String> pendingReadOpens = ConcurrentHashMap.newKeySet();
+
+    public CapsuleUnlockEngine(MongoTemplate mongoTemplate,
+                               OutboxService outboxService,
+                               CapsuleOpenedNotifier openedNotifier,
+                               CapsuleUnlockMetrics metrics,
+                               PublicCapsuleCache publicCapsuleCache,
+                               @Value("${app.capsules.unlock-engine.tick-ms:50}") long tickMillis,
+                               @Value("${app.capsules.unlock-engine.batch-size:100}") int batchSize,
+                               @Value("${app.capsules.unlock-engine.window:PT15M}") Duration window,
+                               @Value("${app.capsules.unlock-engine.workers:2}") int workerCount,
+                               @Value("${app.capsules.unlock-engine.queue-capacity:1000}") int queueCapacity) {
+        this.mongoTemplate = mongoTemplate;
+        this.outboxService = outboxService;
+        this.openedNotifier = openedNotifier;
+        this.metrics = metrics;
+        this.publicCapsuleCache = publicCapsuleCache;
+        this.tickMillis = Math.max(10L, tickMillis);
+        this.batchSize = Math.max(1, batchSize);
+        this.window = window.isNegative() || window.isZero() ? Duration.ofMinutes(15) : window;
+        this.wheel = new HierarchicalTimingWheel<>(this.tickMillis, System.currentTimeMillis());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(namedDaemon("capsule-unlock-ticker"));
+        int threads = Math.max(1, workerCount);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                namedDaemon("capsule-unlock-worker"),
+                this::rejected);
+    }
+
+    @PostConstruct
+    void start() {
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+        workers.shutdown();
+    }
+
+    /**
+     * Bucket stored with the capsule at create and on owner change. Derived from ownerId only so
+     * the field never needs the capsule itself; any stable spread over [0, UNLOCK_BUCKETS) works.
+     */
+    public static int unlockBucketOf(ObjectId ownerId) {
+        return ownerId == null ? 0 : Math.floorMod(Arrays.hashCode(ownerId.toByteArray()), UNLOCK_BUCKETS);
+    }
+
+    /**
+     * Loads sealed capsules of one unlock partition whose unlockAt falls into the next window.
+     * Called by the partition owner more often than the window length, so consecutive windows
+     * overlap and no deadline is missed.
+     * @param partitionFilter extra filter selecting the partition (may be empty)
+     */
+    public int preload(Document partitionFilter) {
+        Instant now = Instant.now();
+        Document filter = new Document("status", CapsuleStatus.SEALED.getValue())
+                .append("deletedAt", null)
+                .append("unlockAt", new Document("$gt", Date.from(now)).append("$lte", Date.from(now.plus(window))));
+        filter.putAll(partitionFilter);
+        Query query = new BasicQuery(filter, new Document("_id", 1).append("ownerId", 1).append("unlockAt", 1));
+
+        int armed = 0;
+        try (Stream<Capsule> upcoming = mongoTemplate.stream(query, Capsule.class)) {
+            for (Capsule capsule : (Iterable<Capsule>) upcoming::iterator) {
+                if (schedule(capsule)) {
+                    armed++;
+                }
+            }
+        }
+        return armed;
+    }
+
+    /**
+     * Arms (or re-arms) the unlock of a capsule after it was created or changed.
+     * Capsules that are no longer sealed are disarmed; deadlines beyond the window are left
+     * to the preload of the partition owner.
+     */
+    public void arm(Capsule capsule) {
+        if (capsule == null || capsule.getId() == null) {
+            return;
+        }
+        boolean sealed = CapsuleStatus.SEALED.equals(CapsuleStatus.fromValue(capsule.getStatus()));
+        if (!sealed || capsule.getDeletedAt() != null || capsule.getUnlockAt() == null
+                || capsule.getUnlockAt().isAfter(Instant.now().plus(window))) {
+            disarm(capsule.getId());
+            return;
+        }
+        schedule(capsule);
+    }
+
+    public void disarm(String capsuleId) {
+        if (capsuleId == null) {
+            return;
+        }
+        synchronized (wheel) {
+            wheel.cancel(capsuleId);
+        }
+    }
+
+    /**
+     * Opens due capsules noticed on a read path (listing or detail) in the background.
+     * Never blocks the caller: capsules already queued are skipped, and when the worker queue
+     * is full the request is dropped and counted — the timing wheel or the reconciliation scan
+     * opens them.
+     */
+    public void requestOpen(List<Capsule> due) {
+        List<Capsule> accepted = new ArrayList<>();
+        for (Capsule capsule : due) {
+            if (capsule != null && capsule.getId() != null && pendingReadOpens.add(capsule.getId())) {
+                accepted.add(capsule);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        workers.execute(new ReadOpen(accepted));
+    }
+
+    /**
+     * Opens the due capsules among the candidates (only _id and ownerId are needed) and enqueues
+     * their notifications in the same transaction.
+     * @param source metrics tag of the caller (see {@link CapsuleUnlockMetrics})
+     * @return number of capsules opened by this call; others were opened or changed elsewhere
+     */
+    public int openBatch(List<Capsule> candidates, Instant now, String source) {
+        long startedAt = System.nanoTime();
+        List<Capsule> claimable = new ArrayList<>();
+        for (Capsule candidate : candidates) {
+            if (candidate != null && candidate.getId() != null && candidate.getOwnerId() != null) {
+                claimable.add(candidate);
+            }
+        }
+        if (claimable.isEmpty()) {
+            return 0;
+        }
+
+        // Claim token marks the documents this call actually flipped to opened.
+        String claimId = UUID.randomUUID().toString();
+        Set<String> ids = new LinkedHashSet<>();
+        Set<ObjectId> ownerIds = new LinkedHashSet<>();
+        for (Capsule candidate : claimable) {
+            ids.add(candidate.getId());
+            ownerIds.add(candidate.getOwnerId());
+        }
+        List<Capsule> opened = outboxService.inTransaction(() -> {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Capsule.class);
+            for (Capsule candidate : claimable) {
+                bulk.updateOne(
+                        new Query(
+                                Criteria.where("_id").is(candidate.getId())
+                                        .and("ownerId").is(candidate.getOwnerId())
+                                        .and("status").is(CapsuleStatus.SEALED.getValue())
+                                        .and("deletedAt").is(null)
+                                        .and("unlockAt").lte(now)
+                        ),
+                        new Update()
+                                .set("status", CapsuleStatus.OPENED.getValue())
+                                .set("openedAt", now)
+                                .set("updatedAt", now)
+                                .set("unlockClaimId", claimId)
+                );
+            }
+            if (bulk.execute().getModifiedCount() == 0) {
+                return List.of();
+            }
+
+            Query claimedQuery = new Query(
+                    Criteria.where("_id").in(ids)
+                            .and("ownerId").in(ownerIds)
+                            .and("unlockClaimId").is(claimId)
+            );
+            claimedQuery.fields()
+                    .include("_id")
+                    .include("ownerId")
+                    .include("title")
+                    .include("unlockAt")
+                    .include("openedAt")
+                    .include("tags");
+            List<Capsule> claimedCapsules = mongoTemplate.find(claimedQuery, Capsule.class);
+            openedNotifier.publishAll(claimedCapsules);
+            return claimedCapsules;
+        });
+        metrics.recordLost(source, claimable.size() - opened.size());
+        if (opened.isEmpty()) {
+            metrics.recordBatch(source, claimable.size(), System.nanoTime() - startedAt);
+            return 0;
+        }
+        publicCapsuleCache.invalidateAll(ids);
+
+        for (Capsule capsule : opened) {
+            disarm(capsule.getId());
+            metrics.recordOpened(capsule, source);
+        }
+        metrics.recordBatch(source, claimable.size(), System.nanoTime() - startedAt);
+        return opened.size();
+    }
+
+    private boolean schedule(Capsule capsule) {
+        if (capsule.getId() == null || capsule.getOwnerId() == null || capsule.getUnlockAt() == null) {
+            return false;
+        }
+        ArmedUnlock unlock = new ArmedUnlock(capsule.getId(), capsule.getOwnerId());
+        synchronized (wheel) {
+            wheel.schedule(capsule.getId(), capsule.getUnlockAt().toEpochMilli(), unlock);
+        }
+        return true;
+    }
+
+    private void tick() {
+        try {
+            List<ArmedUnlock> due;
+            synchronized (wheel) {
+                due = wheel.advance(System.currentTimeMillis());
+            }
+            for (int from = 0; from < due.size(); from += batchSize) {
+                List<ArmedUnlock> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+                workers.execute(() -> fire(batch));
+            }
+        } catch (RuntimeException ex) {
+            // The ticker must survive, otherwise armed deadlines stop firing.
+            log.error("Capsule unlock tick failed", ex);
+        }
+    }
+
+    private void fire(List<ArmedUnlock> batch) {
+        List<Capsule> candidates = new ArrayList<>(batch.size());
+        for (ArmedUnlock unlock : batch) {
+            Capsule capsule = new Capsule();
+            capsule.setId(unlock.capsuleId());
+            capsule.setOwnerId(unlock.ownerId());
+            candidates.add(capsule);
+        }
+        try {
+            openBatch(candidates, Instant.now(), CapsuleUnlockMetrics.SOURCE_ENGINE);
+        } catch (RuntimeException ex) {
+            // Left sealed; the reconciliation scan picks them up.
+            log.warn("Failed to open {} due capsules: {}", candidates.size(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Read-path opens are best effort and are dropped (and counted) when the queue is full or the
+     * engine is stopping. Ticker batches run on the ticker instead: a burst of due capsules slows
+     * it down rather than dropping unlocks.
+     */
+    private void rejected(Runnable task, ThreadPoolExecutor executor) {
+        if (task instanceof ReadOpen readOpen) {
+            readOpen.release();
+            metrics.recordDropped(CapsuleUnlockMetrics.SOURCE_READ, readOpen.capsules.size());
+            return;
+        }
+        if (!executor.isShutdown()) {
+            task.run();
+        }
+    }
+
+    private static ThreadFactory namedDaemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record ArmedUnlock(String capsuleId, ObjectId ownerId) {
+    }
+
+    private final class ReadOpen implements Runnable {
+
+        private final List<Capsule> capsules;
+
+        private ReadOpen(List<Capsule> capsules) {
+            this.capsules = capsules;
+        }
+
+        @Override
+        public void run() {
+            try {
+                openBatch(capsules, Instant.now(), CapsuleUnlockMetrics.SOURCE_READ);
+            } catch (RuntimeException ex) {
+                log.warn("Failed to open {} capsules requested by a read: {}", capsules.size(), ex.getMessage());
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            capsules.forEach(capsule -> pendingReadOpens.remove(capsule.getId()));
+        }
+    }
+}
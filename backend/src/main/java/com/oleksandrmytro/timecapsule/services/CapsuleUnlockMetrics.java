@@ -0,0 +1,131 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unlock SLA metrics: lag between unlockAt and openedAt, overdue backlog, batch duration/size,
+ * unlocks lost to a concurrent update and background opens dropped by a full worker queue.
+ * Tagged by source: engine (timing wheel), reconciliation (partition scan) and read
+ * (owner-triggered unlocks in CapsuleService).
+ * The overdue backlog is counted only by the replica holding the metrics lease; the others
+ * report 0, so sum() and max() across replicas both give the backlog.
+ */
+@Service
+public class CapsuleUnlockMetrics {
+
+    public static final String SOURCE_ENGINE = "engine";
+    public static final String SOURCE_RECONCILIATION = "reconciliation";
+    public static final String SOURCE_READ = "read";
+
+    private static final Logger log = LoggerFactory.getLogger(CapsuleUnlockMetrics.class);
+    private static final String LEASE_ID = "capsule-unlock-metrics";
+
+    private final MeterRegistry registry;
+    private final MongoTemplate mongoTemplate;
+    private final SchedulerLeaseService leaseService;
+    private final Duration leaseTtl;
+    private final AtomicLong overdue = new AtomicLong();
+
+    public CapsuleUnlockMetrics(MeterRegistry registry,
+                                MongoTemplate mongoTemplate,
+                                SchedulerLeaseService leaseService,
+                                @Value("${app.capsules.unlock-metrics.lease-ttl:PT90S}") Duration leaseTtl) {
+        this.registry = registry;
+        this.mongoTemplate = mongoTemplate;
+        this.leaseService = leaseService;
+        this.leaseTtl = leaseTtl;
+        Gauge.builder("capsules.unlock.overdue", overdue, AtomicLong::get)
+                .description("Sealed capsules whose unlockAt has passed")
+                .register(registry);
+    }
+
+    public void recordOpened(Capsule capsule, String source) {
+        if (capsule == null || capsule.getUnlockAt() == null || capsule.getOpenedAt() == null) {
+            return;
+        }
+        Duration lag = Duration.between(capsule.getUnlockAt(), capsule.getOpenedAt());
+        lagTimer(source).record(lag.isNegative() ? Duration.ZERO : lag);
+    }
+
+    public void recordBatch(String source, int size, long durationNanos) {
+        Timer.builder("capsules.unlock.batch.duration")
+                .description("Time to claim, resolve owners and hand off one unlock batch")
+                .tag("source", source)
+                .register(registry)
+                .record(Duration.ofNanos(durationNanos));
+        DistributionSummary.builder("capsules.unlock.batch.size")
+                .description("Capsules considered per unlock batch")
+                .tag("source", source)
+                .register(registry)
+                .record(size);
+    }
+
+    public void recordLost(String source, long count) {
+        if (count <= 0) {
+            return;
+        }
+        Counter.builder("capsules.unlock.lost")
+                .description("Unlock attempts that modified nothing because of a concurrent update")
+                .tag("source", source)
+                .register(registry)
+                .increment(count);
+    }
+
+    public void recordDropped(String source, long count) {
+        if (count <= 0) {
+            return;
+        }
+        Counter.builder("capsules.unlock.dropped")
+                .description("Due capsules whose background open was dropped because the worker queue was full")
+                .tag("source", source)
+                .register(registry)
+                .increment(count);
+    }
+
+    @Scheduled(fixedDelayString = "${app.capsules.unlock-metrics.overdue-refresh-ms:30000}")
+    public void refreshOverdue() {
+        try {
+            if (!leaseService.tryAcquire(LEASE_ID, leaseTtl)) {
+                // Another replica counts the backlog; do not report a stale copy of it.
+                overdue.set(0);
+                return;
+            }
+            Query query = new Query(
+                    Criteria.where("status").is(CapsuleStatus.SEALED.getValue())
+                            .and("deletedAt").is(null)
+                            .and("unlockAt").lte(Instant.now())
+            );
+            overdue.set(mongoTemplate.count(query, Capsule.class));
+        } catch (RuntimeException ex) {
+            log.warn("Failed to refresh overdue capsule gauge: {}", ex.getMessage());
+        }
+    }
+
+    private Timer lagTimer(String source) {
+        return Timer.builder("capsules.unlock.lag")
+                .description("openedAt - unlockAt")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(registry);
+    }
+}
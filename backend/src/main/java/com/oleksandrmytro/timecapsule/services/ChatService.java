@@ -4,34 +4,35 @@ import com.oleksandrmytro.timecapsule.models.ChatMessage;
 import com.oleksandrmytro.timecapsule.models.enums.ChatMessageStatus;
 import com.oleksandrmytro.timecapsule.models.enums.ChatMessageType;
 import com.oleksandrmytro.timecapsule.repositories.ChatMessageRepository;
+import org.bson.Document;
 import org.bson.types.ObjectId;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Chat service — purely WebSocket-based, no database persistence.
- * Messages are delivered in real-time via STOMP /user/queue/chat.
+ * Chat service — messages are stored in chat_messages and delivered via STOMP /user/queue/chat.
+ * The WS push goes through the outbox, written in the same transaction as the message.
  */
 @Service
 public class ChatService {
     private final UserService userService;
-    private final SimpMessagingTemplate messagingTemplate;
     private final ChatMessageRepository chatMessageRepository;
     private final EmailService emailService;
+    private final OutboxService outboxService;
 
-    public ChatService(UserService userService, SimpMessagingTemplate messagingTemplate, ChatMessageRepository chatMessageRepository, EmailService emailService) {
+    public ChatService(UserService userService, ChatMessageRepository chatMessageRepository, EmailService emailService, OutboxService outboxService) {
         this.userService = userService;
-        this.messagingTemplate = messagingTemplate;
         this.chatMessageRepository = chatMessageRepository;
         this.emailService = emailService;
+        this.outboxService = outboxService;
     }
 
     /**
@@ -62,9 +63,9 @@ public class ChatService {
         if (StringUtils.hasText(replyToMessageId)) {
             msg.setReplyToMessageId(new ObjectId(replyToMessageId));
         }
-        ChatMessage saved = chatMessageRepository.save(msg);
+        ChatMessage saved = saveAndDeliver(msg, currentUserId);
         enqueueChatDigestIfNeeded(currentUserId, peerId, saved);
-        return deliver(saved, currentUserId, peerId);
+        return toSenderPayload(saved, currentUserId);
     }
 
     public Map<String, Object> saveShareMessage(String ownerId, String granteeId, String capsuleId, String capsuleTitle, String text) {
@@ -75,47 +76,80 @@ public class ChatService {
         msg.setCapsuleTitle(capsuleTitle);
         msg.setCreatedAt(Instant.now());
         msg.setStatus(ChatMessageStatus.SENT);
-        ChatMessage saved = chatMessageRepository.save(msg);
+        ChatMessage saved = saveAndDeliver(msg, ownerId);
         enqueueChatDigestIfNeeded(ownerId, granteeId, saved);
-        return deliver(saved, ownerId, granteeId);
+        return toSenderPayload(saved, ownerId);
     }
 
-    private Map<String, Object> deliver(ChatMessage saved, String senderId, String peerId) {
-        // Формує payload для WebSocket-публікації: peerId — STOMP-principal отримувача.
-        // Через convertAndSendToUser(peerId, ...) повідомлення потрапляє саме до потрібного WebSocket-підключення.
-        Map<String, Object> payloadToPeer = new HashMap<>();
-        payloadToPeer.put("id", saved.getId());
-        payloadToPeer.put("type", saved.getType());
-        payloadToPeer.put("text", saved.getText() == null ? "" : saved.getText());
-        payloadToPeer.put("fromUserId", senderId);
-        payloadToPeer.put("fromMe", false);
-        payloadToPeer.put("timestamp", saved.getCreatedAt().toString());
-        payloadToPeer.put("status", saved.getStatus());
-        payloadToPeer.put("mediaUrl", saved.getMediaUrl());
-        payloadToPeer.put("mediaKind", saved.getMediaKind());
-        payloadToPeer.put("mimeType", saved.getMimeType());
-        if (saved.getCapsuleId() != null) payloadToPeer.put("capsuleId", saved.getCapsuleId().toHexString());
-        if (saved.getCapsuleTitle() != null) payloadToPeer.put("capsuleTitle", saved.getCapsuleTitle());
-        if (saved.getReplyToMessageId() != null) payloadToPeer.put("replyToMessageId", saved.getReplyToMessageId().toHexString());
-        System.out.println("[CHAT] deliver to peerId=" + peerId + " payload=" + payloadToPeer);
-        // Spring шукає WS зєднання де Principal.getName() == peerId і відправляє повідомлення на канал "/queue/chat"
-        messagingTemplate.convertAndSendToUser(peerId, "/queue/chat", payloadToPeer);
-
-        Map<String, Object> payloadToSender = new HashMap<>();
-        payloadToSender.put("id", saved.getId());
-        payloadToSender.put("type", saved.getType());
-        payloadToSender.put("text", saved.getText() == null ? "" : saved.getText());
-        payloadToSender.put("fromUserId", senderId);
-        payloadToSender.put("fromMe", true);
-        payloadToSender.put("timestamp", saved.getCreatedAt().toString());
-        payloadToSender.put("status", saved.getStatus());
-        payloadToSender.put("mediaUrl", saved.getMediaUrl());
-        payloadToSender.put("mediaKind", saved.getMediaKind());
-        payloadToSender.put("mimeType", saved.getMimeType());
-        if (saved.getCapsuleId() != null) payloadToSender.put("capsuleId", saved.getCapsuleId().toHexString());
-        if (saved.getCapsuleTitle() != null) payloadToSender.put("capsuleTitle", saved.getCapsuleTitle());
-        if (saved.getReplyToMessageId() != null) payloadToSender.put("replyToMessageId", saved.getReplyToMessageId().toHexString());
-        return payloadToSender;
+    /**
+     * Пакетний варіант saveShareMessage для розсилки капсули: усі повідомлення нові, тож saveAll —
+     * один insertMany. WS-доставку caller ставить в outbox (toOutboxRow) у тій самій транзакції,
+     * digest — через enqueueShareDigest на асинхронній стадії.
+     */
+    public List<ChatMessage> saveShareMessages(String senderId, Collection<String> granteeIds, String capsuleId, String capsuleTitle, String text) {
+        Instant now = Instant.now();
+        List<ChatMessage> messages = new ArrayList<>(granteeIds.size());
+        for (String granteeId : granteeIds) {
+            ChatMessage msg = new ChatMessage(senderId, granteeId, text);
+            msg.setType(ChatMessageType.CAPSULE_SHARE);
+            msg.setCapsuleId(new ObjectId(capsuleId));
+            msg.setCapsuleTitle(capsuleTitle);
+            msg.setCreatedAt(now);
+            msg.setStatus(ChatMessageStatus.SENT);
+            messages.add(msg);
+        }
+        return chatMessageRepository.saveAll(messages);
+    }
+
+    /**
+     * Digest одного збереженого share-повідомлення; ім'я відправника вже відоме,
+     * тож без пошуку користувача на кожного отримувача.
+     */
+    public void enqueueShareDigest(ChatMessage saved, String senderId, String senderName) {
+        String granteeId = saved.getToUserId().toHexString();
+        if (!senderId.equals(granteeId)) {
+            emailService.enqueueChatDigest(granteeId, senderName, buildDigestPreview(saved));
+        }
+    }
+
+    /**
+     * Outbox-рядок WS-доставки повідомлення отримувачу: userId — STOMP-principal отримувача,
+     * OutboxDispatcher надсилає message через convertAndSendToUser(userId, "/queue/chat", ...).
+     */
+    public Document toOutboxRow(ChatMessage saved, String senderId) {
+        return new Document("userId", saved.getToUserId().toHexString())
+                .append("message", new Document(toPayload(saved, senderId, false)));
+    }
+
+    private ChatMessage saveAndDeliver(ChatMessage msg, String senderId) {
+        // Повідомлення і його WS-доставка зберігаються однією транзакцією: без втрачених пушів.
+        return outboxService.inTransaction(() -> {
+            ChatMessage saved = chatMessageRepository.save(msg);
+            outboxService.enqueue(OutboxService.TYPE_CHAT_MESSAGE, toOutboxRow(saved, senderId));
+            return saved;
+        });
+    }
+
+    private Map<String, Object> toSenderPayload(ChatMessage saved, String senderId) {
+        return toPayload(saved, senderId, true);
+    }
+
+    private Map<String, Object> toPayload(ChatMessage saved, String senderId, boolean fromMe) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("id", saved.getId());
+        payload.put("type", saved.getType());
+        payload.put("text", saved.getText() == null ? "" : saved.getText());
+        payload.put("fromUserId", senderId);
+        payload.put("fromMe", fromMe);
+        payload.put("timestamp", saved.getCreatedAt().toString());
+        payload.put("status", saved.getStatus());
+        payload.put("mediaUrl", saved.getMediaUrl());
+        payload.put("mediaKind", saved.getMediaKind());
+        payload.put("mimeType", saved.getMimeType());
+        if (saved.getCapsuleId() != null) payload.put("capsuleId", saved.getCapsuleId().toHexString());
+        if (saved.getCapsuleTitle() != null) payload.put("capsuleTitle", saved.getCapsuleTitle());
+        if (saved.getReplyToMessageId() != null) payload.put("replyToMessageId", saved.getReplyToMessageId().toHexString());
+        return payload;
     }
 
     public List<Map<String, Object>> getConversation(String currentUserId, String peerId) {
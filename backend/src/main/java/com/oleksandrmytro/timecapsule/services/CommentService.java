@@ -4,7 +4,6 @@ import com.oleksandrmytro.timecapsule.models.Capsule;
 import com.oleksandrmytro.timecapsule.models.Comment;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleVisibility;
-import com.oleksandrmytro.timecapsule.repositories.CapsuleRepository;
 import com.oleksandrmytro.timecapsule.repositories.CommentRepository;
 import com.oleksandrmytro.timecapsule.repositories.UserRepository;
 import com.oleksandrmytro.timecapsule.responses.CommentResponse;
@@ -23,14 +22,14 @@ import java.util.stream.Collectors;
 public class CommentService {
 
     private final CommentRepository commentRepository;
-    private final CapsuleRepository capsuleRepository;
+    private final CapsuleRouteService capsuleRoutes;
     private final UserRepository userRepository;
     private final MongoTemplate mongoTemplate;
     private final EmailService emailService;
 
-    public CommentService(CommentRepository commentRepository, CapsuleRepository capsuleRepository, UserRepository userRepository, MongoTemplate mongoTemplate, EmailService emailService) {
+    public CommentService(CommentRepository commentRepository, CapsuleRouteService capsuleRoutes, UserRepository userRepository, MongoTemplate mongoTemplate, EmailService emailService) {
         this.commentRepository = commentRepository;
-        this.capsuleRepository = capsuleRepository;
+        this.capsuleRoutes = capsuleRoutes;
         this.userRepository = userRepository;
         this.mongoTemplate = mongoTemplate;
         this.emailService = emailService;
@@ -132,7 +131,7 @@ public class CommentService {
      * Перевіряє, що капсула публічна, відкрита та не видалена.
      */
     private Capsule assertPublicOpenedCapsule(String capsuleId) {
-        Capsule capsule = capsuleRepository.findByIdAndDeletedAtIsNull(capsuleId)
+        Capsule capsule = capsuleRoutes.findActive(capsuleId)
                 .orElseThrow(() -> new IllegalArgumentException("Капсула не знайдена"));
 
         if (!CapsuleVisibility.PUBLIC.equals(CapsuleVisibility.fromValue(capsule.getVisibility()))) {
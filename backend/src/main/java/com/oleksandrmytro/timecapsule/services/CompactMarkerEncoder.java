@@ -0,0 +1,77 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.responses.CompactMarkersResponse;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts map marker maps (listMapMarkers / viewport / tiles) into {@link CompactMarkersResponse}.
+ */
+public final class CompactMarkerEncoder {
+
+    private static final double SCALE = 1_000_000.0;
+
+    private CompactMarkerEncoder() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static CompactMarkersResponse encode(List<Map<String, Object>> markers) {
+        CompactMarkersResponse out = new CompactMarkersResponse();
+        Map<String, Integer> ownerIndex = new HashMap<>();
+        long previousLon = 0;
+        long previousLat = 0;
+
+        for (Map<String, Object> item : markers) {
+            boolean cluster = "cluster".equals(item.get("kind"));
+            Map<String, Object> marker = cluster ? (Map<String, Object>) item.get("representative") : item;
+            List<Double> coordinates = (List<Double>) item.get("coordinates");
+            if (marker == null || coordinates == null || coordinates.size() < 2) {
+                continue;
+            }
+
+            String ownerId = (String) marker.get("ownerId");
+            Integer owner = ownerIndex.get(ownerId);
+            if (owner == null) {
+                owner = out.getOwnerIds().size();
+                ownerIndex.put(ownerId, owner);
+                out.getOwnerIds().add(objectIdBytes(ownerId));
+                out.getOwnerNames().add((String) marker.get("ownerName"));
+                out.getOwnerAvatarUrls().add((String) marker.get("ownerAvatarUrl"));
+            }
+
+            long lon = Math.round(coordinates.get(0) * SCALE);
+            long lat = Math.round(coordinates.get(1) * SCALE);
+            out.getLonDeltas().add(lon - previousLon);
+            out.getLatDeltas().add(lat - previousLat);
+            previousLon = lon;
+            previousLat = lat;
+
+            out.getIds().add(objectIdBytes((String) marker.get("id")));
+            out.getOwners().add(owner);
+            out.getCounts().add(cluster ? ((Number) item.get("count")).intValue() : 1);
+            out.getTitles().add((String) marker.get("title"));
+            out.getVisibilities().add((String) marker.get("visibility"));
+            out.getStatuses().add((String) marker.get("status"));
+            int flags = (Boolean.TRUE.equals(marker.get("isLocked")) ? 1 : 0)
+                    | (Boolean.TRUE.equals(marker.get("isOwn")) ? 2 : 0);
+            out.getFlags().add(flags);
+            out.getCoverImageUrls().add((String) marker.get("coverImageUrl"));
+            out.getUnlockAt().add(epochSeconds(marker.get("unlockAt")));
+            out.getOpenedAt().add(epochSeconds(marker.get("openedAt")));
+            out.getTags().add((List<String>) marker.get("tags"));
+        }
+        return out;
+    }
+
+    private static byte[] objectIdBytes(String hex) {
+        return hex != null && ObjectId.isValid(hex) ? new ObjectId(hex).toByteArray() : null;
+    }
+
+    private static Long epochSeconds(Object value) {
+        return value instanceof Instant instant ? instant.getEpochSecond() : null;
+    }
+}
@@ -163,18 +163,31 @@ public class EmailService {
             return;
         }
 
-        userRepository.findById(ownerId).ifPresent(user -> {
-            if (!StringUtils.hasText(user.getEmail())) {
-                return;
-            }
-            String subject = buildCapsuleOpenedSubject(capsule.getTitle());
-            String htmlBody = buildCapsuleOpenedBody(user, capsule);
-            try {
-                sendHtmlEmail(user.getEmail(), subject, htmlBody);
-            } catch (MessagingException ex) {
-                log.warn("Failed to send capsule-opened email to user {}", ownerId, ex);
-            }
-        });
+        userRepository.findById(ownerId).ifPresent(user -> sendCapsuleOpened(user, capsule));
+    }
+
+    public void sendCapsuleOpened(User owner, Capsule capsule) {
+        try {
+            deliverCapsuleOpened(owner, capsule);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to send capsule-opened email to user {}", owner.getId(), ex);
+        }
+    }
+
+    /**
+     * Як sendCapsuleOpened, але помилка SMTP не ковтається — outbox-диспетчер повторить доставку.
+     */
+    public void deliverCapsuleOpened(User owner, Capsule capsule) {
+        if (owner == null || capsule == null || !StringUtils.hasText(owner.getEmail())) {
+            return;
+        }
+        String subject = buildCapsuleOpenedSubject(capsule.getTitle());
+        String htmlBody = buildCapsuleOpenedBody(owner, capsule);
+        try {
+            sendHtmlEmail(owner.getEmail(), subject, htmlBody);
+        } catch (MessagingException ex) {
+            throw new IllegalStateException("Failed to build capsule-opened email: " + ex.getMessage(), ex);
+        }
     }
 
     public void enqueueCommentDigest(String recipientUserId, String actorName, String capsuleTitle) {
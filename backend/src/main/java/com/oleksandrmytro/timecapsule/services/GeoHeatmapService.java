@@ -0,0 +1,234 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.responses.HeatmapCellResponse;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Density of public geomarkers per geohash cell. geo_heatmap holds one counter per
+ * (precision, cell) for precisions 1..MAX_PRECISION; CapsuleService adjusts the counters on
+ * every geomarker write, and a marker that is counted carries inHeatmap=true so it is
+ * decremented exactly once. A one-off backfill (lease + checkpoint) counts markers that
+ * existed before the rollup.
+ */
+@Service
+public class GeoHeatmapService {
+    private static final Logger log = LoggerFactory.getLogger(GeoHeatmapService.class);
+
+    public static final int MAX_PRECISION = 6;
+    static final String HEATMAP_COLLECTION = "geo_heatmap";
+
+    private static final String CHECKPOINTS_COLLECTION = "migration_checkpoints";
+    private static final String BACKFILL_ID = "geo-heatmap-backfill";
+    private static final String LEASE_ID = "geo-heatmap-backfill";
+    // bbox запит розкладається на діапазони префіксів; більше — дешевше читати всю точність
+    private static final int MAX_COVER_CELLS = 64;
+
+    private final MongoTemplate mongoTemplate;
+    private final SchedulerLeaseService leaseService;
+    private final Duration leaseTtl;
+    private volatile boolean backfilled;
+
+    public GeoHeatmapService(MongoTemplate mongoTemplate,
+                             SchedulerLeaseService leaseService,
+                             @Value("${app.capsules.heatmap.backfill-lease-ttl:PT10M}") Duration leaseTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.leaseService = leaseService;
+        this.leaseTtl = leaseTtl;
+    }
+
+    /**
+     * Adds delta to every precision's cell containing the point.
+     */
+    public void record(double lon, double lat, int delta) {
+        record(Map.of(Geohash.encode(lon, lat, MAX_PRECISION), (long) delta));
+    }
+
+    /**
+     * Counters per cell at the requested precision, read from geo_heatmap only.
+     * @param bbox optional "west,south,east,north"
+     */
+    public List<HeatmapCellResponse> list(int precision, String bbox) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between 1 and " + MAX_PRECISION);
+        }
+        Criteria criteria = Criteria.where("precision").is(precision).and("count").gt(0);
+        double[] box = null;
+        if (bbox != null && !bbox.isBlank()) {
+            MapViewport viewport = MapViewport.parse(bbox, 0);
+            box = new double[]{viewport.west(), viewport.south(), viewport.east(), viewport.north()};
+            List<String> prefixes = coverPrefixes(box, precision);
+            if (prefixes != null) {
+                criteria.orOperator(prefixes.stream()
+                        .map(prefix -> Criteria.where("cell").gte(prefix).lt(prefix + "{"))
+                        .toArray(Criteria[]::new));
+            }
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "cell"));
+        query.fields().include("cell", "count").exclude("_id");
+
+        List<HeatmapCellResponse> cells = new ArrayList<>();
+        for (Document row : mongoTemplate.find(query, Document.class, HEATMAP_COLLECTION)) {
+            String cell = row.getString("cell");
+            double[] bounds = Geohash.bounds(cell);
+            if (box != null && !intersects(bounds, box)) {
+                continue;
+            }
+            cells.add(new HeatmapCellResponse(cell, row.get("count", Number.class).longValue(),
+                    List.of((bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2)));
+        }
+        return cells;
+    }
+
+    @Scheduled(fixedDelayString = "${app.capsules.heatmap.backfill-check-ms:60000}")
+    public void backfillIfNeeded() {
+        if (backfilled) {
+            return;
+        }
+        try {
+            if (mongoTemplate.findById(BACKFILL_ID, Document.class, CHECKPOINTS_COLLECTION) != null) {
+                backfilled = true;
+                return;
+            }
+            if (!leaseService.tryAcquire(LEASE_ID, leaseTtl)) {
+                return;
+            }
+            backfill();
+        } catch (RuntimeException ex) {
+            log.warn("Geo heatmap backfill failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Counts public markers of public, non-draft capsules not yet flagged inHeatmap. A marker
+     * written by a live request while its batch is in flight can be off by one in its cells.
+     */
+    private void backfill() {
+        List<AggregationOperation> stages = List.of(
+                context -> new Document("$match", new Document("deletedAt", null)
+                        .append("visibility", "public")
+                        .append("inHeatmap", new Document("$ne", true))),
+                context -> new Document("$lookup", new Document("from", "capsules")
+                        .append("localField", "capsuleId")
+                        .append("foreignField", "_id")
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("deletedAt", null)
+                                        .append("visibility", "public")
+                                        .append("status", new Document("$ne", "draft"))),
+                                new Document("$project", new Document("_id", 1))
+                        ))
+                        .append("as", "capsule")),
+                context -> new Document("$match", new Document("capsule", new Document("$ne", List.of()))),
+                context -> new Document("$project", new Document("location", 1))
+        );
+
+        int counted = 0;
+        Map<String, Long> pending = new HashMap<>();
+        List<ObjectId> batch = new ArrayList<>();
+        for (Document marker : mongoTemplate.aggregate(Aggregation.newAggregation(stages), "geomarkers", Document.class)) {
+            double[] point = coordinates(marker.get("location"));
+            if (point == null) {
+                continue;
+            }
+            batch.add(marker.getObjectId("_id"));
+            pending.merge(Geohash.encode(point[0], point[1], MAX_PRECISION), 1L, Long::sum);
+            if (batch.size() == 1_000) {
+                counted += flagAndCount(batch, pending);
+                batch.clear();
+                pending.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            counted += flagAndCount(batch, pending);
+        }
+
+        Instant now = Instant.now();
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(BACKFILL_ID)),
+                new Update().set("completedAt", now).set("counted", counted),
+                CHECKPOINTS_COLLECTION);
+        backfilled = true;
+        log.info("Geo heatmap backfilled with {} markers", counted);
+    }
+
+    private int flagAndCount(List<ObjectId> markerIds, Map<String, Long> countsByCell) {
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(markerIds).and("inHeatmap").ne(true)),
+                new Update().set("inHeatmap", true),
+                "geomarkers"
+        );
+        record(countsByCell);
+        return markerIds.size();
+    }
+
+    /**
+     * One unordered bulk of $inc upserts: each finest cell expands to all its prefixes.
+     */
+    private void record(Map<String, Long> deltasByFinestCell) {
+        Map<String, Long> deltas = new HashMap<>();
+        deltasByFinestCell.forEach((cell, delta) -> {
+            for (int precision = 1; precision <= MAX_PRECISION; precision++) {
+                deltas.merge(precision + ":" + cell.substring(0, precision), delta, Long::sum);
+            }
+        });
+        Instant now = Instant.now();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, HEATMAP_COLLECTION);
+        deltas.forEach((id, delta) -> {
+            int separator = id.indexOf(':');
+            bulk.upsert(
+                    new Query(Criteria.where("_id").is(id)),
+                    new Update()
+                            .inc("count", delta)
+                            .set("updatedAt", now)
+                            .setOnInsert("precision", Integer.parseInt(id.substring(0, separator)))
+                            .setOnInsert("cell", id.substring(separator + 1))
+            );
+        });
+        bulk.execute();
+    }
+
+    private static List<String> coverPrefixes(double[] box, int precision) {
+        for (int level = precision; level >= 1; level--) {
+            if (Geohash.coverSize(box[0], box[1], box[2], box[3], level) <= MAX_COVER_CELLS) {
+                return Geohash.cover(box[0], box[1], box[2], box[3], level);
+            }
+        }
+        return null;
+    }
+
+    private static boolean intersects(double[] cell, double[] box) {
+        boolean lat = cell[3] >= box[1] && cell[1] <= box[3];
+        boolean lon = box[0] <= box[2]
+                ? cell[2] >= box[0] && cell[0] <= box[2]
+                : cell[2] >= box[0] || cell[0] <= box[2];
+        return lat && lon;
+    }
+
+    private static double[] coordinates(Object location) {
+        if (!(location instanceof Document point) || !(point.get("coordinates") instanceof List<?> coordinates)
+                || coordinates.size() < 2
+                || !(coordinates.get(0) instanceof Number lon) || !(coordinates.get(1) instanceof Number lat)) {
+            return null;
+        }
+        return new double[]{lon.doubleValue(), lat.doubleValue()};
+    }
+}
@@ -0,0 +1,241 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves legacy capsule.location fields into geomarkers. Two sources per run:
+ * the geomarker_outbox (capsules whose marker write failed and fell back to location) and
+ * a resumable _id-ordered sweep over capsules that still carry location, checkpointed in
+ * migration_checkpoints. One replica at a time holds the lease; batch-size per delay-ms is the
+ * rate limit. Once the sweep has finished, CapsuleService switches its geo reads to geomarkers,
+ * except for capsules still waiting in the outbox, which keep their location until retried.
+ *
+ * A second checkpointed sweep copies the capsule's ownerId onto geomarkers written before the
+ * field existed; once it has finished, the map viewport stops letting markers without an owner
+ * through its pre-filter.
+ */
+@Component
+public class GeoMarkerMigrator {
+    private static final Logger log = LoggerFactory.getLogger(GeoMarkerMigrator.class);
+
+    static final String OUTBOX_COLLECTION = "geomarker_outbox";
+    private static final String MARKERS_COLLECTION = "geomarkers";
+    static final String CHECKPOINTS_COLLECTION = "migration_checkpoints";
+    static final String CHECKPOINT_ID = "capsule-location-to-geomarkers";
+    static final String OWNERS_CHECKPOINT_ID = "geomarker-owner-backfill";
+    private static final String LEASE_ID = "geomarker-migration";
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+
+    private final MongoTemplate mongoTemplate;
+    private final CapsuleService capsuleService;
+    private final SchedulerLeaseService leaseService;
+    private final int batchSize;
+    private final Duration leaseTtl;
+
+    public GeoMarkerMigrator(MongoTemplate mongoTemplate,
+                             CapsuleService capsuleService,
+                             SchedulerLeaseService leaseService,
+                             @Value("${app.capsules.geo-migration.batch-size:100}") int batchSize,
+                             @Value("${app.capsules.geo-migration.lease-ttl:PT2M}") Duration leaseTtl) {
+        this.mongoTemplate = mongoTemplate;
+        this.capsuleService = capsuleService;
+        this.leaseService = leaseService;
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseTtl = leaseTtl;
+    }
+
+    @Scheduled(fixedDelayString = "${app.capsules.geo-migration.delay-ms:10000}")
+    public void run() {
+        try {
+            Document checkpoint = mongoTemplate.findById(CHECKPOINT_ID, Document.class, CHECKPOINTS_COLLECTION);
+            boolean completed = checkpoint != null && checkpoint.get("completedAt") != null;
+            Document ownersCheckpoint = mongoTemplate.findById(OWNERS_CHECKPOINT_ID, Document.class, CHECKPOINTS_COLLECTION);
+            boolean ownersCompleted = ownersCheckpoint != null && ownersCheckpoint.get("completedAt") != null;
+            // Every replica follows the checkpoints, only the lease holder does the work.
+            capsuleService.setLegacyLocationsDrained(completed);
+            capsuleService.setMarkerOwnersBackfilled(ownersCompleted);
+            if (!leaseService.tryAcquire(LEASE_ID, leaseTtl)) {
+                return;
+            }
+            drainOutbox();
+            if (!completed) {
+                sweep(checkpoint);
+            }
+            if (!ownersCompleted) {
+                backfillMarkerOwners(ownersCheckpoint);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Geomarker migration run failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Records a capsule whose geomarker write failed, so the migrator retries it.
+     */
+    public static void enqueue(MongoTemplate mongoTemplate, ObjectId capsuleId, ObjectId ownerId) {
+        Instant now = Instant.now();
+        mongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(capsuleId)),
+                new Update()
+                        .set("ownerId", ownerId)
+                        .set("nextAttemptAt", now)
+                        .setOnInsert("attempts", 0)
+                        .setOnInsert("createdAt", now),
+                OUTBOX_COLLECTION
+        );
+    }
+
+    private void drainOutbox() {
+        Query due = new Query(Criteria.where("nextAttemptAt").lte(Instant.now()))
+                .with(Sort.by(Sort.Direction.ASC, "nextAttemptAt"))
+                .limit(batchSize);
+        for (Document entry : mongoTemplate.find(due, Document.class, OUTBOX_COLLECTION)) {
+            ObjectId capsuleId = entry.getObjectId("_id");
+            Instant seenAttempt = entry.getDate("nextAttemptAt").toInstant();
+            boolean migrated = migrate(capsuleId, entry.getObjectId("ownerId"));
+            // Guarded by nextAttemptAt: a fresh failure enqueued meanwhile keeps its entry.
+            Query same = new Query(Criteria.where("_id").is(capsuleId).and("nextAttemptAt").is(seenAttempt));
+            if (migrated) {
+                mongoTemplate.remove(same, OUTBOX_COLLECTION);
+                continue;
+            }
+            int attempts = entry.getInteger("attempts", 0) + 1;
+            long delaySeconds = Math.min(MAX_RETRY_DELAY.toSeconds(), 10L << Math.min(attempts, 16));
+            mongoTemplate.updateFirst(same,
+                    new Update().set("attempts", attempts).set("nextAttemptAt", Instant.now().plusSeconds(delaySeconds)),
+                    OUTBOX_COLLECTION);
+        }
+    }
+
+    private void sweep(Document checkpoint) {
+        ObjectId lastId = checkpoint != null ? checkpoint.getObjectId("lastId") : null;
+        Document filter = new Document("location", new Document("$ne", null));
+        if (lastId != null) {
+            filter.append("_id", new Document("$gt", lastId));
+        }
+        Query query = new BasicQuery(filter, new Document("_id", 1).append("ownerId", 1));
+        query.with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.limit(batchSize);
+
+        List<Document> batch = mongoTemplate.find(query, Document.class, "capsules");
+        Instant now = Instant.now();
+        if (batch.isEmpty()) {
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(CHECKPOINT_ID)),
+                    new Update().set("completedAt", now).set("updatedAt", now),
+                    CHECKPOINTS_COLLECTION);
+            capsuleService.setLegacyLocationsDrained(true);
+            log.info("Legacy capsule locations migrated to geomarkers");
+            return;
+        }
+
+        int migrated = 0;
+        for (Document capsule : batch) {
+            ObjectId capsuleId = capsule.getObjectId("_id");
+            if (migrate(capsuleId, capsule.getObjectId("ownerId"))) {
+                migrated++;
+            } else {
+                enqueue(mongoTemplate, capsuleId, capsule.getObjectId("ownerId"));
+            }
+        }
+        mongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(CHECKPOINT_ID)),
+                new Update()
+                        .set("lastId", batch.get(batch.size() - 1).getObjectId("_id"))
+                        .inc("migrated", migrated)
+                        .set("updatedAt", now)
+                        .setOnInsert("startedAt", now),
+                CHECKPOINTS_COLLECTION
+        );
+    }
+
+    /**
+     * One batch of geomarkers without ownerId, in _id order: owners are read from capsules by _id
+     * (a broadcast, but only for this one-off sweep) and set by _id + capsuleId (the shard key).
+     * Markers of capsules that no longer exist keep no owner and are skipped.
+     */
+    private void backfillMarkerOwners(Document checkpoint) {
+        ObjectId lastId = checkpoint != null ? checkpoint.getObjectId("lastId") : null;
+        Document filter = new Document("ownerId", null);
+        if (lastId != null) {
+            filter.append("_id", new Document("$gt", lastId));
+        }
+        Query query = new BasicQuery(filter, new Document("_id", 1).append("capsuleId", 1));
+        query.with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.limit(batchSize);
+
+        List<Document> markers = mongoTemplate.find(query, Document.class, MARKERS_COLLECTION);
+        Instant now = Instant.now();
+        if (markers.isEmpty()) {
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(OWNERS_CHECKPOINT_ID)),
+                    new Update().set("completedAt", now).set("updatedAt", now),
+                    CHECKPOINTS_COLLECTION);
+            capsuleService.setMarkerOwnersBackfilled(true);
+            log.info("Geomarker owners backfilled");
+            return;
+        }
+
+        Set<ObjectId> capsuleIds = new HashSet<>();
+        markers.forEach(marker -> capsuleIds.add(marker.getObjectId("capsuleId")));
+        Query owners = new Query(Criteria.where("_id").in(capsuleIds));
+        owners.fields().include("_id", "ownerId");
+        Map<ObjectId, ObjectId> ownerByCapsule = new HashMap<>();
+        for (Document capsule : mongoTemplate.find(owners, Document.class, "capsules")) {
+            ownerByCapsule.put(capsule.getObjectId("_id"), capsule.getObjectId("ownerId"));
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MARKERS_COLLECTION);
+        int updated = 0;
+        for (Document marker : markers) {
+            ObjectId ownerId = ownerByCapsule.get(marker.getObjectId("capsuleId"));
+            if (ownerId == null) {
+                continue;
+            }
+            bulk.updateOne(
+                    new Query(Criteria.where("_id").is(marker.getObjectId("_id")).and("capsuleId").is(marker.getObjectId("capsuleId"))),
+                    new Update().set("ownerId", ownerId));
+            updated++;
+        }
+        if (updated > 0) {
+            bulk.execute();
+        }
+        mongoTemplate.upsert(
+                new Query(Criteria.where("_id").is(OWNERS_CHECKPOINT_ID)),
+                new Update()
+                        .set("lastId", markers.get(markers.size() - 1).getObjectId("_id"))
+                        .inc("updated", updated)
+                        .set("updatedAt", now)
+                        .setOnInsert("startedAt", now),
+                CHECKPOINTS_COLLECTION
+        );
+    }
+
+    private boolean migrate(ObjectId capsuleId, ObjectId ownerId) {
+        try {
+            return capsuleService.migrateLegacyLocation(capsuleId, ownerId);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to migrate location of capsule {}: {}", capsuleId, ex.getMessage());
+            return false;
+        }
+    }
+}
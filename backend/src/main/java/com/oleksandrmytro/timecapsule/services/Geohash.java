@@ -0,0 +1,130 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Standard base32 geohash: encode, cell bounds and the cells covering a lat/lon box.
+ */
+final class Geohash {
+
+    static final int MAX_PRECISION = 12;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {
+    }
+
+    static String encode(double lon, double lat, int precision) {
+        double minLon = -180, maxLon = 180, minLat = -90, maxLat = 90;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean lonBit = true;
+        int bits = 0;
+        int value = 0;
+        while (hash.length() < precision) {
+            if (lonBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    value = (value << 1) | 1;
+                    minLon = mid;
+                } else {
+                    value <<= 1;
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    value = (value << 1) | 1;
+                    minLat = mid;
+                } else {
+                    value <<= 1;
+                    maxLat = mid;
+                }
+            }
+            lonBit = !lonBit;
+            if (++bits == 5) {
+                hash.append(BASE32.charAt(value));
+                bits = 0;
+                value = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * @return {west, south, east, north} of the cell
+     */
+    static double[] bounds(String hash) {
+        double minLon = -180, maxLon = 180, minLat = -90, maxLat = 90;
+        boolean lonBit = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int value = BASE32.indexOf(hash.charAt(i));
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid geohash");
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = ((value >> bit) & 1) == 1;
+                if (lonBit) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (set) minLon = mid; else maxLon = mid;
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (set) minLat = mid; else maxLat = mid;
+                }
+                lonBit = !lonBit;
+            }
+        }
+        return new double[]{minLon, minLat, maxLon, maxLat};
+    }
+
+    static double cellWidth(int precision) {
+        return 360.0 / (1L << ((5 * precision + 1) / 2));
+    }
+
+    static double cellHeight(int precision) {
+        return 180.0 / (1L << (5 * precision / 2));
+    }
+
+    /**
+     * Number of cells of the given precision needed to cover the box (west > east crosses the antimeridian).
+     */
+    static long coverSize(double west, double south, double east, double north, int precision) {
+        double span = west <= east ? east - west : 360.0 - west + east;
+        // +2 for partial cells at both edges, +1 more when the box is split at the antimeridian
+        long columns = (long) Math.floor(span / cellWidth(precision)) + (west <= east ? 2 : 3);
+        long rows = (long) Math.floor((north - south) / cellHeight(precision)) + 2;
+        return columns * rows;
+    }
+
+    /**
+     * Cells of the given precision intersecting the box.
+     */
+    static List<String> cover(double west, double south, double east, double north, int precision) {
+        List<double[]> ranges = new ArrayList<>();
+        if (west <= east) {
+            ranges.add(new double[]{west, east});
+        } else {
+            ranges.add(new double[]{west, 180.0});
+            ranges.add(new double[]{-180.0, east});
+        }
+        double width = cellWidth(precision);
+        double height = cellHeight(precision);
+        Set<String> cells = new LinkedHashSet<>();
+        for (double[] range : ranges) {
+            for (double lat = south; ; lat = Math.min(north, lat + height)) {
+                for (double lon = range[0]; ; lon = Math.min(range[1], lon + width)) {
+                    cells.add(encode(Math.min(lon, 180.0 - 1e-9), Math.min(lat, 90.0 - 1e-9), precision));
+                    if (lon >= range[1]) {
+                        break;
+                    }
+                }
+                if (lat >= north) {
+                    break;
+                }
+            }
+        }
+        return new ArrayList<>(cells);
+    }
+}
@@ -0,0 +1,158 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel (cascading, Linux-timer style) for keyed deadlines.
+ * Each level has 64 slots; an entry sits on the highest level where its deadline tick
+ * differs from the current tick and cascades down when that slot comes around.
+ * Not thread-safe: callers serialize access.
+ */
+final class HierarchicalTimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final List<List<Entry<T>>> slots;
+    private final List<Entry<T>> overflow = new ArrayList<>();
+    private final List<Entry<T>> due = new ArrayList<>();
+    private final Map<String, Entry<T>> entriesByKey = new HashMap<>();
+    private long currentTick;
+
+    HierarchicalTimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+        this.slots = new ArrayList<>(LEVELS * SLOTS);
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Schedules (or reschedules) the value under the given key. Deadlines are rounded up to
+     * the next tick, so an entry never fires early; already due entries fire on the next advance.
+     */
+    void schedule(String key, long deadlineMillis, T value) {
+        cancel(key);
+        long deadlineTick = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+        Entry<T> entry = new Entry<>(key, deadlineTick, value);
+        entriesByKey.put(key, entry);
+        place(entry);
+    }
+
+    /**
+     * Cancels the entry lazily; it is dropped when its slot is visited.
+     */
+    boolean cancel(String key) {
+        Entry<T> entry = entriesByKey.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancelled = true;
+        return true;
+    }
+
+    boolean contains(String key) {
+        return entriesByKey.containsKey(key);
+    }
+
+    int size() {
+        return entriesByKey.size();
+    }
+
+    /**
+     * Moves the wheel forward to the given time and returns the values whose deadline has passed.
+     */
+    List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        drain(due, expired);
+
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = LEVELS - 1; level >= 1; level--) {
+                long lowerMask = (1L << (SLOT_BITS * level)) - 1;
+                if ((currentTick & lowerMask) != 0) {
+                    continue;
+                }
+                if (level == LEVELS - 1) {
+                    cascade(overflow);
+                }
+                cascade(slot(level, digit(currentTick, level)));
+            }
+            drain(slot(0, digit(currentTick, 0)), expired);
+        }
+        return expired;
+    }
+
+    private void place(Entry<T> entry) {
+        if (entry.deadlineTick <= currentTick) {
+            due.add(entry);
+            return;
+        }
+        long diff = entry.deadlineTick ^ currentTick;
+        int level = (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+        if (level >= LEVELS) {
+            overflow.add(entry);
+            return;
+        }
+        slot(level, digit(entry.deadlineTick, level)).add(entry);
+    }
+
+    private void cascade(List<Entry<T>> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> pending = new ArrayList<>(bucket);
+        bucket.clear();
+        for (Entry<T> entry : pending) {
+            if (!entry.cancelled) {
+                place(entry);
+            }
+        }
+    }
+
+    private void drain(List<Entry<T>> bucket, List<T> expired) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        for (Entry<T> entry : bucket) {
+            if (entry.cancelled) {
+                continue;
+            }
+            entriesByKey.remove(entry.key);
+            expired.add(entry.value);
+        }
+        bucket.clear();
+    }
+
+    private List<Entry<T>> slot(int level, int index) {
+        return slots.get(level * SLOTS + index);
+    }
+
+    private static int digit(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+
+    private static final class Entry<T> {
+        private final String key;
+        private final long deadlineTick;
+        private final T value;
+        private boolean cancelled;
+
+        private Entry(String key, long deadlineTick, T value) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-key invalidation stamps for the read-through caches (PublicCapsuleCache, PrincipalCache):
+ * take {@link #stamp()} before reading the source, and cache the result only if
+ * {@link #changedSince} is false for its key. An invalidation of one key never blocks caching of
+ * another.
+ *
+ * Stamps of invalidated keys are kept for {@code retention}; once one is dropped, every stamp
+ * taken before it counts as changed for all keys (the horizon), so a dropped entry can only
+ * cost a cache put, never let a stale read in. Retention is far longer than any read.
+ */
+final class InvalidationStamps {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong horizon = new AtomicLong();
+    private final Cache<String, Long> invalidatedAt;
+
+    InvalidationStamps(long maxKeys, Duration retention) {
+        this.invalidatedAt = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxKeys))
+                .expireAfterWrite(retention)
+                // Synchronous for size and expiry removals, unlike removalListener
+                .evictionListener((String key, Long stamp, RemovalCause cause) -> {
+                    if (stamp != null) {
+                        horizon.accumulateAndGet(stamp, Math::max);
+                    }
+                })
+                .build();
+    }
+
+    long stamp() {
+        return sequence.get();
+    }
+
+    /**
+     * Stamp of the key's last invalidation still retained, 0 if none. Changes only when this key
+     * is invalidated; used in single-flight keys so requests after a write do not join a read
+     * started before it.
+     */
+    long version(String key) {
+        Long stamp = key != null ? invalidatedAt.getIfPresent(key) : null;
+        return stamp != null ? stamp : 0L;
+    }
+
+    boolean changedSince(long stamp, String key) {
+        if (stamp < horizon.get()) {
+            return true;
+        }
+        Long invalidated = invalidatedAt.getIfPresent(key);
+        return invalidated != null && invalidated > stamp;
+    }
+
+    void invalidate(String key) {
+        invalidatedAt.put(key, sequence.incrementAndGet());
+    }
+
+    void invalidateAll() {
+        horizon.accumulateAndGet(sequence.incrementAndGet(), Math::max);
+    }
+}
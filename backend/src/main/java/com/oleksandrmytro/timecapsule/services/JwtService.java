@@ -1,7 +1,7 @@
 package com.oleksandrmytro.timecapsule.services;
 
-import com.oleksandrmytro.timecapsule.responses.LoginResponse;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
@@ -10,18 +10,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
-import java.util.function.Function;
 
 /**
  * Service for JWT token operations.
+ *
+ * Hot paths (filter, STOMP interceptor) call {@link #verify} once per token and read every claim
+ * from the returned {@link VerifiedToken}. The signing key and the parser are built once per
+ * secret version instead of on every parse.
  */
 @Service
 public class JwtService {
@@ -38,21 +39,16 @@ public class JwtService {
     @Value("${security.jwt.secret-version:1}")
     private String secretVersion;
 
-    private static final Logger log = LoggerFactory.getLogger(JwtService.class);
+    // Ключ і парсер для поточних secretKey/secretVersion; перебудовуються лише після ротації
+    private volatile SigningKey signingKey;
 
-    /**
-     * Extract username from JWT token.
-     */
-    public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
+    private record SigningKey(String version, String secret, Key key, JwtParser parser) {}
 
     /**
-     * Extract specific claim from JWT token.
+     * Verifies the signature and expiration once; throws {@code JwtException} for an invalid token.
      */
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+    public VerifiedToken verify(String token) {
+        return new VerifiedToken(extractAllClaims(token));
     }
 
     /**
@@ -122,81 +118,43 @@ public class JwtService {
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey().key(), SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    private String extractTokenType(String token) {
-        return extractClaim(token, claims -> (String) claims.get("token_type"));
-    }
-
-    public String extractKid(String token) {
-        return extractClaim(token, claims -> (String) claims.get("kid"));
-    }
-
-    public boolean isKidMismatched(String token) {
-        String tokenKid = null;
-        try {
-            tokenKid = extractKid(token);
-        } catch (Exception e) {
-            log.warn("Failed to extract kid from token: {}", e.getMessage());
-        }
+    public boolean isKidMismatched(VerifiedToken token) {
+        String tokenKid = token.kid();
         return tokenKid != null && !tokenKid.equals(secretVersion);
     }
 
-    public LoginResponse regenerateIfSecretRotated(String refreshToken, com.oleksandrmytro.timecapsule.models.User user) {
-        if (isKidMismatched(refreshToken)) {
-            log.info("Refresh token secret rotated, issuing new tokens for userId={} email={}", user.getId(), user.getEmail());
-            String access = generateToken(user);
-            String refresh = generateRefreshToken(user);
-            return new LoginResponse(access, getExpirationTime(), refresh, getRefreshExpiration());
-        }
-        return null;
-    }
-
     /**
-     * Validate JWT token.
+     * Validate JWT token: subject matches the user and the token has not expired.
      */
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+    public boolean isTokenValid(VerifiedToken token, UserDetails userDetails) {
+        String username = token.subject();
+        return username != null && username.equals(userDetails.getUsername()) && !token.isExpired();
     }
 
-    public boolean isRefreshTokenValid(String token, UserDetails userDetails) {
-        if (!"refresh".equalsIgnoreCase(extractTokenType(token))) {
-            return false;
-        }
-        return isTokenValid(token, userDetails);
-    }
-
-    /**
-     * Check if JWT token is expired.
-     */
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    /**
-     * Extract expiration date from JWT token.
-     */
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    public boolean isRefreshTokenValid(VerifiedToken token, UserDetails userDetails) {
+        return "refresh".equalsIgnoreCase(token.tokenType()) && isTokenValid(token, userDetails);
     }
 
     /**
      * Extract all claims from JWT token.
      */
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
+        return signingKey().parser()
                 .parseClaimsJws(token)
                 .getBody();
     }
 
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private SigningKey signingKey() {
+        SigningKey current = signingKey;
+        if (current == null || !Objects.equals(current.version(), secretVersion) || !Objects.equals(current.secret(), secretKey)) {
+            Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+            current = new SigningKey(secretVersion, secretKey, key, Jwts.parserBuilder().setSigningKey(key).build());
+            signingKey = current;
+        }
+        return current;
     }
 }
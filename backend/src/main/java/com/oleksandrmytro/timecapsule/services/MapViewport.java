@@ -0,0 +1,168 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map viewport (bbox + zoom or an XYZ tile): GeoJSON polygons for $geoWithin and the Web
+ * Mercator grid used to cluster markers. Grid cells are CELL_PX screen pixels wide at the given
+ * zoom, so they never straddle tile borders.
+ */
+final class MapViewport {
+
+    static final int MAX_ZOOM = 22;
+    static final double MAX_LAT = 85.05112878;
+
+    private static final int CELL_PX = 64;
+    private static final double MAX_POLYGON_SPAN = 90.0;
+    private static final double EDGE_STEP = 10.0;
+
+    private final double west;
+    private final double south;
+    private final double east;
+    private final double north;
+    private final int zoom;
+
+    MapViewport(double west, double south, double east, double north, int zoom) {
+        this.west = west;
+        this.south = Math.max(-MAX_LAT, Math.min(MAX_LAT, south));
+        this.east = east;
+        this.north = Math.max(-MAX_LAT, Math.min(MAX_LAT, north));
+        this.zoom = Math.max(0, Math.min(MAX_ZOOM, zoom));
+    }
+
+    /**
+     * @param bbox "west,south,east,north" in degrees; west > east means the box crosses the antimeridian
+     */
+    static MapViewport parse(String bbox, Integer zoom) {
+        String[] parts = bbox == null ? new String[0] : bbox.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Invalid bbox");
+        }
+        double[] values = new double[4];
+        try {
+            for (int i = 0; i < 4; i++) {
+                values[i] = Double.parseDouble(parts[i].trim());
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid bbox");
+        }
+        if (Math.abs(values[0]) > 180 || Math.abs(values[2]) > 180
+                || Math.abs(values[1]) > 90 || Math.abs(values[3]) > 90 || values[1] >= values[3]) {
+            throw new IllegalArgumentException("Invalid bbox");
+        }
+        return new MapViewport(values[0], values[1], values[2], values[3], zoom != null ? zoom : 0);
+    }
+
+    /**
+     * Bounds of the XYZ tile (256px, Web Mercator).
+     */
+    static MapViewport ofTile(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("Invalid tile");
+        }
+        long tiles = 1L << z;
+        if (x < 0 || y < 0 || x >= tiles || y >= tiles) {
+            throw new IllegalArgumentException("Invalid tile");
+        }
+        return new MapViewport(tileLon(x, tiles), tileLat(y + 1, tiles), tileLon(x + 1, tiles), tileLat(y, tiles), z);
+    }
+
+    /**
+     * XYZ tile (x, y) containing the point at zoom z.
+     */
+    static long[] tileOf(double lon, double lat, int z) {
+        long tiles = 1L << z;
+        return new long[]{clamp((long) Math.floor((lon + 180.0) / 360.0 * tiles), tiles),
+                clamp((long) Math.floor(mercatorY(lat) * tiles), tiles)};
+    }
+
+    int zoom() {
+        return zoom;
+    }
+
+    double west() {
+        return west;
+    }
+
+    double south() {
+        return south;
+    }
+
+    double east() {
+        return east;
+    }
+
+    double north() {
+        return north;
+    }
+
+    /**
+     * Polygons covering the box. 2dsphere edges are geodesics, so the box is split into
+     * chunks of at most 90° longitude and the parallels are densified every 10°.
+     */
+    List<Document> polygons() {
+        List<double[]> ranges = new ArrayList<>();
+        if (west <= east) {
+            ranges.add(new double[]{west, east});
+        } else {
+            ranges.add(new double[]{west, 180.0});
+            ranges.add(new double[]{-180.0, east});
+        }
+
+        List<Document> polygons = new ArrayList<>();
+        for (double[] range : ranges) {
+            for (double from = range[0]; from < range[1]; from += MAX_POLYGON_SPAN) {
+                polygons.add(polygon(from, Math.min(range[1], from + MAX_POLYGON_SPAN)));
+            }
+        }
+        return polygons;
+    }
+
+    /**
+     * Grid cell of the point at the viewport zoom (row-major key).
+     */
+    long cellOf(double lon, double lat) {
+        long cells = cellsPerAxis();
+        long x = clamp((long) Math.floor((lon + 180.0) / 360.0 * cells), cells);
+        long y = clamp((long) Math.floor(mercatorY(lat) * cells), cells);
+        return y * cells + x;
+    }
+
+    private static double mercatorY(double lat) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static double tileLon(long x, long tiles) {
+        return x * 360.0 / tiles - 180.0;
+    }
+
+    private static double tileLat(long y, long tiles) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * y / tiles))));
+    }
+
+    private long cellsPerAxis() {
+        return (256L / CELL_PX) << zoom;
+    }
+
+    private static long clamp(long value, long cells) {
+        return Math.max(0, Math.min(cells - 1, value));
+    }
+
+    private Document polygon(double from, double to) {
+        List<List<Double>> ring = new ArrayList<>();
+        for (double lon = from; lon < to; lon += EDGE_STEP) {
+            ring.add(List.of(lon, south));
+        }
+        ring.add(List.of(to, south));
+        for (double lon = to; lon > from; lon -= EDGE_STEP) {
+            ring.add(List.of(lon, north));
+        }
+        ring.add(List.of(from, north));
+        ring.add(List.of(from, south));
+        return new Document("type", "Polygon").append("coordinates", List.of(ring));
+    }
+}
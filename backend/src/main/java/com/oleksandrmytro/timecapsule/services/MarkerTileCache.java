@@ -0,0 +1,122 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * In-memory LRU cache of public marker tiles (z/x/y). A tile is built on the first request and
+ * kept until a geomarker write touches a point inside it; the TTL only bounds staleness caused
+ * by writes on other replicas and by time-based fields (isLocked).
+ */
+@Component
+public class MarkerTileCache {
+
+    private final ObjectMapper objectMapper;
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final int maxTiles;
+    private final long ttlMillis;
+    private final Map<String, Tile> tiles;
+    // Tiles being built -> token of the latest build; guarded by tiles. invalidatePoint drops the
+    // tokens of its tiles, so a tile built from data read before the write is not cached, while
+    // builds of other tiles are unaffected. Holds only in-flight builds.
+    private final Map<String, Object> building = new HashMap<>();
+
+    public MarkerTileCache(ObjectMapper objectMapper,
+                           @Value("${app.capsules.map-tiles.max-tiles:20000}") int maxTiles,
+                           @Value("${app.capsules.map-tiles.ttl:PT10M}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.maxTiles = Math.max(1, maxTiles);
+        this.ttlMillis = ttl.toMillis();
+        this.tiles = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tile> eldest) {
+                return size() > MarkerTileCache.this.maxTiles;
+            }
+        };
+    }
+
+    public Tile getOrBuild(int z, int x, int y, Supplier<List<Map<String, Object>>> loader) {
+        String key = key(z, x, y);
+        long now = System.currentTimeMillis();
+        Object token = new Object();
+        synchronized (tiles) {
+            Tile cached = tiles.get(key);
+            if (cached != null && cached.expiresAtMillis() > now) {
+                return cached;
+            }
+            building.put(key, token);
+        }
+
+        Tile built;
+        try {
+            built = toTile(loader.get(), now + ttlMillis);
+        } catch (RuntimeException ex) {
+            synchronized (tiles) {
+                building.remove(key, token);
+            }
+            throw ex;
+        }
+        synchronized (tiles) {
+            // Token gone: invalidated during the build. Replaced: a later build will put its own.
+            if (building.remove(key, token)) {
+                tiles.put(key, built);
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Drops every cached tile (all zoom levels) that contains the point.
+     */
+    public void invalidatePoint(double lon, double lat) {
+        synchronized (tiles) {
+            for (int z = 0; z <= MapViewport.MAX_ZOOM; z++) {
+                long[] tile = MapViewport.tileOf(lon, lat, z);
+                String key = key(z, tile[0], tile[1]);
+                tiles.remove(key);
+                building.remove(key);
+            }
+        }
+    }
+
+    private Tile toTile(List<Map<String, Object>> markers, long expiresAtMillis) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(markers);
+            byte[] cbor = cborMapper.writeValueAsBytes(CompactMarkerEncoder.encode(markers));
+            return new Tile(json, etag(json), cbor, etag(cbor), expiresAtMillis);
+        } catch (JsonProcessingException | NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("Failed to encode marker tile", ex);
+        }
+    }
+
+    private static String etag(byte[] body) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+        return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+    }
+
+    private static String key(long z, long x, long y) {
+        return z + "/" + x + "/" + y;
+    }
+
+    /**
+     * @param body JSON array of markers/clusters (same shape as /api/capsules/map?bbox=)
+     * @param etag strong ETag, hash of the body
+     * @param cborBody the same markers as CBOR-encoded CompactMarkersResponse
+     * @param cborEtag strong ETag of the CBOR representation
+     */
+    public record Tile(byte[] body, String etag, byte[] cborBody, String cborEtag, long expiresAtMillis) {
+    }
+}
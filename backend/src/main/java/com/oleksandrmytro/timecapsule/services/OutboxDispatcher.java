@@ -0,0 +1,403 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.events.CapsuleStatusEvent;
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.User;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drains the outbox: claims due rows in batches (claimId + nextAttemptAt pushed by claim-ttl, the
+ * same claim pattern as the unlock engine, so replicas can drain concurrently), delivers them on
+ * worker lanes and deletes each row after delivery. A failed row is retried with exponential
+ * backoff; a row claimed by a replica that died becomes due again after claim-ttl. Delivery is
+ * therefore at-least-once.
+ *
+ * Rows with the same orderKey (type + recipient) are delivered in createdAt order: a row is
+ * claimed only when no earlier row of its key is pending outside the batch (in backoff, claimed
+ * by another drain, or simply not fetched), and rows of one key go to the same lane. When a row
+ * fails, the later rows of its key are held until its retry instead of overtaking it, so chat
+ * pushes keep their order; a row that keeps failing holds its key's later rows back with it.
+ * Lanes have bounded queues and the dispatcher claims no more than they can take: when WS/SMTP
+ * fall behind, rows stay in Mongo instead of piling up in memory.
+ */
+@Component
+public class OutboxDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+    // Delivery order within an orderKey; ObjectIds break ties within one enqueueAll
+    static final Comparator<Document> ROW_ORDER = Comparator
+            .comparing((Document row) -> row.getDate("createdAt"))
+            .thenComparing(row -> row.getObjectId("_id"));
+
+    private final MongoTemplate mongoTemplate;
+    private final CapsuleNotificationService notificationService;
+    private final EmailService emailService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PrincipalLookupService principalLookupService;
+    private final int batchSize;
+    private final Duration claimTtl;
+    private final ThreadPoolExecutor[] lanes;
+    private final ExecutorService poller;
+    private final AtomicBoolean wakePending = new AtomicBoolean();
+    // Rows were held behind a row in flight here: drain again once a delivery completes
+    private final AtomicBoolean heldBehindInFlight = new AtomicBoolean();
+
+    public OutboxDispatcher(MongoTemplate mongoTemplate,
+                            OutboxService outboxService,
+                            CapsuleNotificationService notificationService,
+                            EmailService emailService,
+                            SimpMessagingTemplate messagingTemplate,
+                            PrincipalLookupService principalLookupService,
+                            @Value("${app.outbox.batch-size:100}") int batchSize,
+                            @Value("${app.outbox.claim-ttl:PT1M}") Duration claimTtl,
+                            @Value("${app.outbox.workers:4}") int workers,
+                            @Value("${app.outbox.queue-capacity:1000}") int queueCapacity) {
+        this.mongoTemplate = mongoTemplate;
+        this.notificationService = notificationService;
+        this.emailService = emailService;
+        this.messagingTemplate = messagingTemplate;
+        this.principalLookupService = principalLookupService;
+        this.batchSize = Math.max(1, batchSize);
+        this.claimTtl = claimTtl;
+        this.lanes = new ThreadPoolExecutor[Math.max(1, workers)];
+        int laneCapacity = Math.max(1, queueCapacity / lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "outbox-worker-" + (i + 1);
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity),
+                    runnable -> daemon(runnable, name));
+        }
+        this.poller = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "outbox-poller"));
+        outboxService.onEnqueued(this::wake);
+    }
+
+    @PreDestroy
+    void stop() {
+        poller.shutdown();
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    /**
+     * Safety net for retries, expired claims and rows written by other replicas.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-ms:1000}")
+    public void poll() {
+        wake();
+    }
+
+    void wake() {
+        if (!wakePending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            poller.execute(() -> {
+                wakePending.set(false);
+                try {
+                    drain();
+                } catch (RuntimeException ex) {
+                    log.warn("Outbox drain failed: {}", ex.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            wakePending.set(false);
+        }
+    }
+
+    void drain() {
+        while (true) {
+            int capacity = Integer.MAX_VALUE;
+            for (ThreadPoolExecutor lane : lanes) {
+                capacity = Math.min(capacity, lane.getQueue().remainingCapacity());
+            }
+            if (capacity == 0) {
+                return; // back-pressure: rows wait in the outbox
+            }
+            int limit = Math.min(batchSize, capacity);
+            List<Document> claimed = claim(limit);
+            // orderKey -> retry time of a row of this batch that failed
+            Map<String, Instant> stalled = new ConcurrentHashMap<>();
+            for (Document row : claimed) {
+                try {
+                    laneOf(row).execute(() -> dispatch(row, stalled));
+                } catch (RejectedExecutionException ex) {
+                    return; // stays claimed until claim-ttl, then retried
+                }
+            }
+            if (claimed.size() < limit) {
+                return;
+            }
+        }
+    }
+
+    List<Document> claim(int limit) {
+        Instant now = Instant.now();
+        Query due = new Query(Criteria.where("nextAttemptAt").lte(now))
+                .with(Sort.by(Sort.Direction.ASC, "nextAttemptAt", "createdAt"))
+                .limit(limit);
+        due.fields().include("_id", "orderKey", "createdAt");
+        List<Document> candidates = mongoTemplate.find(due, Document.class, OutboxService.COLLECTION);
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Document> firstPending = firstPending(candidates);
+        List<Document> deliverable = deliverable(candidates, firstPending);
+        holdBack(candidates, deliverable, firstPending, now);
+        if (deliverable.isEmpty()) {
+            return List.of();
+        }
+
+        List<Object> ids = new ArrayList<>(deliverable.size());
+        deliverable.forEach(row -> ids.add(row.get("_id")));
+        String claimId = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(
+                new Query(Criteria.where("_id").in(ids).and("nextAttemptAt").lte(now)),
+                new Update().set("claimId", claimId).set("nextAttemptAt", now.plus(claimTtl)),
+                OutboxService.COLLECTION
+        );
+        Query claimedQuery = new Query(Criteria.where("_id").in(ids).and("claimId").is(claimId))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"));
+        List<Document> claimed = new ArrayList<>(mongoTemplate.find(claimedQuery, Document.class, OutboxService.COLLECTION));
+
+        // Another replica took an earlier row of a key in between: give the later ones back
+        Set<Object> claimedIds = new HashSet<>();
+        claimed.forEach(row -> claimedIds.add(row.get("_id")));
+        List<Object> overtaking = outOfOrder(deliverable, claimedIds);
+        if (!overtaking.isEmpty()) {
+            mongoTemplate.updateMulti(
+                    new Query(Criteria.where("_id").in(overtaking).and("claimId").is(claimId)),
+                    new Update().set("nextAttemptAt", now).unset("claimId"),
+                    OutboxService.COLLECTION);
+            claimed.removeIf(row -> overtaking.contains(row.get("_id")));
+        }
+        return claimed;
+    }
+
+    /**
+     * Earliest pending row outside the batch, per orderKey of the batch.
+     */
+    private Map<String, Document> firstPending(List<Document> candidates) {
+        Set<String> keys = new HashSet<>();
+        List<Object> ids = new ArrayList<>(candidates.size());
+        for (Document row : candidates) {
+            ids.add(row.get("_id"));
+            if (row.getString("orderKey") != null) {
+                keys.add(row.getString("orderKey"));
+            }
+        }
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        Aggregation earliest = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("orderKey").in(keys).and("_id").nin(ids)),
+                Aggregation.sort(Sort.by(Sort.Direction.ASC, "createdAt", "_id")),
+                Aggregation.group("orderKey")
+                        .first("_id").as("rowId")
+                        .first("createdAt").as("createdAt")
+                        .first("nextAttemptAt").as("nextAttemptAt")
+                        .first("claimId").as("claimId"));
+        Map<String, Document> firstPending = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(earliest, OutboxService.COLLECTION, Document.class)) {
+            firstPending.put(row.getString("_id"), new Document("_id", row.get("rowId"))
+                    .append("createdAt", row.get("createdAt"))
+                    .append("nextAttemptAt", row.get("nextAttemptAt"))
+                    .append("claimId", row.get("claimId")));
+        }
+        return firstPending;
+    }
+
+    /**
+     * Candidates with no earlier pending row of their key outside the batch. Rows without an
+     * orderKey are always deliverable.
+     */
+    static List<Document> deliverable(List<Document> candidates, Map<String, Document> firstPending) {
+        List<Document> deliverable = new ArrayList<>(candidates.size());
+        for (Document row : candidates) {
+            Document first = row.getString("orderKey") != null ? firstPending.get(row.getString("orderKey")) : null;
+            if (first == null || ROW_ORDER.compare(row, first) < 0) {
+                deliverable.add(row);
+            }
+        }
+        return deliverable;
+    }
+
+    /**
+     * Claimed ids that would overtake a deliverable row of the same key that was not claimed.
+     */
+    static List<Object> outOfOrder(List<Document> deliverable, Set<Object> claimedIds) {
+        List<Document> ordered = new ArrayList<>(deliverable);
+        ordered.sort(ROW_ORDER);
+        Set<String> broken = new HashSet<>();
+        List<Object> overtaking = new ArrayList<>();
+        for (Document row : ordered) {
+            String key = row.getString("orderKey");
+            if (key == null) {
+                continue;
+            }
+            if (!claimedIds.contains(row.get("_id"))) {
+                broken.add(key);
+            } else if (broken.contains(key)) {
+                overtaking.add(row.get("_id"));
+            }
+        }
+        return overtaking;
+    }
+
+    /**
+     * Held rows of a key whose earliest row waits in backoff move to its retry time, so they do
+     * not fill every batch until then. Rows held behind a row in flight stay due.
+     */
+    private void holdBack(List<Document> candidates, List<Document> deliverable, Map<String, Document> firstPending, Instant now) {
+        if (deliverable.size() == candidates.size()) {
+            return;
+        }
+        Set<Object> deliverableIds = new HashSet<>();
+        deliverable.forEach(row -> deliverableIds.add(row.get("_id")));
+        Map<String, List<Object>> heldByKey = new HashMap<>();
+        for (Document row : candidates) {
+            if (!deliverableIds.contains(row.get("_id"))) {
+                heldByKey.computeIfAbsent(row.getString("orderKey"), key -> new ArrayList<>()).add(row.get("_id"));
+            }
+        }
+        heldByKey.forEach((key, held) -> {
+            Document first = firstPending.get(key);
+            Date retryAt = first.getDate("nextAttemptAt");
+            if (first.get("claimId") != null) {
+                heldBehindInFlight.set(true);
+            } else if (retryAt != null && retryAt.toInstant().isAfter(now)) {
+                mongoTemplate.updateMulti(
+                        new Query(Criteria.where("_id").in(held).and("nextAttemptAt").lte(now)),
+                        new Update().set("nextAttemptAt", retryAt.toInstant()),
+                        OutboxService.COLLECTION);
+            }
+        });
+    }
+
+    void dispatch(Document row, Map<String, Instant> stalled) {
+        Query mine = new Query(Criteria.where("_id").is(row.get("_id")).and("claimId").is(row.getString("claimId")));
+        String key = row.getString("orderKey");
+        Instant heldUntil = key != null ? stalled.get(key) : null;
+        if (heldUntil != null) {
+            // An earlier row of this key failed in this batch: wait for its retry
+            mongoTemplate.updateFirst(mine, new Update().set("nextAttemptAt", heldUntil).unset("claimId"),
+                    OutboxService.COLLECTION);
+            return;
+        }
+        try {
+            deliver(row.getString("type"), row.get("payload", Document.class));
+            mongoTemplate.remove(mine, OutboxService.COLLECTION);
+        } catch (RuntimeException ex) {
+            int attempts = row.getInteger("attempts", 0) + 1;
+            Instant retryAt = Instant.now().plus(retryDelay(attempts));
+            if (key != null) {
+                stalled.put(key, retryAt);
+            }
+            mongoTemplate.updateFirst(mine,
+                    new Update()
+                            .set("attempts", attempts)
+                            .set("nextAttemptAt", retryAt)
+                            .set("lastError", String.valueOf(ex.getMessage()))
+                            .unset("claimId"),
+                    OutboxService.COLLECTION);
+            log.warn("Outbox delivery of {} {} failed (attempt {}): {}",
+                    row.getString("type"), row.get("_id"), attempts, ex.getMessage());
+            return;
+        }
+        if (heldBehindInFlight.compareAndSet(true, false)) {
+            wake();
+        }
+    }
+
+    static Duration retryDelay(int attempts) {
+        return Duration.ofSeconds(Math.min(MAX_RETRY_DELAY.toSeconds(), 1L << Math.min(attempts, 16)));
+    }
+
+    private void deliver(String type, Document payload) {
+        switch (type) {
+            case OutboxService.TYPE_CAPSULE_STATUS -> notificationService.sendStatus(
+                    payload.getString("userId"),
+                    new CapsuleStatusEvent(
+                            payload.getString("capsuleId"),
+                            payload.getString("status"),
+                            payload.getBoolean("isLocked"),
+                            instant(payload.getDate("unlockAt")),
+                            instant(payload.getDate("openedAt")),
+                            payload.getList("tags", String.class)
+                    ));
+            case OutboxService.TYPE_CAPSULE_OPENED_EMAIL -> deliverCapsuleOpened(payload);
+            case OutboxService.TYPE_CHAT_MESSAGE -> messagingTemplate.convertAndSendToUser(
+                    payload.getString("userId"), "/queue/chat", payload.get("message", Document.class));
+            default -> log.warn("Dropping outbox row of unknown type {}", type);
+        }
+    }
+
+    /**
+     * users is sharded on email, so the owner is loaded through PrincipalLookupService (principal
+     * cache, then _id + routed email) rather than a broadcast findById per row.
+     */
+    private void deliverCapsuleOpened(Document payload) {
+        User owner;
+        try {
+            owner = principalLookupService.load(payload.getString("ownerId"), null);
+        } catch (UsernameNotFoundException ex) {
+            // Owner deleted since the capsule was opened: nobody to email
+            return;
+        }
+        Capsule capsule = new Capsule();
+        capsule.setId(payload.getString("capsuleId"));
+        capsule.setTitle(payload.getString("title"));
+        emailService.deliverCapsuleOpened(owner, capsule);
+    }
+
+    private ThreadPoolExecutor laneOf(Document row) {
+        Object key = row.get("orderKey") != null ? row.get("orderKey") : row.get("_id");
+        return lanes[Math.floorMod(key.hashCode(), lanes.length)];
+    }
+
+    private static Instant instant(Date date) {
+        return date != null ? date.toInstant() : null;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,139 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.TransactionOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Transactional outbox for side effects of capsule and chat writes (WS pushes, emails).
+ * A caller runs its state change and the enqueue in {@link #inTransaction}, so either both are
+ * stored or neither; {@link OutboxDispatcher} delivers the rows at least once and deletes them.
+ * Transactions are primary-read (the app reads from secondaries elsewhere); with
+ * app.outbox.transactional=false (standalone mongod) the rows are written right after the change.
+ */
+@Service
+public class OutboxService {
+    private static final Logger log = LoggerFactory.getLogger(OutboxService.class);
+
+    static final String COLLECTION = "outbox";
+
+    public static final String TYPE_CAPSULE_STATUS = "capsule.status";
+    public static final String TYPE_CAPSULE_OPENED_EMAIL = "capsule.opened-email";
+    public static final String TYPE_CHAT_MESSAGE = "chat.message";
+
+    private final MongoTemplate mongoTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private volatile Runnable onEnqueued = () -> { };
+    private volatile boolean collectionEnsured;
+
+    public OutboxService(MongoTemplate mongoTemplate,
+                         @Value("${app.outbox.transactional:true}") boolean transactional) {
+        this.mongoTemplate = mongoTemplate;
+        this.transactionTemplate = transactional
+                ? new TransactionTemplate(new MongoTransactionManager(mongoTemplate.getMongoDatabaseFactory(),
+                        TransactionOptions.builder().readPreference(ReadPreference.primary()).build()))
+                : null;
+    }
+
+    /**
+     * Runs the state change and its enqueue calls as one Mongo transaction.
+     */
+    public <T> T inTransaction(Supplier<T> work) {
+        if (transactionTemplate == null) {
+            return work.get();
+        }
+        ensureCollection();
+        return transactionTemplate.execute(status -> work.get());
+    }
+
+    public void enqueue(String type, Document payload) {
+        enqueueAll(type, List.of(payload));
+    }
+
+    /**
+     * One insertMany for all payloads of a type.
+     */
+    public void enqueueAll(String type, List<Document> payloads) {
+        if (payloads == null || payloads.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<Document> rows = new ArrayList<>(payloads.size());
+        for (Document payload : payloads) {
+            rows.add(new Document("_id", new ObjectId())
+                    .append("type", type)
+                    .append("payload", payload)
+                    .append("orderKey", orderKeyOf(type, payload))
+                    .append("attempts", 0)
+                    .append("nextAttemptAt", now)
+                    .append("createdAt", now));
+        }
+        mongoTemplate.insert(rows, COLLECTION);
+        wakeDispatcher();
+    }
+
+    /**
+     * Rows with the same key are delivered in createdAt order: type plus recipient (userId, or
+     * ownerId for emails). Null for rows without a recipient, which have no order.
+     */
+    static String orderKeyOf(String type, Document payload) {
+        if (payload == null) {
+            return null;
+        }
+        Object recipient = payload.get("userId") != null ? payload.get("userId") : payload.get("ownerId");
+        return recipient != null ? type + ":" + recipient : null;
+    }
+
+    /**
+     * Called by the dispatcher: new rows are drained right away instead of on the next poll.
+     */
+    void onEnqueued(Runnable callback) {
+        this.onEnqueued = callback;
+    }
+
+    /**
+     * A sharded cluster cannot create the collection implicitly inside a cross-shard transaction.
+     */
+    private void ensureCollection() {
+        if (collectionEnsured) {
+            return;
+        }
+        try {
+            if (!mongoTemplate.collectionExists(COLLECTION)) {
+                mongoTemplate.createCollection(COLLECTION);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Failed to ensure collection {}: {}", COLLECTION, ex.getMessage());
+        }
+        collectionEnsured = true;
+    }
+
+    private void wakeDispatcher() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Rows are visible to the dispatcher only after commit.
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    onEnqueued.run();
+                }
+            });
+        } else {
+            onEnqueued.run();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, short-TTL cache of authenticated principals: userId -> snapshot of the users
+ * document as read from Mongo. The snapshot is never handed out; every hit is converted into a
+ * fresh User, so role, enabled, blockedUntil and deletedAt are still checked per request by the
+ * filter, against the current time.
+ *
+ * Invalidation: writes on this replica (AdminService, UserService) invalidate by id right away;
+ * a change stream on users invalidates the ids changed anywhere else, so a block or delete is
+ * enforced on every replica within the stream latency. If the stream fails the whole cache is
+ * dropped (events may have been missed) and the TTL bounds staleness until it is back.
+ * Listeners registered with {@link #onInvalidate} hear every id invalidated either way
+ * (StompSessionSweeper re-checks the user's open STOMP sessions).
+ */
+@Component
+public class PrincipalCache {
+    private static final Logger log = LoggerFactory.getLogger(PrincipalCache.class);
+
+    private static final String USERS = "users";
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration STAMP_RETENTION = Duration.ofMinutes(5);
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, Document> snapshots;
+    private final boolean watchChanges;
+    // Per-id: a snapshot read before an invalidation of its user is not cached.
+    private final InvalidationStamps stamps;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private Thread watcher;
+
+    public PrincipalCache(MongoTemplate mongoTemplate,
+                          MeterRegistry registry,
+                          @Value("${app.auth.principal-cache.max-size:100000}") long maxSize,
+                          @Value("${app.auth.principal-cache.ttl:PT30S}") Duration ttl,
+                          @Value("${app.auth.principal-cache.watch-changes:true}") boolean watchChanges) {
+        this.mongoTemplate = mongoTemplate;
+        this.watchChanges = watchChanges;
+        this.stamps = new InvalidationStamps(Math.max(1, maxSize), STAMP_RETENTION);
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, maxSize))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, snapshots, "auth.principals");
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!watchChanges) {
+            return;
+        }
+        running = true;
+        watcher = new Thread(this::watch, "principal-cache-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    public Document get(String userId) {
+        return userId != null ? snapshots.getIfPresent(userId) : null;
+    }
+
+    /**
+     * Token to pass to {@link #offer} for a snapshot read after this call.
+     */
+    public long stamp() {
+        return stamps.stamp();
+    }
+
+    /**
+     * Caches the snapshot unless the user was invalidated since {@code stamp}.
+     */
+    public void offer(long stamp, String userId, Document snapshot) {
+        if (userId == null || snapshot == null || stamps.changedSince(stamp, userId)) {
+            return;
+        }
+        snapshots.put(userId, snapshot);
+        // Invalidation between the check and the put: do not keep what might be stale.
+        if (stamps.changedSince(stamp, userId)) {
+            snapshots.invalidate(userId);
+        }
+    }
+
+    public void invalidate(String userId) {
+        if (userId != null) {
+            stamps.invalidate(userId);
+            snapshots.invalidate(userId);
+            notifyListeners(userId);
+        }
+    }
+
+    public void invalidateAll(Collection<String> userIds) {
+        if (userIds != null) {
+            userIds.forEach(this::invalidate);
+        }
+    }
+
+    public void invalidateAll() {
+        stamps.invalidateAll();
+        snapshots.invalidateAll();
+    }
+
+    public long size() {
+        return snapshots.estimatedSize();
+    }
+
+    /**
+     * Called with the id after it is dropped from the cache, on the invalidating thread
+     * (request thread or the change-stream watcher). Not called by {@link #invalidateAll()}.
+     */
+    public void onInvalidate(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(String userId) {
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(userId);
+            } catch (RuntimeException ex) {
+                log.warn("Principal invalidation listener failed for {}: {}", userId, ex.getMessage());
+            }
+        }
+    }
+
+    private void watch() {
+        long retryMillis = 1000;
+        while (running) {
+            var stream = mongoTemplate.getCollection(USERS)
+                    .watch(List.of(Aggregates.match(Filters.in("operationType", "update", "replace", "delete"))))
+                    .maxAwaitTime(1, TimeUnit.SECONDS);
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+                // Changes between the last event seen and the new stream are unknown.
+                invalidateAll();
+                retryMillis = 1000;
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) {
+                        invalidate(userIdOf(change.getDocumentKey()));
+                    }
+                }
+            } catch (RuntimeException ex) {
+                if (!running) {
+                    return;
+                }
+                invalidateAll();
+                log.warn("Principal cache change stream failed, retrying in {} ms: {}", retryMillis, ex.getMessage());
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryMillis = Math.min(MAX_RETRY_DELAY.toMillis(), retryMillis * 2);
+            }
+        }
+    }
+
+    private static String userIdOf(BsonDocument documentKey) {
+        if (documentKey == null) {
+            return null;
+        }
+        BsonValue id = documentKey.get("_id");
+        if (id == null) {
+            return null;
+        }
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.isString() ? id.asString().getValue() : null;
+    }
+}
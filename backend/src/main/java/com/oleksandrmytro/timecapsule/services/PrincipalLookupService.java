@@ -0,0 +1,117 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.oleksandrmytro.timecapsule.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Loads the authenticated principal on every HTTP request and STOMP frame with a single-shard
+ * query. users is sharded on email, so findById is a broadcast; here the filter is _id + email.
+ *
+ * The email comes from the token's email claim, or from a small userId -> email routing cache
+ * for tokens without it. When the hint is stale (email changed after the token was issued) the
+ * user is found by one broadcast findById and the route is refreshed.
+ *
+ * Loads by userId go through {@link PrincipalCache}: a hit costs no query at all, and each call
+ * still returns a fresh User materialized from the cached snapshot.
+ */
+@Service
+public class PrincipalLookupService {
+
+    private static final String USERS = "users";
+
+    private final MongoTemplate mongoTemplate;
+    private final PrincipalCache principalCache;
+    private final Cache<String, String> emailsById;
+
+    public PrincipalLookupService(MongoTemplate mongoTemplate,
+                                  PrincipalCache principalCache,
+                                  MeterRegistry registry,
+                                  @Value("${app.auth.principal-routes.cache-size:100000}") long cacheSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.principalCache = principalCache;
+        this.emailsById = Caffeine.newBuilder()
+                .maximumSize(Math.max(0, cacheSize))
+                .recordStats()
+                .build();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, emailsById, "auth.principal-routes");
+        }
+    }
+
+    /**
+     * @param subject JWT subject: userId, or email in tokens issued before the subject switch
+     * @param emailHint email claim of the token (may be null)
+     */
+    public User load(String subject, String emailHint) {
+        if (!StringUtils.hasText(subject)) {
+            throw new UsernameNotFoundException("User not found: " + subject);
+        }
+        if (!ObjectId.isValid(subject)) {
+            // Старі токени (subject = email) і логін за email — запит уже за shard key
+            return findOne(Criteria.where("email").is(subject), subject);
+        }
+
+        Document cached = principalCache.get(subject);
+        if (cached != null) {
+            return toUser(cached);
+        }
+        // Знімок до початку читання: інвалідація під час запиту не дасть закешувати старі дані
+        long stamp = principalCache.stamp();
+        Document snapshot = loadById(subject, emailHint);
+        principalCache.offer(stamp, subject, snapshot);
+        return toUser(snapshot);
+    }
+
+    private Document loadById(String subject, String emailHint) {
+        ObjectId id = new ObjectId(subject);
+        String email = StringUtils.hasText(emailHint) ? emailHint : emailsById.getIfPresent(subject);
+        if (email != null) {
+            Document user = mongoTemplate.findOne(new Query(Criteria.where("_id").is(id).and("email").is(email)), Document.class, USERS);
+            if (user != null) {
+                emailsById.put(subject, email);
+                return user;
+            }
+        }
+
+        // Маршрут невідомий або застарів: один broadcast і оновлення маршруту
+        Document user = mongoTemplate.findOne(new Query(Criteria.where("_id").is(id)), Document.class, USERS);
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found: " + subject);
+        }
+        if (StringUtils.hasText(user.getString("email"))) {
+            emailsById.put(subject, user.getString("email"));
+        }
+        return user;
+    }
+
+    /**
+     * For {@code UserDetailsService}: login (email) and callers that only know the userId.
+     */
+    public User loadUserByUsername(String idOrEmail) {
+        return load(idOrEmail, null);
+    }
+
+    private User findOne(Criteria criteria, String subject) {
+        User user = mongoTemplate.findOne(new Query(criteria), User.class);
+        if (user == null) {
+            throw new UsernameNotFoundException("User not found: " + subject);
+        }
+        return user;
+    }
+
+    private User toUser(Document snapshot) {
+        return mongoTemplate.getConverter().read(User.class, snapshot);
+    }
+}
@@ -0,0 +1,234 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleVisibility;
+import com.oleksandrmytro.timecapsule.responses.CapsuleResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of rendered public, non-draft CapsuleResponses for getAccessible: every
+ * viewer gets the same rendering of such a capsule, so a hit skips the admin check, the capsule
+ * read and geo resolution. Bounded by max-size with Caffeine's W-TinyLFU eviction.
+ *
+ * Entries carry the capsule's updatedAt as version; a put never replaces a newer version. Writes
+ * on this replica invalidate by id, a change stream on capsules invalidates the ids changed on
+ * other replicas, and a still-locked capsule expires at its unlockAt. If the stream fails the
+ * whole cache is dropped and the TTL bounds staleness until it is back. A response rendered from
+ * data read before an invalidation of its id is not cached (per-id stamps, InvalidationStamps).
+ * Metrics: cache.* tagged cache=capsules.public.
+ */
+@Component
+public class PublicCapsuleCache {
+    private static final Logger log = LoggerFactory.getLogger(PublicCapsuleCache.class);
+
+    private static final String CAPSULES = "capsules";
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration STAMP_RETENTION = Duration.ofMinutes(5);
+
+    private final MongoTemplate mongoTemplate;
+    private final Cache<String, Entry> cache;
+    private final Duration ttl;
+    private final boolean watchChanges;
+    private final InvalidationStamps stamps;
+    private volatile boolean running;
+    private Thread watcher;
+
+    public PublicCapsuleCache(MongoTemplate mongoTemplate,
+                              MeterRegistry registry,
+                              @Value("${app.capsules.public-cache.max-size:10000}") long maxSize,
+                              @Value("${app.capsules.public-cache.ttl:PT1M}") Duration ttl,
+                              @Value("${app.capsules.public-cache.watch-changes:true}") boolean watchChanges) {
+        this.mongoTemplate = mongoTemplate;
+        this.ttl = ttl;
+        this.watchChanges = watchChanges;
+        this.stamps = new InvalidationStamps(Math.max(1, maxSize) * 10, STAMP_RETENTION);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxSize))
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return lifetimeNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return lifetimeNanos(entry);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, cache, "capsules.public");
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!watchChanges) {
+            return;
+        }
+        running = true;
+        watcher = new Thread(this::watch, "public-capsule-cache-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    public CapsuleResponse get(String capsuleId) {
+        Entry entry = capsuleId != null ? cache.getIfPresent(capsuleId) : null;
+        return entry != null ? entry.response() : null;
+    }
+
+    /**
+     * Token to pass to {@link #offer} for a response rendered from data read after this call.
+     */
+    public long stamp() {
+        return stamps.stamp();
+    }
+
+    /**
+     * Changes only when this capsule is invalidated: part of the single-flight key, so a miss
+     * after a write does not join a read started before it, while misses of other capsules
+     * keep sharing their flights.
+     */
+    public long version(String capsuleId) {
+        return stamps.version(capsuleId);
+    }
+
+    /**
+     * Caches the response if it is public and its capsule was not invalidated since {@code stamp}.
+     * @return the response, for chaining in return statements
+     */
+    public CapsuleResponse offer(long stamp, CapsuleResponse response) {
+        if (response == null || response.getId() == null || !isPublic(response)
+                || stamps.changedSince(stamp, response.getId())) {
+            return response;
+        }
+        Entry fresh = new Entry(response, response.getUpdatedAt());
+        cache.asMap().merge(response.getId(), fresh, (cached, offered) -> isNewer(cached, offered) ? cached : offered);
+        // Invalidation between the check and the merge: do not keep what might be stale.
+        if (stamps.changedSince(stamp, response.getId())) {
+            cache.invalidate(response.getId());
+        }
+        return response;
+    }
+
+    public void invalidate(String capsuleId) {
+        if (capsuleId != null) {
+            stamps.invalidate(capsuleId);
+            cache.invalidate(capsuleId);
+        }
+    }
+
+    public void invalidateAll(Collection<String> capsuleIds) {
+        if (capsuleIds != null) {
+            capsuleIds.forEach(this::invalidate);
+        }
+    }
+
+    public void invalidateAll() {
+        stamps.invalidateAll();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private void watch() {
+        long retryMillis = 1000;
+        while (running) {
+            var stream = mongoTemplate.getCollection(CAPSULES)
+                    .watch(List.of(Aggregates.match(Filters.in("operationType", "update", "replace", "delete"))))
+                    .maxAwaitTime(1, TimeUnit.SECONDS);
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+                // Changes between the last event seen and the new stream are unknown.
+                invalidateAll();
+                retryMillis = 1000;
+                while (running) {
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) {
+                        invalidate(capsuleIdOf(change.getDocumentKey()));
+                    }
+                }
+            } catch (RuntimeException ex) {
+                if (!running) {
+                    return;
+                }
+                invalidateAll();
+                log.warn("Public capsule cache change stream failed, retrying in {} ms: {}", retryMillis, ex.getMessage());
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryMillis = Math.min(MAX_RETRY_DELAY.toMillis(), retryMillis * 2);
+            }
+        }
+    }
+
+    private static String capsuleIdOf(BsonDocument documentKey) {
+        BsonValue id = documentKey != null ? documentKey.get("_id") : null;
+        return id != null && id.isObjectId() ? id.asObjectId().getValue().toHexString() : null;
+    }
+
+    private long lifetimeNanos(Entry entry) {
+        CapsuleResponse response = entry.response();
+        if (Boolean.TRUE.equals(response.getIsLocked()) && response.getUnlockAt() != null) {
+            Duration untilUnlock = Duration.between(Instant.now(), response.getUnlockAt());
+            if (untilUnlock.compareTo(ttl) < 0) {
+                return Math.max(0, untilUnlock.toNanos());
+            }
+        }
+        return ttl.toNanos();
+    }
+
+    private static boolean isPublic(CapsuleResponse response) {
+        return CapsuleVisibility.PUBLIC.equalsValue(response.getVisibility())
+                && !CapsuleStatus.DRAFT.equalsValue(response.getStatus());
+    }
+
+    private static boolean isNewer(Entry cached, Entry offered) {
+        return cached.version() != null && (offered.version() == null || cached.version().isAfter(offered.version()));
+    }
+
+    private record Entry(CapsuleResponse response, Instant version) {
+    }
+}
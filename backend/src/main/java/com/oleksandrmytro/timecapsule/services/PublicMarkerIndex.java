@@ -0,0 +1,487 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory grid index of public, non-draft geomarkers (one point per capsule). Coordinates live
+ * in parallel double arrays addressed by slot; every grid cell (cellDegrees x cellDegrees) keeps
+ * the slots inside it. CapsuleService updates the index next to every geomarker write; the full
+ * rebuild from Mongo runs at startup and periodically to pick up writes made by other replicas.
+ */
+@Component
+public class PublicMarkerIndex {
+    private static final Logger log = LoggerFactory.getLogger(PublicMarkerIndex.class);
+    // Radius MongoDB uses for $geoNear on 2dsphere, so index and Mongo distances agree.
+    private static final double EARTH_RADIUS_METERS = 6_378_100.0;
+
+    private final MongoTemplate mongoTemplate;
+    private final double cellDegrees;
+    private final int columns;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private double[] lons = new double[0];
+    private double[] lats = new double[0];
+    private ObjectId[] capsuleIds = new ObjectId[0];
+    private ObjectId[] ownerIds = new ObjectId[0];
+    private long[] cellOfSlot = new long[0];
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+    private int slotCount;
+    private Map<ObjectId, Integer> slotByCapsuleId = new HashMap<>();
+    private Map<Long, IntBag> cells = new HashMap<>();
+    // Writes made while a rebuild reads Mongo; replayed onto the fresh index before the swap.
+    private List<Consumer<PublicMarkerIndex>> writesDuringRebuild;
+    private volatile boolean ready;
+
+    public PublicMarkerIndex(MongoTemplate mongoTemplate,
+                             @Value("${app.capsules.marker-index.cell-degrees:0.1}") double cellDegrees) {
+        this.mongoTemplate = mongoTemplate;
+        // Snapped so that the grid tiles the globe exactly and columns wrap at the antimeridian.
+        int rows = (int) Math.round(180.0 / (cellDegrees > 0 && cellDegrees <= 90 ? cellDegrees : 0.1));
+        this.cellDegrees = 180.0 / rows;
+        this.columns = 2 * rows;
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            rebuild();
+        } catch (RuntimeException ex) {
+            // Map queries fall back to $geoWithin until the next scheduled rebuild succeeds.
+            log.warn("Failed to build public marker index: {}", ex.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.capsules.marker-index.rebuild-ms:300000}",
+            initialDelayString = "${app.capsules.marker-index.rebuild-ms:300000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (RuntimeException ex) {
+            log.warn("Failed to rebuild public marker index: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Reloads public markers of public, non-draft capsules; the marker referenced by
+     * capsule.geoMarkerId wins when a capsule has several.
+     */
+    public int rebuild() {
+        List<AggregationOperation> stages = List.of(
+                context -> new Document("$match", new Document("deletedAt", null).append("visibility", "public")),
+                context -> new Document("$lookup", new Document("from", "capsules")
+                        .append("localField", "capsuleId")
+                        .append("foreignField", "_id")
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("deletedAt", null)
+                                        .append("visibility", "public")
+                                        .append("status", new Document("$ne", "draft"))),
+                                new Document("$project", new Document("ownerId", 1).append("geoMarkerId", 1))
+                        ))
+                        .append("as", "capsule")),
+                context -> new Document("$unwind", "$capsule"),
+                context -> new Document("$project", new Document("location", 1).append("capsule", 1))
+        );
+
+        lock.writeLock().lock();
+        try {
+            writesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        PublicMarkerIndex fresh = new PublicMarkerIndex(mongoTemplate, cellDegrees);
+        Map<ObjectId, Boolean> referencedByCapsuleId = new HashMap<>();
+        try {
+            for (Document row : mongoTemplate.aggregate(Aggregation.newAggregation(stages), "geomarkers", Document.class)) {
+                Document capsule = row.get("capsule", Document.class);
+                double[] point = coordinates(row.get("location"));
+                ObjectId capsuleId = capsule.getObjectId("_id");
+                if (point == null || capsuleId == null) {
+                    continue;
+                }
+                boolean referenced = row.getObjectId("_id").equals(capsule.getObjectId("geoMarkerId"));
+                if (Boolean.TRUE.equals(referencedByCapsuleId.get(capsuleId)) && !referenced) {
+                    continue;
+                }
+                referencedByCapsuleId.put(capsuleId, referenced);
+                fresh.putUnlocked(capsuleId, capsule.getObjectId("ownerId"), point[0], point[1]);
+            }
+        } catch (RuntimeException ex) {
+            lock.writeLock().lock();
+            try {
+                writesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw ex;
+        }
+
+        lock.writeLock().lock();
+        try {
+            writesDuringRebuild.forEach(write -> write.accept(fresh));
+            writesDuringRebuild = null;
+            lons = fresh.lons;
+            lats = fresh.lats;
+            capsuleIds = fresh.capsuleIds;
+            ownerIds = fresh.ownerIds;
+            cellOfSlot = fresh.cellOfSlot;
+            freeSlots = fresh.freeSlots;
+            freeCount = fresh.freeCount;
+            slotCount = fresh.slotCount;
+            slotByCapsuleId = fresh.slotByCapsuleId;
+            cells = fresh.cells;
+            ready = true;
+            return slotByCapsuleId.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * True once the first rebuild finished; until then callers should query Mongo.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotByCapsuleId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(ObjectId capsuleId, ObjectId ownerId, double lon, double lat) {
+        lock.writeLock().lock();
+        try {
+            putUnlocked(capsuleId, ownerId, lon, lat);
+            if (writesDuringRebuild != null) {
+                writesDuringRebuild.add(index -> index.putUnlocked(capsuleId, ownerId, lon, lat));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(ObjectId capsuleId) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(capsuleId);
+            if (writesDuringRebuild != null) {
+                writesDuringRebuild.add(index -> index.removeUnlocked(capsuleId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Markers inside the box. west > east means the box crosses the antimeridian.
+     */
+    public List<Hit> withinBox(double west, double south, double east, double north, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        int max = limit > 0 ? limit : Integer.MAX_VALUE;
+        lock.readLock().lock();
+        try {
+            int firstRow = row(south);
+            int lastRow = row(north);
+            int firstColumn = column(west);
+            int lastColumn = column(east);
+            int columnSpan = firstColumn <= lastColumn && west <= east
+                    ? lastColumn - firstColumn + 1
+                    : columns - firstColumn + lastColumn + 1;
+            long boxCells = (long) columnSpan * (lastRow - firstRow + 1);
+
+            if (boxCells > cells.size()) {
+                // Wide boxes: walking the occupied cells is cheaper than walking the empty ones.
+                for (IntBag bag : cells.values()) {
+                    if (collect(bag, west, south, east, north, hits, max)) {
+                        return hits;
+                    }
+                }
+                return hits;
+            }
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int i = 0; i < columnSpan; i++) {
+                    IntBag bag = cells.get(cellKey(row, (firstColumn + i) % columns));
+                    if (bag != null && collect(bag, west, south, east, north, hits, max)) {
+                        return hits;
+                    }
+                }
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to k markers closest to the point (great-circle distance), nearest first.
+     * @param maxDistanceMeters search radius, or <= 0 for unbounded
+     */
+    public List<Hit> nearest(double lon, double lat, int k, double maxDistanceMeters) {
+        if (k <= 0) {
+            return List.of();
+        }
+        double radius = maxDistanceMeters > 0 ? maxDistanceMeters : Double.MAX_VALUE;
+        // Max-heap of the current k best (slot, distance).
+        PriorityQueue<double[]> best = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(b[1], a[1]));
+        lock.readLock().lock();
+        try {
+            if (slotByCapsuleId.isEmpty()) {
+                return List.of();
+            }
+            int centerRow = row(lat);
+            int centerColumn = column(lon);
+            int rows = columns / 2;
+            int maxRing = Math.max(rows, columns / 2 + 1);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                double bound = ringLowerBoundMeters(lon, lat, centerRow, centerColumn, ring);
+                double worst = best.size() == k ? best.peek()[1] : radius;
+                if (bound > Math.min(worst, radius)) {
+                    break;
+                }
+                visitRing(centerRow, centerColumn, ring, rows, slot -> {
+                    double distance = distanceMeters(lon, lat, lons[slot], lats[slot]);
+                    if (distance > radius) {
+                        return;
+                    }
+                    if (best.size() < k) {
+                        best.add(new double[]{slot, distance});
+                    } else if (distance < best.peek()[1]) {
+                        best.poll();
+                        best.add(new double[]{slot, distance});
+                    }
+                });
+            }
+
+            Hit[] ordered = new Hit[best.size()];
+            for (int i = ordered.length - 1; i >= 0; i--) {
+                double[] entry = best.poll();
+                int slot = (int) entry[0];
+                ordered[i] = new Hit(capsuleIds[slot], ownerIds[slot], lons[slot], lats[slot], entry[1]);
+            }
+            return Arrays.asList(ordered);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static double distanceMeters(double lon1, double lat1, double lon2, double lat2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    private void putUnlocked(ObjectId capsuleId, ObjectId ownerId, double lon, double lat) {
+        Integer existing = slotByCapsuleId.get(capsuleId);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+            detach(slot);
+        } else if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == lons.length) {
+                int capacity = Math.max(64, lons.length * 2);
+                lons = Arrays.copyOf(lons, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                capsuleIds = Arrays.copyOf(capsuleIds, capacity);
+                ownerIds = Arrays.copyOf(ownerIds, capacity);
+                cellOfSlot = Arrays.copyOf(cellOfSlot, capacity);
+            }
+            slot = slotCount++;
+        }
+        long cell = cellKey(row(lat), column(lon));
+        lons[slot] = lon;
+        lats[slot] = lat;
+        capsuleIds[slot] = capsuleId;
+        ownerIds[slot] = ownerId;
+        cellOfSlot[slot] = cell;
+        slotByCapsuleId.put(capsuleId, slot);
+        cells.computeIfAbsent(cell, key -> new IntBag()).add(slot);
+    }
+
+    private void removeUnlocked(ObjectId capsuleId) {
+        Integer slot = slotByCapsuleId.remove(capsuleId);
+        if (slot == null) {
+            return;
+        }
+        detach(slot);
+        capsuleIds[slot] = null;
+        ownerIds[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeSlots.length * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void detach(int slot) {
+        IntBag bag = cells.get(cellOfSlot[slot]);
+        if (bag != null && bag.remove(slot) && bag.size == 0) {
+            cells.remove(cellOfSlot[slot]);
+        }
+    }
+
+    private boolean collect(IntBag bag, double west, double south, double east, double north, List<Hit> hits, int max) {
+        for (int i = 0; i < bag.size; i++) {
+            int slot = bag.items[i];
+            double lon = lons[slot];
+            double lat = lats[slot];
+            boolean inLon = west <= east ? lon >= west && lon <= east : lon >= west || lon <= east;
+            if (inLon && lat >= south && lat <= north) {
+                hits.add(new Hit(capsuleIds[slot], ownerIds[slot], lon, lat, 0));
+                if (hits.size() >= max) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cells at Chebyshev distance exactly ring from the center; columns wrap around the antimeridian.
+     */
+    private void visitRing(int centerRow, int centerColumn, int ring, int rows, SlotVisitor visitor) {
+        boolean allColumns = 2 * ring + 1 >= columns;
+        for (int row = Math.max(0, centerRow - ring); row <= Math.min(rows - 1, centerRow + ring); row++) {
+            if (Math.abs(row - centerRow) == ring) {
+                if (allColumns) {
+                    for (int column = 0; column < columns; column++) {
+                        visitCell(row, column, visitor);
+                    }
+                } else {
+                    for (int column = centerColumn - ring; column <= centerColumn + ring; column++) {
+                        visitCell(row, column, visitor);
+                    }
+                }
+            } else if (2 * ring < columns) {
+                visitCell(row, centerColumn - ring, visitor);
+                if (ring > 0) {
+                    visitCell(row, centerColumn + ring, visitor);
+                }
+            } else if (2 * ring == columns) {
+                visitCell(row, centerColumn + ring, visitor);
+            }
+        }
+    }
+
+    private void visitCell(int row, int column, SlotVisitor visitor) {
+        IntBag bag = cells.get(cellKey(row, Math.floorMod(column, columns)));
+        if (bag == null) {
+            return;
+        }
+        for (int i = 0; i < bag.size; i++) {
+            visitor.visit(bag.items[i]);
+        }
+    }
+
+    /**
+     * Lower bound of the distance from the point to anything outside rings 0..ring-1:
+     * the nearest edge of the box those rings cover (parallels along the meridian,
+     * meridians along the great circle).
+     */
+    private double ringLowerBoundMeters(double lon, double lat, int centerRow, int centerColumn, int ring) {
+        if (ring == 0) {
+            return 0;
+        }
+        double south = (centerRow - ring + 1) * cellDegrees - 90.0;
+        double north = (centerRow + ring) * cellDegrees - 90.0;
+        double bound = Double.MAX_VALUE;
+        if (south > -90.0) {
+            bound = Math.min(bound, Math.toRadians(lat - south) * EARTH_RADIUS_METERS);
+        }
+        if (north < 90.0) {
+            bound = Math.min(bound, Math.toRadians(north - lat) * EARTH_RADIUS_METERS);
+        }
+        if (2 * ring - 1 < columns) {
+            double west = (centerColumn - ring + 1) * cellDegrees - 180.0;
+            double east = (centerColumn + ring) * cellDegrees - 180.0;
+            double dLon = Math.min(lon - west, east - lon);
+            double toMeridian = dLon >= 90.0
+                    ? Math.toRadians(90.0 - Math.abs(lat))
+                    : Math.asin(Math.cos(Math.toRadians(lat)) * Math.sin(Math.toRadians(dLon)));
+            bound = Math.min(bound, toMeridian * EARTH_RADIUS_METERS);
+        }
+        return bound == Double.MAX_VALUE ? Double.MAX_VALUE : Math.max(0, bound);
+    }
+
+    private int row(double lat) {
+        int rows = columns / 2;
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90.0) / cellDegrees)));
+    }
+
+    private int column(double lon) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180.0) / cellDegrees)));
+    }
+
+    private long cellKey(int row, int column) {
+        return (long) row * columns + column;
+    }
+
+    private static double[] coordinates(Object location) {
+        if (!(location instanceof Document point) || !(point.get("coordinates") instanceof List<?> coordinates)
+                || coordinates.size() < 2
+                || !(coordinates.get(0) instanceof Number lon) || !(coordinates.get(1) instanceof Number lat)) {
+            return null;
+        }
+        return new double[]{lon.doubleValue(), lat.doubleValue()};
+    }
+
+    /**
+     * @param distanceMeters great-circle distance for nearest(), 0 for withinBox()
+     */
+    public record Hit(ObjectId capsuleId, ObjectId ownerId, double lon, double lat, double distanceMeters) {
+    }
+
+    @FunctionalInterface
+    private interface SlotVisitor {
+        void visit(int slot);
+    }
+
+    private static final class IntBag {
+        private int[] items = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == value) {
+                    items[i] = items[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.oleksandrmytro.timecapsule.models.Reaction;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
 import com.oleksandrmytro.timecapsule.models.enums.CapsuleVisibility;
 import com.oleksandrmytro.timecapsule.models.enums.ReactionType;
-import com.oleksandrmytro.timecapsule.repositories.CapsuleRepository;
 import com.oleksandrmytro.timecapsule.repositories.ReactionRepository;
 import com.oleksandrmytro.timecapsule.responses.ReactionSummaryResponse;
 import org.bson.types.ObjectId;
@@ -23,12 +22,12 @@ import java.util.stream.Collectors;
 public class ReactionService {
 
     private final ReactionRepository reactionRepository;
-    private final CapsuleRepository capsuleRepository;
+    private final CapsuleRouteService capsuleRoutes;
     private final MongoTemplate mongoTemplate;
 
-    public ReactionService(ReactionRepository reactionRepository, CapsuleRepository capsuleRepository, MongoTemplate mongoTemplate) {
+    public ReactionService(ReactionRepository reactionRepository, CapsuleRouteService capsuleRoutes, MongoTemplate mongoTemplate) {
         this.reactionRepository = reactionRepository;
-        this.capsuleRepository = capsuleRepository;
+        this.capsuleRoutes = capsuleRoutes;
         this.mongoTemplate = mongoTemplate;
     }
 
@@ -114,7 +113,7 @@ public class ReactionService {
      * Перевіряє, що капсула публічна, відкрита та не видалена.
      */
     private Capsule assertPublicOpenedCapsule(String capsuleId) {
-        Capsule capsule = capsuleRepository.findByIdAndDeletedAtIsNull(capsuleId)
+        Capsule capsule = capsuleRoutes.findActive(capsuleId)
                 .orElseThrow(() -> new IllegalArgumentException("Капсула не знайдена"));
 
         if (!CapsuleVisibility.PUBLIC.equals(CapsuleVisibility.fromValue(capsule.getVisibility()))) {
@@ -0,0 +1,82 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for hot reads: concurrent calls with the same (kind, key) share one in-flight
+ * CompletableFuture. The first caller runs the loader on its own thread, the others wait for its
+ * result or exception. Nothing is kept after completion (caching is the caller's business), so a
+ * call arriving afterwards starts a new flight. The loader must not depend on who is calling.
+ *
+ * Metrics: requests.coalesced{kind, outcome=leader|joined}.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<Flight, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String kind, String key, Supplier<T> loader) {
+        Flight flight = new Flight(kind, key);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flight, mine);
+        if (existing != null) {
+            counter(kind, "joined").increment();
+            return (T) join(existing);
+        }
+
+        counter(kind, "leader").increment();
+        try {
+            T result = loader.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(flight, mine);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            // Followers see the leader's exception as is (e.g. IllegalArgumentException -> 404/400).
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw ex;
+        } catch (CancellationException ex) {
+            throw new IllegalStateException("Coalesced request was cancelled", ex);
+        }
+    }
+
+    private Counter counter(String kind, String outcome) {
+        return Counter.builder("requests.coalesced")
+                .description("Hot reads that ran the loader (leader) or shared an in-flight one (joined)")
+                .tag("kind", kind)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private record Flight(String kind, String key) {
+    }
+}
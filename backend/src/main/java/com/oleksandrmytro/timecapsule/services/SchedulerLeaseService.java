@@ -0,0 +1,85 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Time-limited leases in scheduler_leases, used to split background work between replicas.
+ * A lease is held until expiresAt; a dead node simply stops renewing and the lease can be
+ * taken over once it expires. The TTL index on expiresAt (database/scripts/init_schemas.js) only
+ * cleans up abandoned lease documents.
+ */
+@Service
+public class SchedulerLeaseService {
+
+    private static final String LEASES_COLLECTION = "scheduler_leases";
+
+    private final MongoTemplate mongoTemplate;
+    private final String holderId;
+
+    public SchedulerLeaseService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.holderId = resolveHostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public String getHolderId() {
+        return holderId;
+    }
+
+    /**
+     * Acquires or renews the lease for this node.
+     * @return true when this node holds the lease until now + ttl
+     */
+    public boolean tryAcquire(String leaseId, Duration ttl) {
+        Instant now = Instant.now();
+        Query query = new Query(Criteria.where("_id").is(leaseId).orOperator(
+                Criteria.where("holder").is(holderId),
+                Criteria.where("expiresAt").lte(now)
+        ));
+        Update update = new Update()
+                .set("holder", holderId)
+                .set("expiresAt", now.plus(ttl))
+                .set("renewedAt", now)
+                .setOnInsert("createdAt", now);
+        try {
+            Document lease = mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Document.class,
+                    LEASES_COLLECTION
+            );
+            return lease != null && holderId.equals(lease.getString("holder"));
+        } catch (DuplicateKeyException ex) {
+            // Lease exists and is held by another live node: the upsert lost the race.
+            return false;
+        }
+    }
+
+    public void release(String leaseId) {
+        mongoTemplate.updateFirst(
+                new Query(Criteria.where("_id").is(leaseId).and("holder").is(holderId)),
+                new Update().set("expiresAt", Instant.now()),
+                LEASES_COLLECTION
+        );
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception ex) {
+            return "node";
+        }
+    }
+}
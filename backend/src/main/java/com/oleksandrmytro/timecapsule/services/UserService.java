@@ -36,6 +36,8 @@ public class UserService {
     private final MongoTemplate mongoTemplate;
     private final FollowRepository followRepository;
     private final CapsuleRepository capsuleRepository;
+    private final RequestCoalescer requestCoalescer;
+    private final PrincipalCache principalCache;
 
     public UserService(
             UserRepository userRepository,
@@ -43,7 +45,9 @@ public class UserService {
             PasswordEncoder passwordEncoder,
             MongoTemplate mongoTemplate,
             FollowRepository followRepository,
-            CapsuleRepository capsuleRepository
+            CapsuleRepository capsuleRepository,
+            RequestCoalescer requestCoalescer,
+            PrincipalCache principalCache
     ) {
         this.userRepository = userRepository;
         this.emailService = emailService;
@@ -51,6 +55,8 @@ public class UserService {
         this.mongoTemplate = mongoTemplate;
         this.followRepository = followRepository;
         this.capsuleRepository = capsuleRepository;
+        this.requestCoalescer = requestCoalescer;
+        this.principalCache = principalCache;
     }
 
     public List<User> allUsers() {
@@ -116,6 +122,7 @@ public class UserService {
         if (targetedResult.getMatchedCount() == 0) {
             mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(user.getId())), update, User.class);
         }
+        principalCache.invalidate(user.getId());
         return userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
     }
@@ -126,9 +133,10 @@ public class UserService {
 
     public User getByIdOrUsername(String value) {
         if (value == null) throw new IllegalArgumentException("User not found");
-        return userRepository.findById(value)
+        // Профіль, що набирає перегляди: однакові одночасні запити ділять один пошук
+        return requestCoalescer.execute("user", value, () -> userRepository.findById(value)
                 .or(() -> userRepository.findByUsernameIgnoreCase(value))
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+                .orElseThrow(() -> new IllegalArgumentException("User not found")));
     }
 
     public void follow(String targetUserId, String followerId) {
@@ -335,6 +343,7 @@ public class UserService {
                         .set("updatedAt", LocalDateTime.now()),
                 User.class
         );
+        principalCache.invalidate(userId);
     }
 
     public void changePasswordWithCurrent(String userId, String currentPassword, String newPassword) {
@@ -372,6 +381,7 @@ public class UserService {
         if (result.getMatchedCount() == 0) {
             mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(user.getId())), update, User.class);
         }
+        principalCache.invalidate(user.getId());
     }
 
     private String generateCode() {
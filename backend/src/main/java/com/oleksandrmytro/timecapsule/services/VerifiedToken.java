@@ -0,0 +1,50 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Date;
+
+/**
+ * JWT whose signature was verified once by {@link JwtService#verify}; every claim is read from
+ * the parsed body, without parsing the token again.
+ */
+public final class VerifiedToken {
+
+    private final Claims claims;
+
+    VerifiedToken(Claims claims) {
+        this.claims = claims;
+    }
+
+    /**
+     * Subject: userId (email in tokens issued before the subject switch).
+     */
+    public String subject() {
+        return claims.getSubject();
+    }
+
+    public String email() {
+        return claim("email", String.class);
+    }
+
+    public Date expiration() {
+        return claims.getExpiration();
+    }
+
+    public boolean isExpired() {
+        Date expiration = claims.getExpiration();
+        return expiration != null && expiration.before(new Date());
+    }
+
+    public String tokenType() {
+        return claim("token_type", String.class);
+    }
+
+    public String kid() {
+        return claim("kid", String.class);
+    }
+
+    public <T> T claim(String name, Class<T> type) {
+        return claims.get(name, type);
+    }
+}
@@ -0,0 +1,70 @@
+package com.oleksandrmytro.timecapsule.config;
+
+import com.oleksandrmytro.timecapsule.services.CapsuleUnlockEngine;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CapsuleUnlockSchedulerTest {
+
+    @Test
+    void partitionsCoverEveryBucketExactlyOnce() {
+        for (int partitions : new int[]{2, 3, 7, 8, 1000, CapsuleUnlockEngine.UNLOCK_BUCKETS}) {
+            int next = 0;
+            for (int partition = 0; partition < partitions; partition++) {
+                int[] range = CapsuleUnlockScheduler.bucketRange(partition, partitions);
+                assertEquals(next, range[0], partitions + " partitions, partition " + partition);
+                assertTrue(range[1] > range[0], partitions + " partitions, partition " + partition + " is empty");
+                next = range[1];
+            }
+            assertEquals(CapsuleUnlockEngine.UNLOCK_BUCKETS, next);
+        }
+    }
+
+    @Test
+    void rangesDifferInSizeByAtMostOne() {
+        int smallest = Integer.MAX_VALUE;
+        int largest = 0;
+        for (int partition = 0; partition < 7; partition++) {
+            int[] range = CapsuleUnlockScheduler.bucketRange(partition, 7);
+            smallest = Math.min(smallest, range[1] - range[0]);
+            largest = Math.max(largest, range[1] - range[0]);
+        }
+        assertTrue(largest - smallest <= 1);
+    }
+
+    @Test
+    void firstPartitionAlsoOwnsCapsulesWithoutABucket() {
+        Document first = CapsuleUnlockScheduler.partitionFilter(0, 4);
+        Document second = CapsuleUnlockScheduler.partitionFilter(1, 4);
+
+        List<?> branches = first.getList("$or", Document.class);
+        assertEquals(2, branches.size());
+        assertTrue(branches.contains(new Document("unlockBucket", null)));
+        List<?> buckets = second.get("unlockBucket", Document.class).getList("$in", Integer.class);
+        assertEquals(CapsuleUnlockEngine.UNLOCK_BUCKETS / 4, buckets.size());
+        assertEquals(CapsuleUnlockEngine.UNLOCK_BUCKETS / 4, buckets.get(0));
+    }
+
+    @Test
+    void singlePartitionHasNoFilter() {
+        assertTrue(CapsuleUnlockScheduler.partitionFilter(0, 1).isEmpty());
+    }
+
+    @Test
+    void ownerBucketIsStableAndInRange() {
+        ObjectId owner = new ObjectId();
+        int bucket = CapsuleUnlockEngine.unlockBucketOf(owner);
+
+        assertEquals(bucket, CapsuleUnlockEngine.unlockBucketOf(new ObjectId(owner.toHexString())));
+        for (int i = 0; i < 1_000; i++) {
+            int other = CapsuleUnlockEngine.unlockBucketOf(new ObjectId());
+            assertTrue(other >= 0 && other < CapsuleUnlockEngine.UNLOCK_BUCKETS);
+        }
+    }
+}
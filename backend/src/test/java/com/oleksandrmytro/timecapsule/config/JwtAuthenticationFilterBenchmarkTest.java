@@ -0,0 +1,136 @@
+package com.oleksandrmytro.timecapsule.config;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.oleksandrmytro.timecapsule.models.User;
+import com.oleksandrmytro.timecapsule.services.JwtService;
+import com.oleksandrmytro.timecapsule.services.PrincipalCache;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Requests per second through JwtAuthenticationFilter against a sharded cluster (the 3-shard
+ * local cluster from database/docker-compose.yml): tokens without the email claim and no routing
+ * cache (every principal load is a broadcast findById, as before) vs the current tokens, whose
+ * email claim turns the load into a single-shard _id + email query. Runs only when
+ * FILTER_BENCHMARK_MONGO_URI points to a mongos and a scratch database; its users collection is
+ * dropped and sharded on hashed email, so the empty collection is spread over all shards at once
+ * (equality targeting on email is the same as with the ranged key of init_schemas.js).
+ *
+ * FILTER_BENCHMARK_MONGO_URI=mongodb://localhost:27017/timecapsule_bench ./mvnw test -Dtest=JwtAuthenticationFilterBenchmarkTest
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "FILTER_BENCHMARK_MONGO_URI", matches = ".+")
+class JwtAuthenticationFilterBenchmarkTest {
+
+    private static final int USERS = 10_000;
+    private static final int REQUESTS = 20_000;
+
+    @Test
+    void routedPrincipalLoadsBeatBroadcast() throws Exception {
+        ConnectionString uri = new ConnectionString(System.getenv("FILTER_BENCHMARK_MONGO_URI"));
+        String database = uri.getDatabase() != null ? uri.getDatabase() : "timecapsule_bench";
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, database);
+            shardUsers(client, database);
+            List<User> users = seed(mongoTemplate);
+
+            JwtService jwtService = jwtService();
+            List<String> legacyTokens = new ArrayList<>(USERS);
+            List<String> routedTokens = new ArrayList<>(USERS);
+            for (User user : users) {
+                legacyTokens.add(jwtService.generateToken(Map.of(), user));
+                routedTokens.add(jwtService.generateToken(user));
+            }
+
+            HandlerExceptionResolver resolver = mock(HandlerExceptionResolver.class);
+            // Principal cache off: every request reaches Mongo, this compares the queries themselves.
+            PrincipalCache noPrincipalCache = new PrincipalCache(mongoTemplate, null, 0, Duration.ZERO, false);
+            // Cache size 0: no userId -> email routes, like the former findById lookup.
+            JwtAuthenticationFilter broadcast = new JwtAuthenticationFilter(jwtService,
+                    new PrincipalLookupService(mongoTemplate, noPrincipalCache, null, 0), resolver);
+            // Also without routing cache: the email claim alone makes the load single-shard.
+            JwtAuthenticationFilter routed = new JwtAuthenticationFilter(jwtService,
+                    new PrincipalLookupService(mongoTemplate, noPrincipalCache, null, 0), resolver);
+
+            run(broadcast, legacyTokens, REQUESTS / 10); // warm-up
+            double broadcastRps = run(broadcast, legacyTokens, REQUESTS);
+            double routedRps = run(routed, routedTokens, REQUESTS);
+            assertTrue(routedRps > broadcastRps, String.format("users=%d requests=%d broadcast=%.0f req/s routed=%.0f req/s",
+                    USERS, REQUESTS, broadcastRps, routedRps));
+
+            mongoTemplate.dropCollection(User.class);
+        }
+    }
+
+    private static double run(JwtAuthenticationFilter filter, List<String> tokens, int requests) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/capsules");
+            request.addHeader("Authorization", "Bearer " + tokens.get(ThreadLocalRandom.current().nextInt(tokens.size())));
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+            SecurityContextHolder.clearContext();
+        }
+        return requests / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static JwtService jwtService() {
+        byte[] key = new byte[32];
+        ThreadLocalRandom.current().nextBytes(key);
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", Base64.getEncoder().encodeToString(key));
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "secretVersion", "1");
+        return jwtService;
+    }
+
+    private static void shardUsers(MongoClient client, String database) {
+        try {
+            client.getDatabase("admin").runCommand(new Document("enableSharding", database));
+        } catch (MongoCommandException ex) {
+            // already enabled (or implicit on MongoDB 6+)
+        }
+        client.getDatabase(database).getCollection("users").drop();
+        client.getDatabase("admin").runCommand(new Document("shardCollection", database + ".users")
+                .append("key", new Document("email", "hashed")));
+    }
+
+    private static List<User> seed(MongoTemplate mongoTemplate) {
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            User user = new User("bench" + i, "bench" + i + "@example.com", "x");
+            user.setId(new ObjectId().toHexString());
+            user.setRole(User.Role.REGULAR);
+            user.setEnabled(true);
+            users.add(user);
+        }
+        mongoTemplate.insertAll(users);
+        return users;
+    }
+}
@@ -0,0 +1,143 @@
+package com.oleksandrmytro.timecapsule.config;
+
+import com.oleksandrmytro.timecapsule.models.User;
+import com.oleksandrmytro.timecapsule.services.JwtService;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
+import com.oleksandrmytro.timecapsule.services.VerifiedToken;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.util.Base64;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Token handling of the JWT filter per request: the former path (subject, email, isTokenValid and
+ * the three impersonation claims, each a full parse with the key decoded again) vs one
+ * JwtService.verify with the cached key and parser. filterRequest is the whole filter with the
+ * principal load mocked out. No database needed; forks are disabled so JMH runs inside the test JVM.
+ *
+ * JWT_BENCHMARK=true ./mvnw test -Dtest=JwtVerificationBenchmark
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "JWT_BENCHMARK", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JwtVerificationBenchmark {
+
+    private String secret;
+    private JwtService jwtService;
+    private JwtAuthenticationFilter filter;
+    private User user;
+    private String token;
+
+    @Test
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .forks(0)
+                .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] key = new byte[32];
+        new Random(42).nextBytes(key);
+        secret = Base64.getEncoder().encodeToString(key);
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", secret);
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "secretVersion", "1");
+
+        user = new User("bench", "bench@example.com", "x");
+        user.setId(new ObjectId().toHexString());
+        user.setRole(User.Role.REGULAR);
+        user.setEnabled(true);
+        token = jwtService.generateToken(user);
+
+        PrincipalLookupService lookup = mock(PrincipalLookupService.class);
+        when(lookup.load(any(), any())).thenReturn(user);
+        filter = new JwtAuthenticationFilter(jwtService, lookup, mock(HandlerExceptionResolver.class));
+    }
+
+    @Benchmark
+    public Object legacyParsePerClaim() {
+        String subject = legacyClaim(Claims::getSubject);
+        String email = legacyClaim(claims -> claims.get("email", String.class));
+        boolean valid = legacyClaim(Claims::getSubject).equals(user.getUsername())
+                && !legacyClaim(Claims::getExpiration).before(new Date());
+        String adminId = legacyClaim(claims -> claims.get("impersonatedByAdminId", String.class));
+        String adminEmail = legacyClaim(claims -> claims.get("impersonatedByAdminEmail", String.class));
+        Boolean active = legacyClaim(claims -> claims.get("impersonationActive", Boolean.class));
+        return new Object[]{subject, email, valid, adminId, adminEmail, active};
+    }
+
+    @Benchmark
+    public Object verifiedOnce() {
+        VerifiedToken verified = jwtService.verify(token);
+        String subject = verified.subject();
+        String email = verified.email();
+        boolean valid = jwtService.isTokenValid(verified, user);
+        String adminId = verified.claim("impersonatedByAdminId", String.class);
+        String adminEmail = verified.claim("impersonatedByAdminEmail", String.class);
+        Boolean active = verified.claim("impersonationActive", Boolean.class);
+        return new Object[]{subject, email, valid, adminId, adminEmail, active};
+    }
+
+    @Benchmark
+    public Object filterRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/capsules");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    /**
+     * JwtService.extractClaim as it was: key decoded and parser built on every call.
+     */
+    private <T> T legacyClaim(Function<Claims, T> resolver) {
+        Claims claims = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+        return resolver.apply(claims);
+    }
+}
@@ -0,0 +1,163 @@
+package com.oleksandrmytro.timecapsule.config;
+
+import com.oleksandrmytro.timecapsule.models.User;
+import com.oleksandrmytro.timecapsule.services.JwtService;
+import com.oleksandrmytro.timecapsule.services.PrincipalCache;
+import com.oleksandrmytro.timecapsule.services.PrincipalLookupService;
+import com.oleksandrmytro.timecapsule.services.VerifiedToken;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class WebSocketJwtChannelInterceptorTest {
+
+    private final JwtService jwtService = mock(JwtService.class);
+    private final PrincipalLookupService principalLookupService = mock(PrincipalLookupService.class);
+    private final StompSessionRegistry sessionRegistry = new StompSessionRegistry();
+    private final WebSocketJwtChannelInterceptor interceptor =
+            new WebSocketJwtChannelInterceptor(jwtService, principalLookupService, sessionRegistry);
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final MessageChannel clientOutbound = mock(MessageChannel.class);
+    private final StompSessionSweeper sweeper = new StompSessionSweeper(
+            sessionRegistry, clientOutbound, mock(PrincipalCache.class), principalLookupService);
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User("ws", "ws@example.com", "x");
+        user.setId(new ObjectId().toHexString());
+        user.setRole(User.Role.REGULAR);
+        user.setEnabled(true);
+    }
+
+    @Test
+    void connectBindsThePrincipalAndTheTokenExpiryToTheSession() {
+        Instant expiresAt = Instant.now().plusSeconds(600);
+        VerifiedToken token = token(expiresAt);
+        when(jwtService.verify("jwt")).thenReturn(token);
+        when(jwtService.isTokenValid(token, user)).thenReturn(true);
+        when(principalLookupService.load(user.getId(), user.getEmail())).thenReturn(user);
+
+        Message<?> connect = frame(StompCommand.CONNECT, "s1");
+        interceptor.preSend(connect, channel);
+
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(connect, StompHeaderAccessor.class);
+        assertNotNull(accessor.getUser());
+        assertEquals(user.getId(), accessor.getUser().getName());
+        assertEquals(1, sessionRegistry.size());
+    }
+
+    @Test
+    void connectOfABlockedUserGetsNoPrincipal() {
+        user.setBlockedUntil(LocalDateTime.now().plusDays(1));
+        VerifiedToken token = token(Instant.now().plusSeconds(600));
+        when(jwtService.verify("jwt")).thenReturn(token);
+        when(jwtService.isTokenValid(token, user)).thenReturn(true);
+        when(principalLookupService.load(user.getId(), user.getEmail())).thenReturn(user);
+
+        Message<?> connect = frame(StompCommand.CONNECT, "s1");
+        interceptor.preSend(connect, channel);
+
+        assertNull(MessageHeaderAccessor.getAccessor(connect, StompHeaderAccessor.class).getUser());
+        assertEquals(0, sessionRegistry.size());
+    }
+
+    @Test
+    void sendAndSubscribeDoNotVerifyTheTokenAgain() {
+        sessionRegistry.bind("s1", user.getId(), Instant.now().plusSeconds(600));
+
+        Message<?> send = frame(StompCommand.SEND, "s1");
+        Message<?> subscribe = frame(StompCommand.SUBSCRIBE, "s1");
+
+        assertSame(send, interceptor.preSend(send, channel));
+        assertSame(subscribe, interceptor.preSend(subscribe, channel));
+        verifyNoInteractions(jwtService, principalLookupService);
+    }
+
+    @Test
+    void sweptSessionStaysRejectedUntilDisconnect() {
+        sessionRegistry.bind("expired", user.getId(), Instant.now().minusSeconds(1));
+        sessionRegistry.bind("live", user.getId(), Instant.now().plusSeconds(600));
+
+        assertNull(interceptor.preSend(frame(StompCommand.SEND, "expired"), channel));
+        assertEquals(List.of("expired"), sessionRegistry.drainExpired(Instant.now()));
+        // ERROR міг не дійти: сесія лишається відомою й закритою, але повторно не розсилається
+        assertEquals(List.of(), sessionRegistry.drainExpired(Instant.now()));
+        assertNull(interceptor.preSend(frame(StompCommand.SEND, "expired"), channel));
+        assertEquals(2, sessionRegistry.size());
+
+        sessionRegistry.remove("expired");
+        assertEquals(1, sessionRegistry.size());
+    }
+
+    @Test
+    void blockingTheUserRevokesAndSweepsItsSessions() {
+        sessionRegistry.bind("s1", user.getId(), Instant.now().plusSeconds(600));
+        sessionRegistry.bind("s2", user.getId(), Instant.now().plusSeconds(600));
+        sessionRegistry.bind("other", new ObjectId().toHexString(), Instant.now().plusSeconds(600));
+        user.setEnabled(false);
+        when(principalLookupService.load(user.getId(), null)).thenReturn(user);
+
+        sweeper.recheck(user.getId());
+
+        assertNull(interceptor.preSend(frame(StompCommand.SEND, "s1"), channel));
+        assertNull(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "s2"), channel));
+        assertNotNull(interceptor.preSend(frame(StompCommand.SEND, "other"), channel));
+        verify(clientOutbound, times(2)).send(any());
+    }
+
+    @Test
+    void profileChangeOfAnActiveUserKeepsItsSessions() {
+        sessionRegistry.bind("s1", user.getId(), Instant.now().plusSeconds(600));
+        when(principalLookupService.load(user.getId(), null)).thenReturn(user);
+
+        sweeper.recheck(user.getId());
+
+        assertFalse(sessionRegistry.isExpired("s1", Instant.now()));
+        assertTrue(sessionRegistry.hasSessions(user.getId()));
+        verifyNoInteractions(clientOutbound);
+    }
+
+    private VerifiedToken token(Instant expiresAt) {
+        VerifiedToken token = mock(VerifiedToken.class);
+        when(token.subject()).thenReturn(user.getId());
+        when(token.email()).thenReturn(user.getEmail());
+        when(token.expiration()).thenReturn(Date.from(expiresAt));
+        return token;
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+        if (command == StompCommand.CONNECT) {
+            accessor.setNativeHeader("Authorization", "Bearer jwt");
+        }
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -34,6 +34,9 @@ class AuthenticationControllerTest {
     @MockBean
     private UserDetailsService userDetailsService;
 
+    @MockBean
+    private com.oleksandrmytro.timecapsule.services.PrincipalLookupService principalLookupService;
+
     @MockBean
     private AdminAuditLogRepository adminAuditLogRepository;
 
@@ -0,0 +1,156 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import com.oleksandrmytro.timecapsule.repositories.CapsuleRepository;
+import com.oleksandrmytro.timecapsule.repositories.FollowRepository;
+import com.oleksandrmytro.timecapsule.repositories.ShareRepository;
+import com.oleksandrmytro.timecapsule.repositories.UserRepository;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Summary vs full list view for an owner with 5,000 capsules: bytes read from Mongo, bytes
+ * serialised to the client and p99 latency of CapsuleService.listMine. Runs only when
+ * CAPSULE_LIST_BENCHMARK_MONGO_URI points to a scratch database (its capsules collection is dropped).
+ *
+ * CAPSULE_LIST_BENCHMARK_MONGO_URI=mongodb://localhost:27017/timecapsule_bench ./mvnw test -Dtest=CapsuleListBenchmarkTest
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "CAPSULE_LIST_BENCHMARK_MONGO_URI", matches = ".+")
+class CapsuleListBenchmarkTest {
+
+    private static final int CAPSULES = 5_000;
+    private static final int RUNS = 50;
+
+    @Test
+    void summaryViewMovesLessThanFullView() throws Exception {
+        ConnectionString uri = new ConnectionString(System.getenv("CAPSULE_LIST_BENCHMARK_MONGO_URI"));
+        String database = uri.getDatabase() != null ? uri.getDatabase() : "timecapsule_bench";
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, database);
+            CapsuleService service = new CapsuleService(
+                    mock(CapsuleRepository.class),
+                    mongoTemplate,
+                    mock(UserRepository.class),
+                    mock(FollowRepository.class),
+                    mock(ShareRepository.class),
+                    mock(SimpMessagingTemplate.class),
+                    mock(ChatService.class),
+                    mock(CapsuleUnlockEngine.class),
+                    mock(CapsuleOpenedNotifier.class),
+                    mock(CapsuleUnlockMetrics.class),
+                    mock(MarkerTileCache.class),
+                    mock(PublicMarkerIndex.class),
+                    mock(GeoHeatmapService.class),
+                    mock(PublicCapsuleCache.class),
+                    mock(RequestCoalescer.class),
+                    mock(CapsuleShareNotifier.class),
+                    mock(OutboxService.class),
+                    mock(CapsuleRouteService.class),
+                    mock(PrincipalLookupService.class)
+            );
+            ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+            String ownerId = seed(mongoTemplate).toHexString();
+
+            long fullMongoBytes = mongoBytes(mongoTemplate, ownerId, null);
+            long summaryMongoBytes = mongoBytes(mongoTemplate, ownerId, new Document("body", 0).append("media", 0));
+            long fullJsonBytes = mapper.writeValueAsBytes(service.listMine(ownerId)).length;
+            long summaryJsonBytes = mapper.writeValueAsBytes(service.listMineSummaries(ownerId)).length;
+            double fullP99 = p99Millis(() -> service.listMine(ownerId));
+            double summaryP99 = p99Millis(() -> service.listMineSummaries(ownerId));
+
+            assertEquals(CAPSULES, service.listMineSummaries(ownerId).size());
+            assertTrue(summaryJsonBytes < fullJsonBytes);
+            assertTrue(summaryMongoBytes < fullMongoBytes,
+                    String.format("mongo full=%d B summary=%d B", fullMongoBytes, summaryMongoBytes));
+            assertTrue(summaryP99 < fullP99, String.format("p99 full=%.1f ms summary=%.1f ms", fullP99, summaryP99));
+            mongoTemplate.dropCollection(Capsule.class);
+        }
+    }
+
+    private static ObjectId seed(MongoTemplate mongoTemplate) {
+        mongoTemplate.dropCollection(Capsule.class);
+        ObjectId owner = new ObjectId();
+        char[] filler = new char[4_000];
+        Arrays.fill(filler, 'x');
+        String body = new String(filler);
+        Date createdAt = new Date();
+        List<Document> chunk = new ArrayList<>(1_000);
+        for (int i = 0; i < CAPSULES; i++) {
+            List<Document> media = new ArrayList<>();
+            for (int m = 0; m < 5; m++) {
+                media.add(new Document("id", "m" + m)
+                        .append("url", "/uploads/capsules/" + i + "/photo-" + m + ".jpg")
+                        .append("type", "image")
+                        .append("meta", new Document("width", 1920).append("height", 1080)));
+            }
+            chunk.add(new Document("ownerId", owner)
+                    .append("title", "Benchmark capsule " + i)
+                    .append("body", body)
+                    .append("media", media)
+                    .append("status", CapsuleStatus.OPENED.getValue())
+                    .append("visibility", "private")
+                    .append("tags", List.of("bench", "tag" + (i % 10)))
+                    .append("coverImageUrl", "/uploads/capsules/" + i + "/cover.jpg")
+                    .append("unlockAt", createdAt)
+                    .append("openedAt", createdAt)
+                    .append("createdAt", createdAt)
+                    .append("updatedAt", createdAt));
+            if (chunk.size() == 1_000) {
+                mongoTemplate.getCollection("capsules").insertMany(chunk);
+                chunk = new ArrayList<>(1_000);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            mongoTemplate.getCollection("capsules").insertMany(chunk);
+        }
+        return owner;
+    }
+
+    private static long mongoBytes(MongoTemplate mongoTemplate, String ownerId, Document projection) {
+        long bytes = 0;
+        var cursor = mongoTemplate.getCollection("capsules")
+                .find(new Document("ownerId", new ObjectId(ownerId)).append("deletedAt", null), RawBsonDocument.class);
+        if (projection != null) {
+            cursor = cursor.projection(projection);
+        }
+        for (RawBsonDocument document : cursor) {
+            bytes += document.getByteBuffer().remaining();
+        }
+        return bytes;
+    }
+
+    private static double p99Millis(Supplier<?> call) {
+        call.get(); // warm-up
+        long[] samples = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            call.get();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[(int) Math.ceil(RUNS * 0.99) - 1] / 1e6;
+    }
+}
@@ -0,0 +1,112 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * By-id capsule reads must hit exactly one shard. Needs a sharded cluster (mongos URI); the
+ * scratch database gets capsules sharded on hashed ownerId like database/scripts/init_schemas.js,
+ * and its capsules and capsule_routes are dropped.
+ *
+ * SHARDED_MONGO_URI=mongodb://localhost:27017/timecapsule_bench ./mvnw test -Dtest=CapsuleRoutingExplainTest
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "SHARDED_MONGO_URI", matches = ".+")
+class CapsuleRoutingExplainTest {
+
+    private static final int OWNERS = 200;
+
+    @Test
+    void byIdReadsTargetOneShard() {
+        ConnectionString uri = new ConnectionString(System.getenv("SHARDED_MONGO_URI"));
+        String database = uri.getDatabase() != null ? uri.getDatabase() : "timecapsule_bench";
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, database);
+            shardCapsules(client, database);
+            CapsuleRouteService routes = new CapsuleRouteService(mongoTemplate, null, 1000);
+
+            List<Document> capsules = seed(mongoTemplate);
+            List<String> ids = capsules.stream().map(capsule -> capsule.getObjectId("_id").toHexString()).toList();
+            // Half of the capsules are registered as on create, the other half go through the backfill.
+            for (int i = 0; i < capsules.size(); i += 2) {
+                routes.register(ids.get(i), capsules.get(i).getObjectId("ownerId"));
+            }
+
+            for (String id : ids) {
+                assertTrue(routes.findActive(id).isPresent(), "capsule " + id + " not found");
+                Document targeted = explain(mongoTemplate, new Query(routes.byId(id).and("deletedAt").is(null)));
+                assertEquals(1, shards(targeted).size(), "routed read of " + id + " hit " + shards(targeted));
+            }
+
+            Document scatter = explain(mongoTemplate, new Query(Criteria.where("_id").is(ids.get(0)).and("deletedAt").is(null)));
+            assertTrue(shards(scatter).size() > 1, "_id-only read hit " + shards(scatter));
+
+            mongoTemplate.dropCollection(Capsule.class);
+            mongoTemplate.dropCollection(CapsuleRouteService.COLLECTION);
+        }
+    }
+
+    private static void shardCapsules(MongoClient client, String database) {
+        try {
+            client.getDatabase("admin").runCommand(new Document("enableSharding", database));
+        } catch (MongoCommandException ex) {
+            // already enabled (or implicit on MongoDB 6+)
+        }
+        client.getDatabase(database).getCollection("capsules").drop();
+        client.getDatabase("admin").runCommand(new Document("shardCollection", database + ".capsules")
+                .append("key", new Document("ownerId", "hashed")));
+    }
+
+    private static List<Document> seed(MongoTemplate mongoTemplate) {
+        mongoTemplate.dropCollection(CapsuleRouteService.COLLECTION);
+        Date now = new Date();
+        List<Document> capsules = new ArrayList<>(OWNERS);
+        for (int i = 0; i < OWNERS; i++) {
+            capsules.add(new Document("_id", new ObjectId())
+                    .append("ownerId", new ObjectId())
+                    .append("title", "Routing capsule " + i)
+                    .append("status", CapsuleStatus.OPENED.getValue())
+                    .append("visibility", "public")
+                    .append("createdAt", now)
+                    .append("updatedAt", now));
+        }
+        mongoTemplate.getCollection("capsules").insertMany(capsules);
+        return capsules;
+    }
+
+    /**
+     * Explains the filter exactly as MongoTemplate sends it for Capsule.
+     */
+    private static Document explain(MongoTemplate mongoTemplate, Query query) {
+        QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+        Document filter = mapper.getMappedObject(query.getQueryObject(),
+                mongoTemplate.getConverter().getMappingContext().getPersistentEntity(Capsule.class));
+        return mongoTemplate.getDb().runCommand(new Document("explain", new Document("find", "capsules").append("filter", filter))
+                .append("verbosity", "queryPlanner"));
+    }
+
+    private static List<Document> shards(Document explain) {
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        return winningPlan.getList("shards", Document.class);
+    }
+}
@@ -0,0 +1,103 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CapsuleServiceTest {
+
+    @Test
+    void pageCursorRoundTripsCreatedAtAndId() {
+        CapsuleService.PageCursor cursor = new CapsuleService.PageCursor(Instant.ofEpochMilli(1_700_000_000_123L), new ObjectId());
+
+        String encoded = cursor.encode();
+
+        assertEquals(cursor, CapsuleService.PageCursor.decode(encoded));
+        // base64url без padding — безпечно в query string
+        assertFalse(encoded.contains("=") || encoded.contains("+") || encoded.contains("/"));
+    }
+
+    @Test
+    void pageCursorRejectsMalformedValues() {
+        for (String value : List.of("not base64!", encode("123"), encode("abc:" + new ObjectId().toHexString()), encode("123:xyz"))) {
+            assertThrows(IllegalArgumentException.class, () -> CapsuleService.PageCursor.decode(value), value);
+        }
+    }
+
+    @Test
+    void distanceCursorRoundTripsTiedIds() {
+        CapsuleService.DistanceCursor cursor = new CapsuleService.DistanceCursor(125.5, List.of(new ObjectId(), new ObjectId()));
+
+        assertEquals(cursor, CapsuleService.DistanceCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void distanceCursorRejectsNegativeOrNonNumericDistance() {
+        for (String value : List.of(encode("-1:"), encode("NaN:"), encode("far:"), encode("10:nothex"))) {
+            assertThrows(IllegalArgumentException.class, () -> CapsuleService.DistanceCursor.decode(value), value);
+        }
+    }
+
+    @Test
+    void nextDistanceCursorKeepsEveryCapsuleAtTheLastDistance() {
+        ObjectId near = new ObjectId();
+        ObjectId tiedA = new ObjectId();
+        ObjectId tiedB = new ObjectId();
+
+        CapsuleService.DistanceCursor next = CapsuleService.DistanceCursor.next(null,
+                List.of(10.0, 42.0, 42.0), List.of(near, tiedA, tiedB));
+
+        assertEquals(42.0, next.distance());
+        assertEquals(List.of(tiedA, tiedB), next.capsuleIds());
+    }
+
+    @Test
+    void nextDistanceCursorCarriesTiesFromEarlierPagesAtTheSameDistance() {
+        ObjectId earlier = new ObjectId();
+        ObjectId current = new ObjectId();
+        CapsuleService.DistanceCursor after = new CapsuleService.DistanceCursor(42.0, List.of(earlier));
+
+        CapsuleService.DistanceCursor same = CapsuleService.DistanceCursor.next(after, List.of(42.0), List.of(current));
+        CapsuleService.DistanceCursor further = CapsuleService.DistanceCursor.next(after, List.of(42.0, 50.0), List.of(current, new ObjectId()));
+
+        // Уся сторінка на тій самій межі: $nin має виключити і попередні, і поточні
+        assertEquals(List.of(earlier, current), same.capsuleIds());
+        assertEquals(50.0, further.distance());
+        assertEquals(1, further.capsuleIds().size());
+    }
+
+    @Test
+    void histogramZoneDefaultsToUtc() {
+        assertEquals("UTC", CapsuleService.histogramZone(null));
+        assertEquals("UTC", CapsuleService.histogramZone(" "));
+        assertEquals("UTC", CapsuleService.histogramZone("Z"));
+        assertEquals("UTC", CapsuleService.histogramZone("GMT"));
+        assertEquals("UTC", CapsuleService.histogramZone("+00:00"));
+    }
+
+    @Test
+    void histogramZoneKeepsRegionIdsAndNormalizesOffsets() {
+        assertEquals("Europe/Kyiv", CapsuleService.histogramZone(" Europe/Kyiv "));
+        assertEquals("+02:00", CapsuleService.histogramZone("+02:00"));
+        assertEquals("+02:00", CapsuleService.histogramZone("UTC+2"));
+        assertEquals("-05:30", CapsuleService.histogramZone("GMT-05:30"));
+    }
+
+    @Test
+    void histogramZoneRejectsUnknownZonesAndSecondOffsets() {
+        assertThrows(IllegalArgumentException.class, () -> CapsuleService.histogramZone("Mars/Olympus"));
+        assertThrows(IllegalArgumentException.class, () -> CapsuleService.histogramZone("+01:00:30"));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
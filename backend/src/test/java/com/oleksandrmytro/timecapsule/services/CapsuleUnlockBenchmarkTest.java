@@ -0,0 +1,156 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Throughput of the bulk unlock pipeline against a real cluster. Runs only when
+ * UNLOCK_BENCHMARK_MONGO_URI points to a scratch database (its capsules collection is dropped).
+ * Notifications are mocked, so the numbers cover the Mongo side of the pipeline.
+ *
+ * UNLOCK_BENCHMARK_MONGO_URI=mongodb://localhost:27017/timecapsule_bench ./mvnw test -Dtest=CapsuleUnlockBenchmarkTest
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "UNLOCK_BENCHMARK_MONGO_URI", matches = ".+")
+class CapsuleUnlockBenchmarkTest {
+
+    private static final int BATCH_SIZE = 100;
+    private static final int OWNERS = 1_000;
+
+    @Test
+    void capsulesOpenedPerSecond() {
+        ConnectionString uri = new ConnectionString(System.getenv("UNLOCK_BENCHMARK_MONGO_URI"));
+        String database = uri.getDatabase() != null ? uri.getDatabase() : "timecapsule_bench";
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, database);
+            CapsuleUnlockEngine engine = new CapsuleUnlockEngine(
+                    mongoTemplate,
+                    new OutboxService(mongoTemplate, false),
+                    mock(CapsuleOpenedNotifier.class),
+                    new CapsuleUnlockMetrics(new SimpleMeterRegistry(), mongoTemplate,
+                            new SchedulerLeaseService(mongoTemplate), Duration.ofSeconds(90)),
+                    mock(PublicCapsuleCache.class),
+                    50, BATCH_SIZE, Duration.ofMinutes(15), 1, 10
+            );
+
+            for (int overdue : new int[]{1_000, 10_000, 100_000}) {
+                seed(mongoTemplate, overdue);
+                long legacyStart = System.nanoTime();
+                int legacyOpened = openOneByOne(mongoTemplate, Math.min(overdue, 1_000));
+                double legacyRate = legacyOpened / seconds(legacyStart);
+
+                seed(mongoTemplate, overdue);
+                long start = System.nanoTime();
+                int opened = openInBatches(mongoTemplate, engine);
+                double rate = opened / seconds(start);
+
+                assertEquals(overdue, opened);
+                assertTrue(rate > legacyRate, String.format("overdue=%d bulk=%.0f capsules/s per-document=%.0f capsules/s",
+                        overdue, rate, legacyRate));
+            }
+            mongoTemplate.dropCollection(Capsule.class);
+        }
+    }
+
+    private static void seed(MongoTemplate mongoTemplate, int count) {
+        mongoTemplate.dropCollection(Capsule.class);
+        List<ObjectId> owners = new ArrayList<>(OWNERS);
+        for (int i = 0; i < OWNERS; i++) {
+            owners.add(new ObjectId());
+        }
+        Date unlockAt = Date.from(Instant.now().minusSeconds(60));
+        List<Document> chunk = new ArrayList<>(1_000);
+        for (int i = 0; i < count; i++) {
+            chunk.add(new Document("ownerId", owners.get(i % OWNERS))
+                    .append("title", "Benchmark capsule " + i)
+                    .append("status", CapsuleStatus.SEALED.getValue())
+                    .append("visibility", "private")
+                    .append("unlockAt", unlockAt)
+                    .append("createdAt", unlockAt));
+            if (chunk.size() == 1_000) {
+                mongoTemplate.getCollection("capsules").insertMany(chunk);
+                chunk = new ArrayList<>(1_000);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            mongoTemplate.getCollection("capsules").insertMany(chunk);
+        }
+    }
+
+    private static int openInBatches(MongoTemplate mongoTemplate, CapsuleUnlockEngine engine) {
+        int opened = 0;
+        while (true) {
+            List<Capsule> ready = mongoTemplate.find(readyQuery(Instant.now()), Capsule.class);
+            if (ready.isEmpty()) {
+                return opened;
+            }
+            opened += engine.openBatch(ready, Instant.now(), CapsuleUnlockMetrics.SOURCE_RECONCILIATION);
+        }
+    }
+
+    // Previous scheduler shape: one conditional update and one owner lookup per capsule.
+    private static int openOneByOne(MongoTemplate mongoTemplate, int limit) {
+        int opened = 0;
+        while (opened < limit) {
+            Instant now = Instant.now();
+            List<Capsule> ready = mongoTemplate.find(readyQuery(now), Capsule.class);
+            if (ready.isEmpty()) {
+                return opened;
+            }
+            for (Capsule capsule : ready) {
+                long modified = mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(capsule.getId())
+                                .and("ownerId").is(capsule.getOwnerId())
+                                .and("status").is(CapsuleStatus.SEALED.getValue())
+                                .and("deletedAt").is(null)
+                                .and("unlockAt").lte(now)),
+                        new Update().set("status", CapsuleStatus.OPENED.getValue()).set("openedAt", now),
+                        Capsule.class
+                ).getModifiedCount();
+                mongoTemplate.findById(capsule.getOwnerId(), Document.class, "users");
+                opened += (int) modified;
+            }
+        }
+        return opened;
+    }
+
+    private static Query readyQuery(Instant now) {
+        Query query = new Query(
+                Criteria.where("status").is(CapsuleStatus.SEALED.getValue())
+                        .and("deletedAt").is(null)
+                        .and("unlockAt").lte(now)
+        );
+        query.with(Sort.by(Sort.Direction.ASC, "unlockAt"));
+        query.limit(BATCH_SIZE);
+        query.fields().include("_id").include("ownerId");
+        return query;
+    }
+
+    private static double seconds(long startNanos) {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+}
@@ -0,0 +1,90 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.oleksandrmytro.timecapsule.responses.CompactMarkersResponse;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactMarkerEncoderTest {
+
+    private static final int MARKERS = 2_000;
+    private static final int OWNERS = 50;
+
+    @Test
+    void encodesOwnersOnceAndCoordinatesAsDeltas() {
+        String owner = new ObjectId().toHexString();
+        List<Map<String, Object>> markers = List.of(
+                marker(new ObjectId().toHexString(), owner, 30.523400, 50.450100),
+                Map.of("kind", "cluster", "count", 7, "coordinates", List.of(30.523500, 50.450000),
+                        "representative", marker(new ObjectId().toHexString(), owner, 30.52, 50.45))
+        );
+
+        CompactMarkersResponse compact = CompactMarkerEncoder.encode(markers);
+
+        assertEquals(1, compact.getOwnerIds().size());
+        assertArrayEquals(new ObjectId(owner).toByteArray(), compact.getOwnerIds().get(0));
+        assertEquals(List.of(0, 0), compact.getOwners());
+        assertEquals(List.of(1, 7), compact.getCounts());
+        assertEquals(List.of(30_523_400L, 100L), compact.getLonDeltas());
+        assertEquals(List.of(50_450_100L, -100L), compact.getLatDeltas());
+    }
+
+    @Test
+    void compactCborIsSeveralTimesSmallerThanJsonOnDenseMaps() throws Exception {
+        Random random = new Random(42);
+        List<String> owners = new ArrayList<>();
+        for (int i = 0; i < OWNERS; i++) {
+            owners.add(new ObjectId().toHexString());
+        }
+        List<Map<String, Object>> markers = new ArrayList<>();
+        for (int i = 0; i < MARKERS; i++) {
+            markers.add(marker(new ObjectId().toHexString(), owners.get(random.nextInt(OWNERS)),
+                    30.4 + random.nextDouble() * 0.3, 50.35 + random.nextDouble() * 0.2));
+        }
+        markers.sort((a, b) -> Double.compare(coordinate(a, 0), coordinate(b, 0)));
+
+        byte[] json = new ObjectMapper().registerModule(new JavaTimeModule()).writeValueAsBytes(markers);
+        byte[] cbor = new CBORMapper().writeValueAsBytes(CompactMarkerEncoder.encode(markers));
+
+        assertTrue(json.length >= 3L * cbor.length,
+                String.format("json=%d bytes compact-cbor=%d bytes", json.length, cbor.length));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static double coordinate(Map<String, Object> marker, int axis) {
+        return ((List<Double>) marker.get("coordinates")).get(axis);
+    }
+
+    private static Map<String, Object> marker(String id, String ownerId, double lon, double lat) {
+        Map<String, Object> marker = new HashMap<>();
+        marker.put("kind", "marker");
+        marker.put("id", id);
+        marker.put("title", "Capsule " + id.substring(18));
+        marker.put("ownerId", ownerId);
+        marker.put("ownerName", "user_" + ownerId.substring(18));
+        marker.put("ownerAvatarUrl", "/uploads/avatars/" + ownerId + ".jpg");
+        marker.put("visibility", "public");
+        marker.put("status", "sealed");
+        marker.put("isLocked", true);
+        marker.put("isOwn", false);
+        marker.put("coverImageUrl", null);
+        marker.put("unlockAt", Instant.parse("2030-01-01T00:00:00Z"));
+        marker.put("openedAt", null);
+        marker.put("tags", List.of());
+        marker.put("coordinates", List.of(lon, lat));
+        return marker;
+    }
+}
@@ -0,0 +1,89 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GeoHeatmapServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final GeoHeatmapService service =
+            new GeoHeatmapService(mongoTemplate, mock(SchedulerLeaseService.class), Duration.ofMinutes(10));
+
+    // _id "precision:cell" -> count, як у geo_heatmap після $inc upsert-ів
+    private final Map<String, Long> counters = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, GeoHeatmapService.HEATMAP_COLLECTION))
+                .thenAnswer(invocation -> {
+                    BulkOperations bulk = mock(BulkOperations.class);
+                    when(bulk.upsert(any(Query.class), any(Update.class))).thenAnswer(upsert -> {
+                        String id = upsert.getArgument(0, Query.class).getQueryObject().getString("_id");
+                        Document inc = (Document) upsert.getArgument(1, Update.class).getUpdateObject().get("$inc");
+                        counters.merge(id, ((Number) inc.get("count")).longValue(), Long::sum);
+                        return bulk;
+                    });
+                    return bulk;
+                });
+    }
+
+    @Test
+    void incrementReachesEveryPrecisionOfThePoint() {
+        service.record(30.5234, 50.4501, 1);
+
+        String cell = Geohash.encode(30.5234, 50.4501, GeoHeatmapService.MAX_PRECISION);
+        assertEquals(GeoHeatmapService.MAX_PRECISION, counters.size());
+        for (int precision = 1; precision <= GeoHeatmapService.MAX_PRECISION; precision++) {
+            assertEquals(1L, counters.get(precision + ":" + cell.substring(0, precision)));
+        }
+    }
+
+    @Test
+    void moveDecrementsTheOldCellsAndIncrementsTheNewOnes() {
+        // Маркер у Києві, потім переїхав до Львова: спільні префікси лишаються з 1
+        service.record(30.5234, 50.4501, 1);
+        service.record(30.5234, 50.4501, -1);
+        service.record(24.0316, 49.8429, 1);
+
+        String kyiv = Geohash.encode(30.5234, 50.4501, GeoHeatmapService.MAX_PRECISION);
+        String lviv = Geohash.encode(24.0316, 49.8429, GeoHeatmapService.MAX_PRECISION);
+        for (int precision = 1; precision <= GeoHeatmapService.MAX_PRECISION; precision++) {
+            String kyivId = precision + ":" + kyiv.substring(0, precision);
+            String lvivId = precision + ":" + lviv.substring(0, precision);
+            assertEquals(1L, counters.get(lvivId));
+            if (!kyivId.equals(lvivId)) {
+                assertEquals(0L, counters.get(kyivId));
+            }
+        }
+    }
+
+    @Test
+    void archivingAPublicMarkerCancelsItsIncrement() {
+        service.record(-74.0060, 40.7128, 1);
+        service.record(-74.0060, 40.7128, -1);
+
+        assertTrue(counters.values().stream().allMatch(count -> count == 0L));
+    }
+
+    @Test
+    void listRejectsPrecisionOutsideTheRollup() {
+        assertThrows(IllegalArgumentException.class, () -> service.list(0, null));
+        assertThrows(IllegalArgumentException.class, () -> service.list(GeoHeatmapService.MAX_PRECISION + 1, null));
+    }
+}
@@ -0,0 +1,221 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class GeoMarkerMigratorTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final CapsuleService capsuleService = mock(CapsuleService.class);
+    private final SchedulerLeaseService leaseService = mock(SchedulerLeaseService.class);
+    private final GeoMarkerMigrator migrator =
+            new GeoMarkerMigrator(mongoTemplate, capsuleService, leaseService, 2, Duration.ofMinutes(2));
+
+    @BeforeEach
+    void setUp() {
+        when(leaseService.tryAcquire(anyString(), any(Duration.class))).thenReturn(true);
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(GeoMarkerMigrator.OUTBOX_COLLECTION)))
+                .thenReturn(List.of());
+        when(mongoTemplate.findById(GeoMarkerMigrator.OWNERS_CHECKPOINT_ID, Document.class, GeoMarkerMigrator.CHECKPOINTS_COLLECTION))
+                .thenReturn(new Document("_id", GeoMarkerMigrator.OWNERS_CHECKPOINT_ID).append("completedAt", new Date()));
+    }
+
+    @Test
+    void sweepResumesAfterTheCheckpointAndAdvancesIt() {
+        ObjectId lastId = new ObjectId();
+        ObjectId migrated = new ObjectId();
+        ObjectId failed = new ObjectId();
+        ObjectId owner = new ObjectId();
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("lastId", lastId));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("capsules"))).thenReturn(List.of(
+                new Document("_id", migrated).append("ownerId", owner),
+                new Document("_id", failed).append("ownerId", owner)));
+        when(capsuleService.migrateLegacyLocation(migrated, owner)).thenReturn(true);
+        when(capsuleService.migrateLegacyLocation(failed, owner)).thenThrow(new IllegalStateException("geomarkers down"));
+
+        migrator.run();
+
+        ArgumentCaptor<Query> sweep = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(sweep.capture(), eq(Document.class), eq("capsules"));
+        assertEquals(new Document("$gt", lastId), sweep.getValue().getQueryObject().get("_id"));
+        verify(capsuleService).setLegacyLocationsDrained(false);
+
+        // Невдалий перенос іде в outbox, чекпоінт однаково просувається за батч
+        ArgumentCaptor<Query> enqueued = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).upsert(enqueued.capture(), any(Update.class), eq(GeoMarkerMigrator.OUTBOX_COLLECTION));
+        assertEquals(failed, enqueued.getValue().getQueryObject().get("_id"));
+        Document update = checkpointUpdate();
+        assertEquals(failed, update.get("$set", Document.class).get("lastId"));
+        assertEquals(1, update.get("$inc", Document.class).get("migrated"));
+        assertFalse(update.get("$set", Document.class).containsKey("completedAt"));
+    }
+
+    @Test
+    void emptySweepCompletesTheMigration() {
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("lastId", new ObjectId()));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("capsules"))).thenReturn(List.of());
+
+        migrator.run();
+
+        assertNotNull(checkpointUpdate().get("$set", Document.class).get("completedAt"));
+        verify(capsuleService).setLegacyLocationsDrained(true);
+    }
+
+    @Test
+    void completedCheckpointSkipsTheSweepButStillDrainsTheOutbox() {
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("completedAt", new Date()));
+
+        migrator.run();
+
+        verify(capsuleService).setLegacyLocationsDrained(true);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), eq("capsules"));
+        verify(mongoTemplate).find(any(Query.class), eq(Document.class), eq(GeoMarkerMigrator.OUTBOX_COLLECTION));
+    }
+
+    @Test
+    void withoutTheLeaseOnlyTheCheckpointIsFollowed() {
+        checkpoint(null);
+        when(leaseService.tryAcquire(anyString(), any(Duration.class))).thenReturn(false);
+
+        migrator.run();
+
+        verify(capsuleService).setLegacyLocationsDrained(false);
+        verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), anyString());
+    }
+
+    @Test
+    void failedOutboxEntryIsRetriedWithBackoff() {
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("completedAt", new Date()));
+        ObjectId capsuleId = new ObjectId();
+        ObjectId owner = new ObjectId();
+        Date seenAttempt = Date.from(Instant.now().minusSeconds(1));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(GeoMarkerMigrator.OUTBOX_COLLECTION)))
+                .thenReturn(List.of(new Document("_id", capsuleId).append("ownerId", owner)
+                        .append("attempts", 1).append("nextAttemptAt", seenAttempt)));
+        when(capsuleService.migrateLegacyLocation(capsuleId, owner)).thenReturn(false);
+
+        Instant before = Instant.now();
+        migrator.run();
+
+        ArgumentCaptor<Query> same = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> retry = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(same.capture(), retry.capture(), eq(GeoMarkerMigrator.OUTBOX_COLLECTION));
+        // Свіжий enqueue між читанням і оновленням змінює nextAttemptAt і зберігає свій запис
+        assertEquals(seenAttempt.toInstant(), same.getValue().getQueryObject().get("nextAttemptAt"));
+        Document set = retry.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals(2, set.get("attempts"));
+        Instant nextAttemptAt = (Instant) set.get("nextAttemptAt");
+        assertFalse(nextAttemptAt.isBefore(before.plusSeconds(40)));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(GeoMarkerMigrator.OUTBOX_COLLECTION));
+    }
+
+    @Test
+    void migratedOutboxEntryIsRemoved() {
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("completedAt", new Date()));
+        ObjectId capsuleId = new ObjectId();
+        ObjectId owner = new ObjectId();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(GeoMarkerMigrator.OUTBOX_COLLECTION)))
+                .thenReturn(List.of(new Document("_id", capsuleId).append("ownerId", owner)
+                        .append("attempts", 0).append("nextAttemptAt", new Date())));
+        when(capsuleService.migrateLegacyLocation(capsuleId, owner)).thenReturn(true);
+
+        migrator.run();
+
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq(GeoMarkerMigrator.OUTBOX_COLLECTION));
+        assertEquals(capsuleId, removed.getValue().getQueryObject().get("_id"));
+        assertTrue(removed.getValue().getQueryObject().containsKey("nextAttemptAt"));
+    }
+
+    @Test
+    void ownerBackfillCopiesCapsuleOwnersOntoMarkersAndAdvancesItsCheckpoint() {
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("completedAt", new Date()));
+        when(mongoTemplate.findById(GeoMarkerMigrator.OWNERS_CHECKPOINT_ID, Document.class, GeoMarkerMigrator.CHECKPOINTS_COLLECTION))
+                .thenReturn(null);
+        ObjectId marker = new ObjectId();
+        ObjectId orphan = new ObjectId();
+        ObjectId capsuleId = new ObjectId();
+        ObjectId owner = new ObjectId();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("geomarkers"))).thenReturn(List.of(
+                new Document("_id", marker).append("capsuleId", capsuleId),
+                new Document("_id", orphan).append("capsuleId", new ObjectId())));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("capsules")))
+                .thenReturn(List.of(new Document("_id", capsuleId).append("ownerId", owner)));
+        BulkOperations bulk = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, "geomarkers")).thenReturn(bulk);
+
+        migrator.run();
+
+        verify(capsuleService).setMarkerOwnersBackfilled(false);
+        ArgumentCaptor<Query> target = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> set = ArgumentCaptor.forClass(Update.class);
+        // Лише маркер з відомою капсулою; фільтр з capsuleId (ключ шардування)
+        verify(bulk).updateOne(target.capture(), set.capture());
+        assertEquals(marker, target.getValue().getQueryObject().get("_id"));
+        assertEquals(capsuleId, target.getValue().getQueryObject().get("capsuleId"));
+        assertEquals(owner, set.getValue().getUpdateObject().get("$set", Document.class).get("ownerId"));
+        verify(bulk).execute();
+        Document update = checkpointUpdate(GeoMarkerMigrator.OWNERS_CHECKPOINT_ID);
+        assertEquals(orphan, update.get("$set", Document.class).get("lastId"));
+        assertEquals(1, update.get("$inc", Document.class).get("updated"));
+    }
+
+    @Test
+    void emptyOwnerBackfillCompletesIt() {
+        checkpoint(new Document("_id", GeoMarkerMigrator.CHECKPOINT_ID).append("completedAt", new Date()));
+        when(mongoTemplate.findById(GeoMarkerMigrator.OWNERS_CHECKPOINT_ID, Document.class, GeoMarkerMigrator.CHECKPOINTS_COLLECTION))
+                .thenReturn(new Document("_id", GeoMarkerMigrator.OWNERS_CHECKPOINT_ID).append("lastId", new ObjectId()));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("geomarkers"))).thenReturn(List.of());
+
+        migrator.run();
+
+        assertNotNull(checkpointUpdate(GeoMarkerMigrator.OWNERS_CHECKPOINT_ID).get("$set", Document.class).get("completedAt"));
+        verify(capsuleService).setMarkerOwnersBackfilled(true);
+    }
+
+    private void checkpoint(Document checkpoint) {
+        when(mongoTemplate.findById(GeoMarkerMigrator.CHECKPOINT_ID, Document.class, GeoMarkerMigrator.CHECKPOINTS_COLLECTION))
+                .thenReturn(checkpoint);
+    }
+
+    private Document checkpointUpdate() {
+        return checkpointUpdate(GeoMarkerMigrator.CHECKPOINT_ID);
+    }
+
+    private Document checkpointUpdate(String checkpointId) {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, atLeastOnce()).upsert(query.capture(), update.capture(), eq(GeoMarkerMigrator.CHECKPOINTS_COLLECTION));
+        for (int i = 0; i < query.getAllValues().size(); i++) {
+            if (checkpointId.equals(query.getAllValues().get(i).getQueryObject().get("_id"))) {
+                return update.getAllValues().get(i).getUpdateObject();
+            }
+        }
+        throw new AssertionError("no upsert of checkpoint " + checkpointId);
+    }
+}
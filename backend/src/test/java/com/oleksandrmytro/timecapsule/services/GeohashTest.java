@@ -0,0 +1,38 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeohashTest {
+
+    @Test
+    void encodesKnownPoints() {
+        assertEquals("u8vxn", Geohash.encode(30.5234, 50.4501, 5)); // Kyiv
+        assertEquals("dr5re", Geohash.encode(-74.0060, 40.7128, 5)); // New York
+        assertEquals("u8vxn", Geohash.encode(30.5234, 50.4501, 6).substring(0, 5));
+    }
+
+    @Test
+    void boundsContainTheEncodedPoint() {
+        double[] bounds = Geohash.bounds(Geohash.encode(30.5234, 50.4501, 6));
+        assertTrue(bounds[0] <= 30.5234 && 30.5234 <= bounds[2]);
+        assertTrue(bounds[1] <= 50.4501 && 50.4501 <= bounds[3]);
+        assertEquals(Geohash.cellWidth(6), bounds[2] - bounds[0], 1e-9);
+        assertEquals(Geohash.cellHeight(6), bounds[3] - bounds[1], 1e-9);
+    }
+
+    @Test
+    void coverIncludesTheCellOfEveryPointInTheBox() {
+        List<String> cells = Geohash.cover(170.0, -10.0, -170.0, 10.0, 3); // crosses the antimeridian
+        for (double lon : new double[]{170.0, 175.5, 179.99, -179.99, -175.0, -170.0}) {
+            for (double lat : new double[]{-10.0, -3.3, 0.0, 7.7, 10.0}) {
+                assertTrue(cells.contains(Geohash.encode(lon, lat, 3)), lon + "," + lat);
+            }
+        }
+        assertTrue(cells.size() <= Geohash.coverSize(170.0, -10.0, -170.0, 10.0, 3));
+    }
+}
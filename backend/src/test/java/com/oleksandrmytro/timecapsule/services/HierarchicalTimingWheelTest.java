@@ -0,0 +1,71 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 50;
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void firesWithinOneTickAfterDeadline() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, START);
+        wheel.schedule("a", START + 1_234, "a");
+
+        assertTrue(wheel.advance(START + 1_233).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(START + 1_234 + TICK));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesLongDeadlinesWithoutFiringEarly() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(TICK, START);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            long deadline = START + (long) (random.nextDouble() * 3L * 24 * 3600 * 1000);
+            deadlines.add(deadline);
+            wheel.schedule("c" + i, deadline, deadline);
+        }
+
+        int fired = 0;
+        for (long now = START; fired < deadlines.size(); now += TICK) {
+            for (Long deadline : wheel.advance(now)) {
+                assertTrue(deadline <= now, "fired before deadline");
+                assertTrue(now - deadline < TICK * 2, "fired too late");
+                fired++;
+            }
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void rescheduleReplacesAndCancelSuppresses() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, START);
+        wheel.schedule("a", START + 500, "first");
+        wheel.schedule("a", START + 5_000, "second");
+        wheel.schedule("b", START + 500, "b");
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+
+        assertTrue(wheel.advance(START + 1_000).isEmpty());
+        assertEquals(List.of("second"), wheel.advance(START + 5_000));
+    }
+
+    @Test
+    void alreadyDueEntriesFireOnNextAdvance() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, START);
+        wheel.advance(START + 10_000);
+        wheel.schedule("late", START, "late");
+
+        assertEquals(List.of("late"), wheel.advance(START + 10_000));
+    }
+}
@@ -0,0 +1,70 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.models.User;
+import io.jsonwebtoken.JwtException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtServiceTest {
+
+    private final JwtService jwtService = jwtService(secret((byte) 1), "1");
+
+    @Test
+    void verifiedTokenExposesEveryClaimOfOneParse() {
+        User user = user();
+        String token = jwtService.generateRefreshToken(Map.of("email", user.getEmail(), "impersonatedByAdminId", "admin"), user);
+
+        VerifiedToken verified = jwtService.verify(token);
+
+        assertEquals(user.getId(), verified.subject());
+        assertEquals(user.getEmail(), verified.email());
+        assertEquals("admin", verified.claim("impersonatedByAdminId", String.class));
+        assertEquals("1", verified.kid());
+        assertTrue(jwtService.isRefreshTokenValid(verified, user));
+    }
+
+    @Test
+    void rotatedSecretRejectsTokensSignedWithTheOldOne() {
+        User user = user();
+        String token = jwtService.generateToken(user);
+        jwtService.verify(token); // key and parser of version 1 are now cached
+
+        ReflectionTestUtils.setField(jwtService, "secretKey", secret((byte) 2));
+        ReflectionTestUtils.setField(jwtService, "secretVersion", "2");
+
+        assertThrows(JwtException.class, () -> jwtService.verify(token));
+        assertEquals(user.getId(), jwtService.verify(jwtService.generateToken(user)).subject());
+    }
+
+    private static JwtService jwtService(String secret, String version) {
+        JwtService service = new JwtService();
+        ReflectionTestUtils.setField(service, "secretKey", secret);
+        ReflectionTestUtils.setField(service, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(service, "refreshExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(service, "secretVersion", version);
+        return service;
+    }
+
+    private static String secret(byte fill) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, fill);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private static User user() {
+        User user = new User("jwt", "jwt@example.com", "x");
+        user.setId(new ObjectId().toHexString());
+        user.setRole(User.Role.REGULAR);
+        user.setEnabled(true);
+        return user;
+    }
+}
@@ -0,0 +1,57 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MapViewportTest {
+
+    @Test
+    void splitsWideAndAntimeridianBoxesIntoSmallPolygons() {
+        assertEquals(1, MapViewport.parse("30,40,31,41", 10).polygons().size());
+        assertEquals(4, MapViewport.parse("-180,-80,180,80", 0).polygons().size());
+        // 170..180 and -180..-170
+        assertEquals(2, MapViewport.parse("170,-10,-170,10", 5).polygons().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void polygonRingsAreClosed() {
+        for (Document polygon : MapViewport.parse("-100,-60,100,60", 2).polygons()) {
+            List<List<Double>> ring = ((List<List<List<Double>>>) polygon.get("coordinates")).get(0);
+            assertEquals(ring.get(0), ring.get(ring.size() - 1));
+            assertTrue(ring.size() >= 5);
+        }
+    }
+
+    @Test
+    void nearbyPointsShareACellOnlyAtLowZoom() {
+        MapViewport world = MapViewport.parse("-180,-80,180,80", 3);
+        MapViewport street = MapViewport.parse("30.50,50.40,30.55,50.45", 16);
+
+        assertEquals(world.cellOf(30.52, 50.45), world.cellOf(30.53, 50.44));
+        assertNotEquals(street.cellOf(30.52, 50.45), street.cellOf(30.53, 50.44));
+    }
+
+    @Test
+    void tileOfPointMatchesTileBounds() {
+        long[] tile = MapViewport.tileOf(30.52, 50.45, 12);
+        MapViewport bounds = MapViewport.ofTile(12, (int) tile[0], (int) tile[1]);
+
+        assertEquals(1, bounds.polygons().size());
+        assertThrows(IllegalArgumentException.class, () -> MapViewport.ofTile(2, 4, 0));
+    }
+
+    @Test
+    void rejectsMalformedBox() {
+        assertThrows(IllegalArgumentException.class, () -> MapViewport.parse("1,2,3", 3));
+        assertThrows(IllegalArgumentException.class, () -> MapViewport.parse("0,10,1,5", 3));
+        assertThrows(IllegalArgumentException.class, () -> MapViewport.parse("a,b,c,d", 3));
+    }
+}
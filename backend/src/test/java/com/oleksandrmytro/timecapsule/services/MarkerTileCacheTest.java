@@ -0,0 +1,74 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class MarkerTileCacheTest {
+
+    private final MarkerTileCache cache = new MarkerTileCache(new ObjectMapper(), 100, Duration.ofMinutes(10));
+
+    @Test
+    void servesCachedTileUntilAPointInsideChanges() {
+        AtomicInteger builds = new AtomicInteger();
+        long[] kyiv = MapViewport.tileOf(30.52, 50.45, 10);
+        int x = (int) kyiv[0];
+        int y = (int) kyiv[1];
+
+        MarkerTileCache.Tile first = cache.getOrBuild(10, x, y, () -> marker("a", builds));
+        MarkerTileCache.Tile second = cache.getOrBuild(10, x, y, () -> marker("b", builds));
+        assertEquals(1, builds.get());
+        assertEquals(first.etag(), second.etag());
+
+        cache.invalidatePoint(-74.0, 40.7); // another tile
+        cache.getOrBuild(10, x, y, () -> marker("b", builds));
+        assertEquals(1, builds.get());
+
+        cache.invalidatePoint(30.521, 50.449);
+        MarkerTileCache.Tile rebuilt = cache.getOrBuild(10, x, y, () -> marker("b", builds));
+        assertEquals(2, builds.get());
+        assertNotEquals(first.etag(), rebuilt.etag());
+    }
+
+    @Test
+    void writeInsideTheTileDuringABuildKeepsTheBuildOutOfTheCache() {
+        AtomicInteger builds = new AtomicInteger();
+        long[] kyiv = MapViewport.tileOf(30.52, 50.45, 10);
+        int x = (int) kyiv[0];
+        int y = (int) kyiv[1];
+
+        cache.getOrBuild(10, x, y, () -> {
+            cache.invalidatePoint(30.521, 50.449);
+            return marker("stale", builds);
+        });
+        cache.getOrBuild(10, x, y, () -> marker("fresh", builds));
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    void writeElsewhereDuringABuildDoesNotBlockCaching() {
+        AtomicInteger builds = new AtomicInteger();
+        long[] kyiv = MapViewport.tileOf(30.52, 50.45, 10);
+        int x = (int) kyiv[0];
+        int y = (int) kyiv[1];
+
+        cache.getOrBuild(10, x, y, () -> {
+            cache.invalidatePoint(-74.0, 40.7); // New York: other tiles at every zoom above 0
+            return marker("a", builds);
+        });
+        cache.getOrBuild(10, x, y, () -> marker("b", builds));
+        assertEquals(1, builds.get());
+    }
+
+    private static List<Map<String, Object>> marker(String id, AtomicInteger builds) {
+        builds.incrementAndGet();
+        return List.of(Map.of("kind", "marker", "id", id));
+    }
+}
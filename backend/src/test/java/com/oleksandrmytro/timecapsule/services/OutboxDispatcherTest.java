@@ -0,0 +1,293 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxDispatcherTest {
+
+    private static final Duration CLAIM_TTL = Duration.ofMinutes(1);
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final EmailService emailService = mock(EmailService.class);
+    private final PrincipalLookupService principalLookupService = mock(PrincipalLookupService.class);
+    private OutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = dispatcher(100, 4, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    void claimSkipsRowsBehindAnEarlierPendingRowOfTheirKey() {
+        Instant now = Instant.now();
+        Document free = row("chat.message:u1", now);
+        Document held = row("chat.message:u2", now);
+        // u2 має старіший рядок у backoff поза батчем
+        Document blocker = new Document("_id", "chat.message:u2")
+                .append("rowId", new ObjectId())
+                .append("createdAt", Date.from(now.minusSeconds(10)))
+                .append("nextAttemptAt", Date.from(now.plusSeconds(30)));
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(OutboxService.COLLECTION), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(blocker), new Document()));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(OutboxService.COLLECTION)))
+                .thenReturn(List.of(free, held), List.of(new Document(free).append("claimId", "c")));
+
+        List<Document> claimed = dispatcher.claim(10);
+
+        assertEquals(List.of(free.get("_id")), claimed.stream().map(row -> row.get("_id")).toList());
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateMulti(queries.capture(), updates.capture(), eq(OutboxService.COLLECTION));
+        // Відкладений до retry блокера, щоб не забивати кожен батч
+        assertEquals(List.of(held.get("_id")), idsOf(queries.getAllValues().get(0)));
+        assertEquals(Date.from(now.plusSeconds(30)).toInstant(), setValue(updates.getAllValues().get(0), "nextAttemptAt"));
+        assertEquals(List.of(free.get("_id")), idsOf(queries.getAllValues().get(1)));
+    }
+
+    @Test
+    void claimLeasesRowsForClaimTtlSoExpiredClaimsBecomeDueAgain() {
+        Document row = row(null, Instant.now());
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(OutboxService.COLLECTION)))
+                .thenReturn(List.of(row), List.of(new Document(row).append("claimId", "c")));
+
+        Instant before = Instant.now();
+        dispatcher.claim(10);
+        Instant after = Instant.now();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(Document.class), eq(OutboxService.COLLECTION));
+        // Due лише за nextAttemptAt: claim, що прострочився, знову підхоплюється
+        assertEquals(Set.of("nextAttemptAt"), queries.getAllValues().get(0).getQueryObject().keySet());
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(any(Query.class), update.capture(), eq(OutboxService.COLLECTION));
+        Instant leasedUntil = (Instant) setValue(update.getValue(), "nextAttemptAt");
+        assertFalse(leasedUntil.isBefore(before.plus(CLAIM_TTL)));
+        assertFalse(leasedUntil.isAfter(after.plus(CLAIM_TTL)));
+    }
+
+    @Test
+    void staleClaimerDoesNotDeleteARowReclaimedAfterExpiry() {
+        Document row = chatRow("u1", Instant.now()).append("claimId", "expired");
+
+        dispatcher.dispatch(row, new ConcurrentHashMap<>());
+
+        ArgumentCaptor<Query> remove = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(remove.capture(), eq(OutboxService.COLLECTION));
+        assertEquals("expired", remove.getValue().getQueryObject().getString("claimId"));
+    }
+
+    @Test
+    void failedRowIsRetriedWithBackoffAndHoldsLaterRowsOfItsKey() {
+        Instant now = Instant.now();
+        Document first = chatRow("u1", now).append("claimId", "c");
+        Document second = chatRow("u1", now.plusMillis(1)).append("claimId", "c");
+        doThrow(new IllegalStateException("broker down"))
+                .when(messagingTemplate).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+        Map<String, Instant> stalled = new ConcurrentHashMap<>();
+
+        dispatcher.dispatch(first, stalled);
+        dispatcher.dispatch(second, stalled);
+
+        verify(messagingTemplate, times(1)).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+        verify(mongoTemplate, never()).remove(any(Query.class), anyString());
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), updates.capture(), eq(OutboxService.COLLECTION));
+        Update retry = updates.getAllValues().get(0);
+        Update hold = updates.getAllValues().get(1);
+        assertEquals(1, setValue(retry, "attempts"));
+        Instant retryAt = (Instant) setValue(retry, "nextAttemptAt");
+        assertFalse(retryAt.isBefore(now.plus(OutboxDispatcher.retryDelay(1))));
+        assertTrue(retry.getUpdateObject().get("$unset", Document.class).containsKey("claimId"));
+        // Наступне повідомлення того ж отримувача чекає на retry першого
+        assertEquals(retryAt, setValue(hold, "nextAttemptAt"));
+        assertTrue(hold.getUpdateObject().get("$unset", Document.class).containsKey("claimId"));
+        assertNull(hold.getUpdateObject().get("$set", Document.class).get("attempts"));
+    }
+
+    @Test
+    void openedEmailLoadsTheOwnerThroughThePrincipalLookup() {
+        String ownerId = new ObjectId().toHexString();
+        User owner = new User();
+        when(principalLookupService.load(ownerId, null)).thenReturn(owner);
+
+        dispatcher.dispatch(emailRow(ownerId).append("claimId", "c"), new ConcurrentHashMap<>());
+
+        ArgumentCaptor<Capsule> capsule = ArgumentCaptor.forClass(Capsule.class);
+        verify(emailService).deliverCapsuleOpened(eq(owner), capsule.capture());
+        assertEquals("Letter", capsule.getValue().getTitle());
+        verify(mongoTemplate).remove(any(Query.class), eq(OutboxService.COLLECTION));
+    }
+
+    @Test
+    void openedEmailOfADeletedOwnerIsDroppedWithoutRetry() {
+        String ownerId = new ObjectId().toHexString();
+        when(principalLookupService.load(ownerId, null)).thenThrow(new UsernameNotFoundException(ownerId));
+
+        dispatcher.dispatch(emailRow(ownerId).append("claimId", "c"), new ConcurrentHashMap<>());
+
+        verify(emailService, never()).deliverCapsuleOpened(any(), any());
+        verify(mongoTemplate).remove(any(Query.class), eq(OutboxService.COLLECTION));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), anyString());
+    }
+
+    @Test
+    void retryDelayDoublesUpToAnHour() {
+        assertEquals(Duration.ofSeconds(2), OutboxDispatcher.retryDelay(1));
+        assertEquals(Duration.ofSeconds(16), OutboxDispatcher.retryDelay(4));
+        assertEquals(Duration.ofHours(1), OutboxDispatcher.retryDelay(30));
+    }
+
+    @Test
+    void deliverableHoldsRowsAfterTheFirstPendingRowIncludingTies() {
+        Instant now = Instant.now();
+        Document earlier = row("k", now.minusSeconds(1));
+        Document later = row("k", now.plusSeconds(1));
+        Document unordered = row(null, now.plusSeconds(1));
+        ObjectId blockerId = new ObjectId();
+        Document tie = row("k", now);
+        Map<String, Document> firstPending = Map.of("k",
+                new Document("_id", blockerId).append("createdAt", Date.from(now)));
+
+        List<Document> deliverable = OutboxDispatcher.deliverable(List.of(earlier, later, unordered, tie), firstPending);
+
+        // Той самий createdAt: порядок за ObjectId, а tie створено після blockerId
+        assertEquals(List.of(earlier, unordered), deliverable);
+    }
+
+    @Test
+    void outOfOrderReturnsRowsClaimedPastAnUnclaimedEarlierRowOfTheirKey() {
+        Instant now = Instant.now();
+        Document a1 = row("a", now);
+        Document a2 = row("a", now.plusSeconds(1));
+        Document b1 = row("b", now);
+        Document b2 = row("b", now.plusSeconds(1));
+
+        List<Object> overtaking = OutboxDispatcher.outOfOrder(List.of(a2, b1, a1, b2),
+                Set.of(a2.get("_id"), b1.get("_id"), b2.get("_id")));
+
+        assertEquals(List.of(a2.get("_id")), overtaking);
+    }
+
+    @Test
+    void drainClaimsNothingWhileTheLaneQueueIsFull() throws Exception {
+        dispatcher.stop();
+        dispatcher = dispatcher(100, 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(messagingTemplate).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(OutboxService.COLLECTION))).thenAnswer(invocation -> {
+            Document query = invocation.getArgument(0, Query.class).getQueryObject();
+            if (!query.containsKey("claimId")) {
+                return List.of(row(null, Instant.now()));
+            }
+            List<Document> claimed = new ArrayList<>();
+            for (Object id : idsOf(invocation.getArgument(0, Query.class))) {
+                claimed.add(chatRow("u1", Instant.now()).append("_id", id).append("claimId", query.get("claimId")));
+            }
+            return claimed;
+        });
+
+        try {
+            dispatcher.drain();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            dispatcher.drain(); // воркер зайнятий: заповнює чергу лейну
+            clearInvocations(mongoTemplate);
+
+            dispatcher.drain();
+
+            verify(mongoTemplate, never()).find(any(Query.class), eq(Document.class), anyString());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private OutboxDispatcher dispatcher(int batchSize, int workers, int queueCapacity) {
+        return new OutboxDispatcher(mongoTemplate, mock(OutboxService.class), mock(CapsuleNotificationService.class),
+                emailService, messagingTemplate, principalLookupService,
+                batchSize, CLAIM_TTL, workers, queueCapacity);
+    }
+
+    private static Document row(String orderKey, Instant createdAt) {
+        return new Document("_id", new ObjectId())
+                .append("orderKey", orderKey)
+                .append("createdAt", Date.from(createdAt));
+    }
+
+    private static Document chatRow(String userId, Instant createdAt) {
+        return row(OutboxService.orderKeyOf(OutboxService.TYPE_CHAT_MESSAGE, new Document("userId", userId)), createdAt)
+                .append("type", OutboxService.TYPE_CHAT_MESSAGE)
+                .append("attempts", 0)
+                .append("payload", new Document("userId", userId).append("message", new Document("text", "hi")));
+    }
+
+    private static Document emailRow(String ownerId) {
+        Document payload = new Document("ownerId", ownerId)
+                .append("capsuleId", new ObjectId().toHexString())
+                .append("title", "Letter");
+        return row(OutboxService.orderKeyOf(OutboxService.TYPE_CAPSULE_OPENED_EMAIL, payload), Instant.now())
+                .append("type", OutboxService.TYPE_CAPSULE_OPENED_EMAIL)
+                .append("attempts", 0)
+                .append("payload", payload);
+    }
+
+    private static List<Object> idsOf(Query query) {
+        Document id = query.getQueryObject().get("_id", Document.class);
+        return new ArrayList<>((Collection<?>) id.get("$in"));
+    }
+
+    private static Object setValue(Update update, String field) {
+        return update.getUpdateObject().get("$set", Document.class).get(field);
+    }
+}
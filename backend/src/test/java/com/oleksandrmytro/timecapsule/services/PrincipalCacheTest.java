@@ -0,0 +1,79 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PrincipalCacheTest {
+
+    private final PrincipalCache cache = new PrincipalCache(null, new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), false);
+
+    @Test
+    void invalidationDropsTheSnapshot() {
+        Document user = user("a");
+        cache.offer(cache.stamp(), "a", user);
+        assertSame(user, cache.get("a"));
+
+        cache.invalidate("a"); // blocked by an admin
+
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void invalidationWinsOverASnapshotReadBeforeIt() {
+        long stamp = cache.stamp();
+        cache.invalidate("a"); // user deleted while the principal was being loaded
+
+        cache.offer(stamp, "a", user("a"));
+
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void invalidationOfAnotherUserDoesNotBlockCaching() {
+        long stamp = cache.stamp();
+        cache.invalidate("b");
+
+        Document user = user("a");
+        cache.offer(stamp, "a", user);
+
+        assertSame(user, cache.get("a"));
+    }
+
+    @Test
+    void listenersHearEveryInvalidatedId() {
+        List<String> heard = new ArrayList<>();
+        cache.onInvalidate(heard::add);
+
+        cache.invalidate("a");
+        cache.invalidateAll(List.of("b", "c"));
+
+        assertEquals(List.of("a", "b", "c"), heard);
+    }
+
+    @Test
+    void bulkInvalidationDropsEveryListedUser() {
+        cache.offer(cache.stamp(), "a", user("a"));
+        cache.offer(cache.stamp(), "b", user("b"));
+        Document untouched = user("c");
+        cache.offer(cache.stamp(), "c", untouched);
+
+        cache.invalidateAll(List.of("a", "b"));
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertSame(untouched, cache.get("c"));
+    }
+
+    private static Document user(String id) {
+        return new Document("_id", id).append("email", id + "@example.com").append("enabled", true);
+    }
+}
@@ -0,0 +1,84 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.oleksandrmytro.timecapsule.responses.CapsuleResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PublicCapsuleCacheTest {
+
+    private final PublicCapsuleCache cache = new PublicCapsuleCache(null, new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), false);
+
+    @Test
+    void cachesOnlyPublicNonDraftCapsules() {
+        CapsuleResponse open = response("a", "public", "opened", Instant.parse("2026-01-01T00:00:00Z"));
+        cache.offer(cache.stamp(), open);
+        cache.offer(cache.stamp(), response("b", "private", "opened", Instant.now()));
+        cache.offer(cache.stamp(), response("c", "public", "draft", Instant.now()));
+
+        assertSame(open, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNull(cache.get("c"));
+    }
+
+    @Test
+    void invalidationWinsOverAResponseRenderedBeforeIt() {
+        long stamp = cache.stamp();
+        cache.invalidate("a"); // capsule updated while the stale response was being rendered
+
+        cache.offer(stamp, response("a", "public", "opened", Instant.now()));
+
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void writeToAnotherCapsuleDoesNotBlockCaching() {
+        long stamp = cache.stamp();
+        long version = cache.version("a");
+        cache.invalidate("b");
+
+        CapsuleResponse open = response("a", "public", "opened", Instant.now());
+        cache.offer(stamp, open);
+
+        assertSame(open, cache.get("a"));
+        assertEquals(version, cache.version("a")); // "a" misses keep sharing their flight
+        assertNotEquals(0L, cache.version("b"));
+    }
+
+    @Test
+    void olderVersionDoesNotReplaceANewerOne() {
+        CapsuleResponse newer = response("a", "public", "opened", Instant.parse("2026-02-01T00:00:00Z"));
+        cache.offer(cache.stamp(), newer);
+        cache.offer(cache.stamp(), response("a", "public", "opened", Instant.parse("2026-01-01T00:00:00Z")));
+
+        assertSame(newer, cache.get("a"));
+    }
+
+    @Test
+    void lockedCapsuleIsNotServedPastItsUnlockAt() {
+        CapsuleResponse locked = response("a", "public", "sealed", Instant.now());
+        locked.setIsLocked(true);
+        locked.setUnlockAt(Instant.now().minusSeconds(1));
+
+        cache.offer(cache.stamp(), locked);
+
+        assertNull(cache.get("a"));
+    }
+
+    private static CapsuleResponse response(String id, String visibility, String status, Instant updatedAt) {
+        CapsuleResponse response = new CapsuleResponse();
+        response.setId(id);
+        response.setVisibility(visibility);
+        response.setStatus(status);
+        response.setIsLocked(false);
+        response.setUpdatedAt(updatedAt);
+        return response;
+    }
+}
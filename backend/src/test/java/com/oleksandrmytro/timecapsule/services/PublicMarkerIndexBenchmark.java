@@ -0,0 +1,136 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.geojson.Point;
+import com.mongodb.client.model.geojson.Position;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PublicMarkerIndex vs the Mongo geomarkers path ($geoWithin box, $nearSphere k=10) on the same
+ * points. Runs only when MARKER_INDEX_BENCHMARK_MONGO_URI points to a scratch database (its
+ * geomarkers collection is dropped). Forks are disabled so JMH runs inside the test JVM.
+ *
+ * MARKER_INDEX_BENCHMARK_MONGO_URI=mongodb://localhost:27017/timecapsule_bench ./mvnw test -Dtest=PublicMarkerIndexBenchmark
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "MARKER_INDEX_BENCHMARK_MONGO_URI", matches = ".+")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PublicMarkerIndexBenchmark {
+
+    private static final int MARKERS = 100_000;
+    // Kyiv-sized viewport inside a dense region, like a city-level map.
+    private static final double WEST = 30.40;
+    private static final double SOUTH = 50.35;
+    private static final double EAST = 30.70;
+    private static final double NORTH = 50.55;
+
+    private MongoClient client;
+    private MongoCollection<Document> geomarkers;
+    private PublicMarkerIndex index;
+
+    @Test
+    void run() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PublicMarkerIndexBenchmark.class.getSimpleName())
+                .forks(0)
+                .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void seed() {
+        ConnectionString uri = new ConnectionString(System.getenv("MARKER_INDEX_BENCHMARK_MONGO_URI"));
+        client = MongoClients.create(uri);
+        geomarkers = client.getDatabase(uri.getDatabase() != null ? uri.getDatabase() : "timecapsule_bench")
+                .getCollection("geomarkers");
+        geomarkers.drop();
+        geomarkers.createIndex(Indexes.geo2dsphere("location"));
+        index = new PublicMarkerIndex(null, 0.1);
+
+        Random random = new Random(42);
+        List<Document> chunk = new ArrayList<>(1_000);
+        for (int i = 0; i < MARKERS; i++) {
+            // Half of the markers around a few cities, half spread over the globe.
+            boolean dense = i % 2 == 0;
+            double lon = dense ? 30.0 + random.nextGaussian() * 0.5 : random.nextDouble() * 360.0 - 180.0;
+            double lat = dense ? 50.4 + random.nextGaussian() * 0.3 : random.nextDouble() * 160.0 - 80.0;
+            ObjectId capsuleId = new ObjectId();
+            index.put(capsuleId, new ObjectId(), lon, lat);
+            chunk.add(new Document("capsuleId", capsuleId)
+                    .append("visibility", "public")
+                    .append("location", new Document("type", "Point").append("coordinates", List.of(lon, lat))));
+            if (chunk.size() == 1_000) {
+                geomarkers.insertMany(chunk);
+                chunk = new ArrayList<>(1_000);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            geomarkers.insertMany(chunk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void drop() {
+        geomarkers.drop();
+        client.close();
+    }
+
+    @Benchmark
+    public int indexWithinBox() {
+        return index.withinBox(WEST, SOUTH, EAST, NORTH, 0).size();
+    }
+
+    @Benchmark
+    public int mongoGeoWithin() {
+        List<List<Double>> ring = List.of(List.of(WEST, SOUTH), List.of(EAST, SOUTH),
+                List.of(EAST, NORTH), List.of(WEST, NORTH), List.of(WEST, SOUTH));
+        Document within = new Document("location", new Document("$geoWithin", new Document("$geometry",
+                new Document("type", "Polygon").append("coordinates", List.of(ring)))));
+        return geomarkers.find(within).projection(new Document("capsuleId", 1))
+                .into(new ArrayList<>()).size();
+    }
+
+    @Benchmark
+    public int indexNearest() {
+        return index.nearest(30.52, 50.45, 10, 0).size();
+    }
+
+    @Benchmark
+    public int mongoNearSphere() {
+        return geomarkers.find(Filters.nearSphere("location", new Point(new Position(30.52, 50.45)), null, null))
+                .projection(new Document("capsuleId", 1))
+                .limit(10)
+                .into(new ArrayList<>()).size();
+    }
+}
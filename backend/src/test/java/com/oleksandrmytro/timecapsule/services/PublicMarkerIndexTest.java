@@ -0,0 +1,95 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PublicMarkerIndexTest {
+
+    private final PublicMarkerIndex index = new PublicMarkerIndex(null, 0.5);
+
+    @Test
+    void boxQueriesMatchABruteForceScan() {
+        List<double[]> points = seed(5_000, new Random(7));
+
+        assertBox(points, 29.0, 49.0, 32.0, 52.0);
+        assertBox(points, -10.0, -60.0, 40.0, 70.0);
+        assertBox(points, 170.0, -20.0, -170.0, 20.0); // crosses the antimeridian
+        assertBox(points, -180.0, -85.0, 180.0, 85.0);
+    }
+
+    @Test
+    void nearestMatchesABruteForceScan() {
+        List<double[]> points = seed(5_000, new Random(11));
+        double[][] probes = {{30.52, 50.45}, {179.9, 0.0}, {-179.9, 10.0}, {0.0, 89.0}, {-75.0, -60.0}};
+
+        for (double[] probe : probes) {
+            List<PublicMarkerIndex.Hit> hits = index.nearest(probe[0], probe[1], 10, 0);
+            List<Double> expected = points.stream()
+                    .map(p -> PublicMarkerIndex.distanceMeters(probe[0], probe[1], p[0], p[1]))
+                    .sorted()
+                    .limit(10)
+                    .collect(Collectors.toList());
+            assertEquals(10, hits.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), hits.get(i).distanceMeters(), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    void nearestRespectsTheRadius() {
+        ObjectId near = new ObjectId();
+        index.put(near, new ObjectId(), 30.5238, 50.4501);
+        index.put(new ObjectId(), new ObjectId(), 24.0316, 49.8429); // ~470 km away
+
+        List<PublicMarkerIndex.Hit> hits = index.nearest(30.52, 50.45, 5, 10_000);
+
+        assertEquals(1, hits.size());
+        assertEquals(near, hits.get(0).capsuleId());
+    }
+
+    @Test
+    void putMovesAndRemoveDropsAMarker() {
+        ObjectId capsuleId = new ObjectId();
+        index.put(capsuleId, new ObjectId(), 30.52, 50.45);
+        index.put(capsuleId, new ObjectId(), -74.0, 40.7);
+
+        assertTrue(index.withinBox(30.0, 50.0, 31.0, 51.0, 0).isEmpty());
+        assertEquals(1, index.withinBox(-75.0, 40.0, -73.0, 41.0, 0).size());
+
+        index.remove(capsuleId);
+        assertEquals(0, index.size());
+        assertTrue(index.withinBox(-75.0, 40.0, -73.0, 41.0, 0).isEmpty());
+    }
+
+    private List<double[]> seed(int count, Random random) {
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double lon = random.nextDouble() * 360.0 - 180.0;
+            double lat = random.nextDouble() * 170.0 - 85.0;
+            points.add(new double[]{lon, lat});
+            index.put(new ObjectId(), new ObjectId(), lon, lat);
+        }
+        return points;
+    }
+
+    private void assertBox(List<double[]> points, double west, double south, double east, double north) {
+        long expected = points.stream()
+                .filter(p -> (west <= east ? p[0] >= west && p[0] <= east : p[0] >= west || p[0] <= east)
+                        && p[1] >= south && p[1] <= north)
+                .count();
+        List<PublicMarkerIndex.Hit> hits = index.withinBox(west, south, east, north, 0);
+        Set<ObjectId> unique = hits.stream().map(PublicMarkerIndex.Hit::capsuleId).collect(Collectors.toSet());
+        assertEquals(expected, hits.size());
+        assertEquals(hits.size(), unique.size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestCoalescerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(registry);
+
+    @Test
+    void concurrentIdenticalCallsShareOneLoad() throws Exception {
+        int callers = 16;
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> coalescer.execute("capsule", "a", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return new Object();
+                })));
+            }
+            // Let every caller reach the in-flight map before the leader finishes.
+            while (joined() < callers - 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void completedFlightIsNotReused() {
+        AtomicInteger loads = new AtomicInteger();
+
+        coalescer.execute("user", "alice", loads::incrementAndGet);
+        coalescer.execute("user", "alice", loads::incrementAndGet);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void followersGetTheLeadersException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> leader = pool.submit(() -> coalescer.execute("capsule", "missing", () -> {
+                await(release);
+                throw new IllegalArgumentException("Capsule not found");
+            }));
+            while (registry.find("requests.coalesced").tag("outcome", "leader").counter() == null) {
+                Thread.sleep(5);
+            }
+            Future<?> follower = pool.submit(() -> coalescer.execute("capsule", "missing", () -> "unexpected"));
+            while (joined() < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            ExecutionException followerFailure = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalArgumentException.class, leaderFailure.getCause());
+            assertSame(leaderFailure.getCause(), followerFailure.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private double joined() {
+        var counter = registry.find("requests.coalesced").tag("outcome", "joined").counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.oleksandrmytro.timecapsule.services;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.oleksandrmytro.timecapsule.models.Capsule;
+import com.oleksandrmytro.timecapsule.models.ChatMessage;
+import com.oleksandrmytro.timecapsule.models.Share;
+import com.oleksandrmytro.timecapsule.models.enums.CapsuleStatus;
+import com.oleksandrmytro.timecapsule.models.enums.ChatMessageStatus;
+import com.oleksandrmytro.timecapsule.models.enums.ChatMessageType;
+import com.oleksandrmytro.timecapsule.repositories.CapsuleRepository;
+import com.oleksandrmytro.timecapsule.repositories.ChatMessageRepository;
+import com.oleksandrmytro.timecapsule.repositories.FollowRepository;
+import com.oleksandrmytro.timecapsule.repositories.ShareRepository;
+import com.oleksandrmytro.timecapsule.repositories.UserRepository;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Time on the request thread to share a capsule with 1, 50 and 500 grantees: the former per-grantee
+ * loop (exists + save share + save chat message + sender lookup) vs the batched shareCapsule
+ * ($in check + two insertMany, fan-out handed to CapsuleShareNotifier). Runs only when
+ * SHARE_BENCHMARK_MONGO_URI points to a scratch database (capsules, shares, chat_messages are dropped).
+ *
+ * SHARE_BENCHMARK_MONGO_URI=mongodb://localhost:27017/timecapsule_bench ./mvnw test -Dtest=ShareFanOutBenchmarkTest
+ */
+@Tag("benchmark")
+@EnabledIfEnvironmentVariable(named = "SHARE_BENCHMARK_MONGO_URI", matches = ".+")
+class ShareFanOutBenchmarkTest {
+
+    @Test
+    void batchedShareBeatsPerGranteeLoop() {
+        ConnectionString uri = new ConnectionString(System.getenv("SHARE_BENCHMARK_MONGO_URI"));
+        String database = uri.getDatabase() != null ? uri.getDatabase() : "timecapsule_bench";
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, database);
+            MongoRepositoryFactory repositories = new MongoRepositoryFactory(mongoTemplate);
+            ShareRepository shareRepository = repositories.getRepository(ShareRepository.class);
+            ChatMessageRepository chatMessageRepository = repositories.getRepository(ChatMessageRepository.class);
+            UserRepository userRepository = repositories.getRepository(UserRepository.class);
+
+            SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+            OutboxService outboxService = new OutboxService(mongoTemplate, false);
+            ChatService chatService = new ChatService(mock(UserService.class), chatMessageRepository,
+                    mock(EmailService.class), outboxService);
+            CapsuleService service = new CapsuleService(
+                    mock(CapsuleRepository.class),
+                    mongoTemplate,
+                    userRepository,
+                    mock(FollowRepository.class),
+                    shareRepository,
+                    messagingTemplate,
+                    chatService,
+                    mock(CapsuleUnlockEngine.class),
+                    mock(CapsuleOpenedNotifier.class),
+                    mock(CapsuleUnlockMetrics.class),
+                    mock(MarkerTileCache.class),
+                    mock(PublicMarkerIndex.class),
+                    mock(GeoHeatmapService.class),
+                    mock(PublicCapsuleCache.class),
+                    mock(RequestCoalescer.class),
+                    mock(CapsuleShareNotifier.class),
+                    outboxService,
+                    new CapsuleRouteService(mongoTemplate, null, 1000),
+                    // Без кешу принципалів: ім'я відправника — запит на один шард за _id + email
+                    new PrincipalLookupService(mongoTemplate,
+                            new PrincipalCache(mongoTemplate, null, 0, Duration.ZERO, false), null, 1000)
+            );
+
+            ObjectId owner = new ObjectId();
+            for (int grantees : new int[]{1, 50, 500}) {
+                List<String> granteeIds = new ArrayList<>();
+                for (int i = 0; i < grantees; i++) {
+                    granteeIds.add(new ObjectId().toHexString());
+                }
+
+                String capsuleId = seed(mongoTemplate, owner);
+                long legacyStart = System.nanoTime();
+                shareOneByOne(shareRepository, chatMessageRepository, userRepository, capsuleId, owner.toHexString(), granteeIds);
+                double legacyMillis = (System.nanoTime() - legacyStart) / 1e6;
+                assertEquals(grantees, mongoTemplate.count(new Query(), Share.class));
+
+                capsuleId = seed(mongoTemplate, owner);
+                long start = System.nanoTime();
+                service.shareCapsule(capsuleId, owner.toHexString(), granteeIds);
+                double batchedMillis = (System.nanoTime() - start) / 1e6;
+                assertEquals(grantees, mongoTemplate.count(new Query(), Share.class));
+                assertEquals(grantees, mongoTemplate.count(new Query(), ChatMessage.class));
+
+                assertTrue(batchedMillis < legacyMillis,
+                        String.format("grantees=%d per-grantee=%.1f ms batched=%.1f ms", grantees, legacyMillis, batchedMillis));
+            }
+            mongoTemplate.dropCollection(Capsule.class);
+            mongoTemplate.dropCollection(Share.class);
+            mongoTemplate.dropCollection(ChatMessage.class);
+            mongoTemplate.dropCollection(CapsuleRouteService.COLLECTION);
+        }
+    }
+
+    private static String seed(MongoTemplate mongoTemplate, ObjectId owner) {
+        mongoTemplate.dropCollection(Capsule.class);
+        mongoTemplate.dropCollection(Share.class);
+        mongoTemplate.dropCollection(ChatMessage.class);
+        Date now = new Date();
+        Document capsule = new Document("ownerId", owner)
+                .append("title", "Benchmark capsule")
+                .append("status", CapsuleStatus.OPENED.getValue())
+                .append("visibility", "public")
+                .append("shareToken", "benchmarktoken01")
+                .append("createdAt", now)
+                .append("updatedAt", now);
+        mongoTemplate.getCollection("capsules").insertOne(capsule);
+        return capsule.getObjectId("_id").toHexString();
+    }
+
+    /**
+     * The request-thread part of the former shareCapsule loop, per grantee.
+     */
+    private static void shareOneByOne(ShareRepository shareRepository, ChatMessageRepository chatMessageRepository,
+                                      UserRepository userRepository, String capsuleId, String sharerId,
+                                      List<String> granteeIds) {
+        userRepository.findById(sharerId);
+        for (String uid : granteeIds) {
+            if (shareRepository.existsByCapsuleIdAndGranteeIdAndDeletedAtIsNull(new ObjectId(capsuleId), new ObjectId(uid))) {
+                continue;
+            }
+            shareRepository.save(new Share(capsuleId, uid, sharerId));
+            ChatMessage msg = new ChatMessage(sharerId, uid, "Someone shared a capsule: Benchmark capsule");
+            msg.setType(ChatMessageType.CAPSULE_SHARE);
+            msg.setCapsuleId(new ObjectId(capsuleId));
+            msg.setCreatedAt(Instant.now());
+            msg.setStatus(ChatMessageStatus.SENT);
+            chatMessageRepository.save(msg);
+            userRepository.findById(sharerId); // sender lookup for the chat digest
+        }
+    }
+}
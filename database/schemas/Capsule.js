@@ -24,6 +24,7 @@ var capsuleSchema = {
     openedAt: { bsonType: ["date", "null"] },
     expiresAt: { bsonType: ["date", "null"] },
     geoMarkerId: { bsonType: "objectId" },
+    unlockBucket: { bsonType: "int" },
     location: {
       bsonType: "object",
       required: ["type", "coordinates"],
@@ -5,6 +5,7 @@ var geoMarkerSchema = {
   properties: {
     _id: { bsonType: "objectId" },
     capsuleId: { bsonType: "objectId" },
+    ownerId: { bsonType: "objectId" },
     location: {
       bsonType: "object",
       required: ["type", "coordinates"],
@@ -72,9 +72,15 @@ const collectionConfigs = {
     options: { presplit: { numInitialChunks: 6 } },
     indexes: [
       { ownerId: 1, createdAt: -1 },
+      // calendar histogram: owner's capsules by unlockAt range
+      { ownerId: 1, unlockAt: 1 },
       { ownerId: 1, status: 1, deletedAt: 1, unlockAt: 1 },
       { status: 1, deletedAt: 1, unlockAt: 1 },
+      // unlock partitions: stored bucket of ownerId ($in per partition, merge sort on unlockAt)
+      { status: 1, unlockBucket: 1, unlockAt: 1 },
       { visibility: 1, unlockAt: 1 },
+      // keyset pagination of public discovery: (createdAt, _id) desc
+      { visibility: 1, deletedAt: 1, createdAt: -1, _id: -1 },
       { unlockAt: 1 },
       { location: "2dsphere" }
     ]
@@ -163,7 +169,9 @@ const collectionConfigs = {
     options: { presplit: { numInitialChunks: 4 } },
     indexes: [
       { location: "2dsphere" },
-      { capsuleId: 1 }
+      { capsuleId: 1 },
+      // map viewport pre-filter: own / related owners within the bbox
+      { ownerId: 1, location: "2dsphere" }
     ]
   },
 
@@ -305,6 +313,41 @@ Object.entries(collectionConfigs).forEach(([collectionName, config]) => {
   }
 });
 
+// --- Unsharded service collections: no schema validation, indexes only ---
+// Written by the backend itself (leases, checkpoints, outboxes); created on first index.
+const serviceCollectionIndexes = {
+  // transactional outbox: due rows by nextAttemptAt, first pending row per orderKey by createdAt
+  outbox: [
+    { key: { nextAttemptAt: 1 } },
+    { key: { orderKey: 1, createdAt: 1 } }
+  ],
+  // TTL only cleans up abandoned leases; expiry of a held lease is checked on expiresAt itself
+  scheduler_leases: [
+    { key: { expiresAt: 1 }, options: { expireAfterSeconds: 3600 } }
+  ],
+  // capsules whose geomarker write failed: retry scan by due time, map lookup by owner
+  geomarker_outbox: [
+    { key: { nextAttemptAt: 1 } },
+    { key: { ownerId: 1 } }
+  ],
+  // heatmap rollup: one counter per (precision, cell), read as a cell range per precision
+  geo_heatmap: [
+    { key: { precision: 1, cell: 1 } }
+  ],
+};
+
+Object.entries(serviceCollectionIndexes).forEach(([collectionName, indexes]) => {
+  print(`\n📊 Creating ${indexes.length} indexes for ${collectionName}...`);
+  indexes.forEach(({ key, options }) => {
+    try {
+      db.getCollection(collectionName).createIndex(key, options || {});
+      print(`  ✅ Index ${JSON.stringify(key)} created`);
+    } catch (e) {
+      print(`  ⚠️ Index creation failed: ${e}`);
+    }
+  });
+});
+
 print(`\n🎉 Schema initialization completed!`);
 print(`📊 Created ${Object.keys(collectionConfigs).length} sharded collections with validation`);
 print(`🔍 All schemas are loaded from /database/schemas/`);
@@ -91,9 +91,9 @@ export function CapsuleCard({ capsule, onClick }: CapsuleCardProps) {
             <Lock className="h-4 w-4 shrink-0 text-muted-foreground" />
             <p className="text-sm italic text-muted-foreground">Content sealed until the unlock date</p>
           </div>
-        ) : capsule.body ? (
+        ) : (capsule.excerpt ?? capsule.body) ? (
           <p className="mb-4 line-clamp-2 break-words whitespace-pre-wrap text-sm leading-relaxed text-muted-foreground">
-            {capsule.body}
+            {capsule.excerpt ?? capsule.body}
           </p>
         ) : capsule.status === "draft" ? (
           <p className="mb-4 text-sm italic text-muted-foreground">Visible only to you until you seal it.</p>
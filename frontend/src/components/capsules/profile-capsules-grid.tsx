@@ -280,8 +280,8 @@ function CapsuleGridItem({ capsule, onClick, isFocused = false }: { capsule: Cap
           </span>
         )}
         <h3 className="line-clamp-2 text-sm font-semibold leading-6 text-slate-100">{capsule.title}</h3>
-        {capsule.body && !capsule.isLocked && (
-          <p className="line-clamp-2 text-xs leading-5 text-slate-300">{capsule.body}</p>
+        {(capsule.excerpt ?? capsule.body) && !capsule.isLocked && (
+          <p className="line-clamp-2 text-xs leading-5 text-slate-300">{capsule.excerpt ?? capsule.body}</p>
         )}
 
         {capsule.tags && capsule.tags.length > 0 && (
@@ -346,8 +346,8 @@ function CapsuleListItem({ capsule, onClick, isFocused = false }: { capsule: Cap
           </span>
         )}
 
-        {capsule.body && !capsule.isLocked && (
-          <p className="line-clamp-1 text-xs text-slate-300">{capsule.body}</p>
+        {(capsule.excerpt ?? capsule.body) && !capsule.isLocked && (
+          <p className="line-clamp-1 text-xs text-slate-300">{capsule.excerpt ?? capsule.body}</p>
         )}
 
         {capsule.tags && capsule.tags.length > 0 && (
@@ -127,6 +127,8 @@ export interface Capsule {
   ownerId?: string | null
   title: string
   body?: string | null
+  // list endpoints return a short excerpt instead of body/media (?view=full for everything)
+  excerpt?: string | null
   status: 'draft' | 'sealed' | 'opened'
   visibility: 'private' | 'public' | 'shared'
   isLocked: boolean